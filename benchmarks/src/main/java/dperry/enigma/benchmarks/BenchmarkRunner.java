@@ -0,0 +1,23 @@
+package dperry.enigma.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so allocation per operation is
+ * reported next to every score. Accepts the usual JMH command line.
+ */
+public class BenchmarkRunner {
+
+	public static void main( String[] args ) throws Exception {
+		Options options = new OptionsBuilder()
+				.parent( new CommandLineOptions( args ) )
+				.addProfiler( GCProfiler.class )
+				.build();
+
+		new Runner( options ).run();
+	}
+}
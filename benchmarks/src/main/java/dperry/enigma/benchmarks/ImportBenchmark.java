@@ -0,0 +1,48 @@
+package dperry.enigma.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dperry.enigma.Enigma;
+
+/**
+ * Time to import a configuration, by catalog size
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ImportBenchmark {
+
+	@Param( { "100", "10000", "50000" } )
+	int catalogSize;
+
+	byte[] config;
+
+	@Setup
+	public void setup() {
+		config = Machines.catalog( catalogSize, Math.max( 1, catalogSize / 10 ) ).getBytes( StandardCharsets.US_ASCII );
+	}
+
+	@Benchmark
+	public Enigma importConfiguration() {
+		Enigma enigma = new Enigma();
+		enigma.importConfiguration( new ByteArrayInputStream( config ), false );
+		return enigma;
+	}
+}
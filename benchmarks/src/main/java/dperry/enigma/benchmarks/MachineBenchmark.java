@@ -0,0 +1,94 @@
+package dperry.enigma.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.engine.CompiledEnigma;
+
+/**
+ * Letters per second through the machine, by rotor count and reflector stepping, for each
+ * way of driving it
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class MachineBenchmark {
+
+	static final int LENGTH = 4096;
+
+	@Param( { "1", "3", "4", "6" } )
+	int rotors;
+
+	@Param( { "false", "true" } )
+	boolean advanceReflector;
+
+	Enigma enigma;
+	CompiledEnigma compiled;
+	CompiledEnigma precomputed;
+	char[] message;
+	char[] buffer;
+
+	@Setup
+	public void setup() throws Exception {
+		enigma = Machines.machine( rotors, advanceReflector );
+		compiled = enigma.compile();
+
+		Enigma tabled = Machines.machine( rotors, advanceReflector );
+		tabled.setPrecomputeLimit( 16 * 1024 * 1024 );
+		precomputed = tabled.compile();
+
+		message = Machines.message( LENGTH );
+		buffer = new char[LENGTH];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( LENGTH )
+	public void interpreted( Blackhole blackhole ) throws Exception {
+		for( int i = 0; i < LENGTH; i++ ) {
+			blackhole.consume( enigma.convert( message[i] ) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( LENGTH )
+	public void compiled( Blackhole blackhole ) {
+		for( int i = 0; i < LENGTH; i++ ) {
+			blackhole.consume( compiled.convert( message[i] ) );
+		}
+	}
+
+	/**
+	 * Falls back to the compiled path where the table would not fit in 16 MB
+	 */
+	@Benchmark
+	@OperationsPerInvocation( LENGTH )
+	public char[] precomputed() {
+		precomputed.convert( message, 0, buffer, 0, LENGTH );
+		return buffer;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( LENGTH )
+	public char[] bulk() throws Exception {
+		System.arraycopy( message, 0, buffer, 0, LENGTH );
+		enigma.convert( buffer );
+		return buffer;
+	}
+}
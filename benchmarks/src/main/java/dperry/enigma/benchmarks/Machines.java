@@ -0,0 +1,100 @@
+package dperry.enigma.benchmarks;
+
+import java.util.Random;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Builds the machines and configurations the benchmarks run against. Everything is
+ * generated from a fixed seed so runs are comparable.
+ */
+public class Machines {
+
+	public static final long SEED = 1940;
+
+	public static Enigma machine( int rotorCount, boolean advanceReflector ) {
+		Random random = new Random( SEED );
+		Enigma enigma = new Enigma();
+
+		for( int i = 0; i < rotorCount; i++ ) {
+			Rotor rotor = new Rotor( "rotor" + i, boxed( permutation( random ) ), new Integer[]{ random.nextInt( Rotor.ROTOR_SIZE ) } );
+			enigma.addRotor( rotor );
+		}
+		enigma.setReflector( new Reflector( "reflector", boxed( reflector( random ) ) ) );
+		enigma.setAdvanceReflector( advanceReflector );
+
+		for( char ch = 'A'; ch < 'U'; ch += 2 ) {
+			enigma.addPlugboardConnection( ch, (char)( ch + 1 ) );
+		}
+		return enigma;
+	}
+
+	public static char[] message( int length ) {
+		Random random = new Random( SEED );
+		char[] message = new char[length];
+		for( int i = 0; i < length; i++ ) {
+			message[i] = (char)( 'A' + random.nextInt( Rotor.ROTOR_SIZE ) );
+		}
+		return message;
+	}
+
+	/**
+	 * Returns configuration file text with the given number of rotors and reflectors
+	 */
+	public static String catalog( int rotors, int reflectors ) {
+		Random random = new Random( SEED );
+		StringBuilder sb = new StringBuilder();
+
+		for( int i = 0; i < rotors; i++ ) {
+			sb.append( "rotor     name=rotor" ).append( i ).append( " tl=" ).append( random.nextInt( Rotor.ROTOR_SIZE ) );
+			sb.append( " rc=" ).append( join( permutation( random ) ) ).append( '\n' );
+		}
+		for( int i = 0; i < reflectors; i++ ) {
+			sb.append( "reflector name=reflector" ).append( i );
+			sb.append( " rc=" ).append( join( reflector( random ) ) ).append( '\n' );
+		}
+		return sb.toString();
+	}
+
+	static int[] permutation( Random random ) {
+		int[] wiring = new int[Rotor.ROTOR_SIZE];
+		for( int i = 0; i < wiring.length; i++ ) {
+			wiring[i] = i;
+		}
+		for( int i = wiring.length - 1; i > 0; i-- ) {
+			int j = random.nextInt( i + 1 );
+			int swap = wiring[i];
+			wiring[i] = wiring[j];
+			wiring[j] = swap;
+		}
+		return wiring;
+	}
+
+	static int[] reflector( Random random ) {
+		int[] order = permutation( random );
+		int[] pairs = new int[order.length];
+		for( int i = 0; i < order.length; i += 2 ) {
+			pairs[order[i]] = order[i + 1];
+			pairs[order[i + 1]] = order[i];
+		}
+		return pairs;
+	}
+
+	private static Integer[] boxed( int[] values ) {
+		Integer[] boxed = new Integer[values.length];
+		for( int i = 0; i < values.length; i++ ) {
+			boxed[i] = values[i];
+		}
+		return boxed;
+	}
+
+	private static String join( int[] values ) {
+		StringBuilder sb = new StringBuilder();
+		for( int i = 0; i < values.length; i++ ) {
+			sb.append( i == 0 ? "" : "," ).append( values[i] );
+		}
+		return sb.toString();
+	}
+}
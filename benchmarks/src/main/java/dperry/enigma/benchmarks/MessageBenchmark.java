@@ -0,0 +1,79 @@
+package dperry.enigma.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.io.StreamTranslator;
+
+/**
+ * End to end message throughput: raw text in, grouped cipher text out, through the same
+ * path the streaming mode uses
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class MessageBenchmark {
+
+	@Param( { "1024", "1048576" } )
+	int length;
+
+	@Param( { "3" } )
+	int rotors;
+
+	Enigma enigma;
+	byte[] text;
+
+	@Setup
+	public void setup() {
+		enigma = Machines.machine( rotors, false );
+
+		char[] letters = Machines.message( length );
+		StringBuilder sb = new StringBuilder( length + length / 6 );
+		for( int i = 0; i < letters.length; i++ ) {
+			sb.append( i % 6 == 5 ? ' ' : Character.toLowerCase( letters[i] ) );
+		}
+		text = sb.toString().getBytes( StandardCharsets.US_ASCII );
+	}
+
+	@Benchmark
+	public long stream() throws Exception {
+		StreamTranslator translator = new StreamTranslator( enigma.compile(), true );
+		return translator.translate( Channels.newChannel( new ByteArrayInputStream( text ) ), DISCARD );
+	}
+
+	private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+		public int write( ByteBuffer src ) throws IOException {
+			int written = src.remaining();
+			src.position( src.limit() );
+			return written;
+		}
+
+		public boolean isOpen() {
+			return true;
+		}
+
+		public void close() {
+		}
+	};
+}
@@ -0,0 +1,77 @@
+package dperry.enigma.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.parts.Plugboard;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Cost of the individual parts on the conversion path
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class PartsBenchmark {
+
+	Rotor rotor;
+	Plugboard plugboard;
+
+	@Setup
+	public void setup() {
+		Enigma enigma = Machines.machine( 1, false );
+		rotor = enigma.getCurrentRotors().get( 0 );
+		rotor.reset( 7 );
+		plugboard = enigma.getPlugboard();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( Rotor.ROTOR_SIZE )
+	public int rotorSend() {
+		int sum = 0;
+		for( int i = 0; i < Rotor.ROTOR_SIZE; i++ ) {
+			sum += rotor.send( i );
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( Rotor.ROTOR_SIZE )
+	public int rotorGetReverse() {
+		int sum = 0;
+		for( int i = 0; i < Rotor.ROTOR_SIZE; i++ ) {
+			sum += rotor.getReverse( i );
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( Rotor.ROTOR_SIZE )
+	public int plugboardGetEndpoint() {
+		int sum = 0;
+		for( char ch = 'A'; ch <= 'Z'; ch++ ) {
+			sum += plugboard.getEndpoint( ch );
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public Object plugboardGetConnections() {
+		return plugboard.getConnections();
+	}
+}
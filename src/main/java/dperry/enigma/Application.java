@@ -1,15 +1,49 @@
 package dperry.enigma;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
-import dperry.enigma.parts.Reflector;
+import dperry.enigma.analysis.CribScanner;
+import dperry.enigma.analysis.KeySearch;
+import dperry.enigma.analysis.MachineKey;
+import dperry.enigma.analysis.NgramCounts;
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.io.BinaryTranslator;
+import dperry.enigma.io.ConfigSnapshot;
+import dperry.enigma.io.KeySheetGenerator;
+import dperry.enigma.io.ParallelTranslator;
+import dperry.enigma.io.StreamTranslator;
+import dperry.enigma.metrics.Metrics;
 import dperry.enigma.parts.Rotor;
+import dperry.enigma.server.EnigmaServer;
+import dperry.enigma.server.SearchCoordinator;
+import dperry.enigma.server.SearchJob;
+import dperry.enigma.server.SearchWorker;
 
 public class Application {
 	private static Application application;
@@ -18,6 +52,14 @@ public class Application {
 	
 	public static final String CMD_ENCODE = "encode";
 	public static final String CMD_DECODE = "decode";
+	public static final String CMD_SEARCH = "search";
+	public static final String CMD_SERVE = "serve";
+	public static final String CMD_BATCH = "batch";
+	public static final String CMD_KEYS = "keys";
+	public static final String CMD_PLACE = "place";
+	public static final String CMD_NGRAMS = "ngrams";
+	public static final String CMD_COORDINATE = "coordinate";
+	public static final String CMD_WORK = "work";
 	
 	public static final String CMD_QUIT = "quit";
 	
@@ -25,6 +67,8 @@ public class Application {
 	public static final String CMD_INFO_AVAILABLE_ROTORS = "get all rot";
 	public static final String CMD_INFO_AVAILABLE_REFLECTORS = "get all ref";
 	public static final String CMD_INFO_STATUS = "status";
+	public static final String CMD_INFO_STATS = "stats";
+	public static final String CMD_INFO_STATE = "get state";
 	
 	public static final String CMD_CFG_RESET = "clear config";
 	public static final String CMD_CFG_RELOAD = "reload config";
@@ -33,6 +77,7 @@ public class Application {
 	public static final String CMD_CFG_ADV_ROT_OFF = "set advance rotors off";
 	public static final String CMD_CFG_ADV_REF_ON = "set advance reflector on";
 	public static final String CMD_CFG_ADV_REF_OFF = "set advance reflector off";
+	public static final String CMD_CFG_STEPPING = "set stepping ";
 	
 	public static final String CMD_CFG_ADD_ROTOR = "add rotor ";
 	public static final String CMD_CFG_SET_REFLECTOR = "set reflector ";
@@ -40,6 +85,7 @@ public class Application {
 	public static final String CMD_CFG_REMOVE_REFLECTOR = "remove reflector";
 	
 	public static final String CMD_CFG_SET_POSITIONS = "set positions ";
+	public static final String CMD_CFG_STATE = "set state ";
 	
 	public static final String CMD_CFG_ADD_CONNECTION = "add connection ";
 	public static final String CMD_CFG_REMOVE_CONNECTION = "remove connection ";
@@ -52,12 +98,56 @@ public class Application {
 	public static final String USER_PROMPT = " > ";
 	public static final String USER_PROMPT_STRESS = " >> ";
 	
+	public static final String ARG_IN = "--in";
+	public static final String ARG_OUT = "--out";
+	public static final String ARG_CONFIG = "--config";
+	public static final String ARG_ROTORS = "--rotors";
+	public static final String ARG_REFLECTOR = "--reflector";
+	public static final String ARG_POSITIONS = "--positions";
+	public static final String ARG_REFLECTOR_POSITION = "--reflector-position";
+	public static final String ARG_PLUGBOARD = "--plugboard";
+	public static final String ARG_ADV_REF_ON = "--advance-reflector";
+	public static final String ARG_ADV_ROT_OFF = "--no-advance-rotors";
+	public static final String ARG_STEPPING = "--stepping";
+	public static final String ARG_PARALLEL = "--parallel";
+	public static final String ARG_PRECOMPUTE = "--precompute";
+	public static final String ARG_ROTOR_COUNT = "--rotor-count";
+	public static final String ARG_CRIB = "--crib";
+	public static final String ARG_CRIB_OFFSET = "--crib-offset";
+	public static final String ARG_PORT = "--port";
+	public static final String ARG_COUNT = "--count";
+	public static final String ARG_SEED = "--seed";
+	public static final String ARG_PAIRS = "--pairs";
+	public static final String ARG_TEXT_LENGTH = "--text-length";
+	public static final String ARG_FORMAT = "--format";
+	public static final String ARG_HOST = "--host";
+	public static final String ARG_WORKERS = "--workers";
+	public static final String ARG_CHECKPOINT = "--checkpoint";
+	public static final String ARG_UNITS = "--units";
+	public static final String ARG_LEASE = "--lease";
+	
+	public static final String DEFAULT_CONFIG = "enigma.config";
+	
+	public static final int EXIT_OK = 0;
+	public static final int EXIT_USAGE = 1;
+	public static final int EXIT_IO = 2;
+	public static final int EXIT_FAILED = 3;
+	
+	private static final int BATCH_BUFFER_SIZE = 64 * 1024;
+	private static final String NGRAM_EXTENSION = ".ngram";
+	
+	private String configPath = DEFAULT_CONFIG;
 	
 	
 	public static void main( String args[] ) {
 
+		Metrics.register();
 		application = new Application();
 		
+		if( args.length > 0 ) {
+			System.exit( application.run( args ) );
+		}
+		
 		application.start();
 	}
 	
@@ -65,7 +155,7 @@ public class Application {
 		
 		enigma = new Enigma();
 		
-		if( readConfig() ) {
+		if( readConfig( true ) ) {
 			processInput();
 		}
 		
@@ -73,412 +163,898 @@ public class Application {
 	}
 	
 	/**
-	 * Main application loop. User is prompted for commands and given feedback from those
-	 * commands until the user requests application termination
+	 * Non-interactive mode. The machine is configured from the arguments and the input is
+	 * streamed through it, from a file or stdin to a file or stdout. Only errors are reported,
+	 * on stderr, so stdout carries nothing but the translated text.
+	 * 
+	 * In search mode the input is cipher text and every setting that decrypts it to the crib
+	 * is written to stdout, one per line, with progress on stderr.
+	 * 
+	 * @return the process exit status
 	 */
-	private void processInput() {
+	public int run( String[] args ) {
 		
-		String currLine;
-		
-		InputStreamReader input;
-		BufferedReader reader;
+		enigma = new Enigma();
 		
-		input = new InputStreamReader( System.in );
-		reader = new BufferedReader( input );
+		String mode = args[0];
+		if( !mode.equals( CMD_ENCODE ) && !mode.equals( CMD_DECODE ) && !mode.equals( CMD_SEARCH )
+				&& !mode.equals( CMD_SERVE ) && !mode.equals( CMD_BATCH ) && !mode.equals( CMD_KEYS ) && !mode.equals( CMD_PLACE )
+				&& !mode.equals( CMD_NGRAMS ) && !mode.equals( CMD_COORDINATE ) && !mode.equals( CMD_WORK ) ) {
+			System.err.println( PREFIX_ERR + "Unrecognized mode: " + mode );
+			printUsage();
+			return EXIT_USAGE;
+		}
 		
+		String in = null;
+		String out = null;
+		String rotors = null;
+		String reflector = null;
+		String positions = null;
+		String reflectorPosition = null;
+		String plugboard = null;
+		boolean parallel = false;
+		boolean advanceRotors = true;
+		boolean advanceReflector = false;
+		Stepping stepping = Stepping.ODOMETER;
+		String crib = null;
+		int cribOffset = 0;
+		int rotorCount = 3;
+		int port = -1;
+		String host = null;
+		int workers = 0;
+		String checkpoint = null;
+		long unitsPerTask = SearchCoordinator.DEFAULT_UNITS_PER_TASK;
+		long lease = SearchCoordinator.DEFAULT_LEASE_MILLIS / 1000;
+		long count = 1;
+		Long seed = null;
+		int pairs = 10;
+		int textLength = 32;
+		KeySheetGenerator.Format format = KeySheetGenerator.Format.CSV;
 		
-		try {
-			
-			System.out.println( PREFIX_INFO + "Type 'help' for available commands" );
+		for( int i = 1; i < args.length; i++ ) {
+			String arg = args[i];
 			
-			System.out.print( USER_PROMPT );
-			while( !(currLine = reader.readLine().trim()).equals( CMD_QUIT ) ) {
+			if( arg.equals( ARG_ADV_REF_ON ) ) {
+				advanceReflector = true;
+			}
+			else if( arg.equals( ARG_ADV_ROT_OFF ) ) {
+				advanceRotors = false;
+			}
+			else if( arg.equals( ARG_PARALLEL ) ) {
+				parallel = true;
+			}
+			else if( i + 1 < args.length ) {
+				String value = args[++i];
 				
-				if( currLine.length() > 0 ) {
-					
-					// encode/decode
-					
-					if( currLine.equals( CMD_ENCODE ) 
-							|| currLine.equals( CMD_DECODE ) ) {
-						translateMessage( reader, currLine.equals( CMD_ENCODE ) );
-					}
-					
-					// info
-					
-					else if( currLine.startsWith( CMD_INFO_HELP ) ) {
-						printHelp();
-					}
-					else if( currLine.startsWith( CMD_INFO_AVAILABLE_ROTORS ) ) {
-						getAvailableRotors();
-					}
-					else if( currLine.startsWith( CMD_INFO_AVAILABLE_REFLECTORS ) ) {
-						getAvailableReflectors();
-					}
-					else if( currLine.startsWith( CMD_INFO_STATUS ) ) {
-						getStatus();
-					}
-					
-					// configure
-					
-					else if( currLine.startsWith( CMD_CFG_RESET ) ) {
-						reset( reader );
-					}
-					else if( currLine.startsWith( CMD_CFG_RELOAD ) ) {
-						reload( reader );
-					}
-					else if( currLine.startsWith( CMD_CFG_SET_POSITIONS ) ) {
-						setPositions( currLine.substring( CMD_CFG_SET_POSITIONS.length() ).split( " " ) );
-						getStatus();
-					}
-					else if( currLine.equals( CMD_CFG_ADV_ROT_ON ) ) {
-						enigma.setAdvanceRotors( true );
+				if( arg.equals( ARG_IN ) ) {
+					in = value;
+				}
+				else if( arg.equals( ARG_OUT ) ) {
+					out = value;
+				}
+				else if( arg.equals( ARG_CONFIG ) ) {
+					configPath = value;
+				}
+				else if( arg.equals( ARG_ROTORS ) ) {
+					rotors = value;
+				}
+				else if( arg.equals( ARG_REFLECTOR ) ) {
+					reflector = value;
+				}
+				else if( arg.equals( ARG_POSITIONS ) ) {
+					positions = value;
+				}
+				else if( arg.equals( ARG_REFLECTOR_POSITION ) ) {
+					reflectorPosition = value;
+				}
+				else if( arg.equals( ARG_PLUGBOARD ) ) {
+					plugboard = value;
+				}
+				else if( arg.equals( ARG_STEPPING ) ) {
+					stepping = Session.parseStepping( value );
+					if( stepping == null ) {
+						System.err.println( PREFIX_ERR + "Unknown stepping: " + value );
+						return EXIT_USAGE;
 					}
-					else if( currLine.equals( CMD_CFG_ADV_ROT_OFF ) ) {
-						enigma.setAdvanceRotors( false );
+				}
+				else if( arg.equals( ARG_CRIB ) ) {
+					crib = value.toUpperCase();
+				}
+				else if( arg.equals( ARG_HOST ) ) {
+					host = value;
+				}
+				else if( arg.equals( ARG_CHECKPOINT ) ) {
+					checkpoint = value;
+				}
+				else if( arg.equals( ARG_FORMAT ) ) {
+					if( value.equalsIgnoreCase( "csv" ) ) {
+						format = KeySheetGenerator.Format.CSV;
 					}
-					else if( currLine.equals( CMD_CFG_ADV_REF_ON ) ) {
-						enigma.setAdvanceReflector( true );
+					else if( value.equalsIgnoreCase( "binary" ) ) {
+						format = KeySheetGenerator.Format.BINARY;
 					}
-					else if( currLine.equals( CMD_CFG_ADV_REF_OFF ) ) {
-						enigma.setAdvanceReflector( false );
+					else {
+						System.err.println( PREFIX_ERR + "Unknown format: " + value );
+						return EXIT_USAGE;
 					}
-					else if( currLine.startsWith( CMD_CFG_REMOVE_ROTOR ) ) {
-						ArrayList<Rotor> rotors = enigma.getCurrentRotors();
-						if( rotors.size() > 0 ) {
-							try {
-								Integer index = new Integer( currLine.substring( CMD_CFG_REMOVE_ROTOR.length() ) );
-								rotors.remove( (int)index );
-							}
-							catch( NumberFormatException e ) {
-								System.err.println( PREFIX_ERR + "Invalid rotor selection" );
-							}
-							catch( IndexOutOfBoundsException e ) {
-								System.err.println( PREFIX_ERR + "Invalid rotor selection" );
-							}
+				}
+				else if( arg.equals( ARG_CRIB_OFFSET ) || arg.equals( ARG_ROTOR_COUNT ) || arg.equals( ARG_PORT )
+						|| arg.equals( ARG_COUNT ) || arg.equals( ARG_SEED ) || arg.equals( ARG_PAIRS ) || arg.equals( ARG_TEXT_LENGTH )
+						|| arg.equals( ARG_WORKERS ) || arg.equals( ARG_UNITS ) || arg.equals( ARG_LEASE ) ) {
+					try {
+						if( arg.equals( ARG_CRIB_OFFSET ) ) {
+							cribOffset = Integer.parseInt( value );
 						}
-						else {
-							System.out.println( PREFIX_ERR + "No rotors in use" );
+						else if( arg.equals( ARG_ROTOR_COUNT ) ) {
+							rotorCount = Integer.parseInt( value );
 						}
-					}
-					else if( currLine.equals( CMD_CFG_REMOVE_REFLECTOR ) ) {
-						enigma.setReflector( null );
-					}
-					
-					else if( currLine.startsWith( CMD_CFG_ADD_ROTOR ) ) {
-						addRotor( currLine.substring( CMD_CFG_ADD_ROTOR.length() ) );
-					}
-					else if( currLine.startsWith( CMD_CFG_SET_REFLECTOR ) ) {
-						setReflector( currLine.substring( CMD_CFG_SET_REFLECTOR.length() ) );
-					}
-					else if( currLine.startsWith( CMD_CFG_ADD_CONNECTION ) ) {
-						char[] pair = currLine.substring( CMD_CFG_ADD_CONNECTION.length() ).toUpperCase().toCharArray();
-						
-						if( pair.length == 2 ) {
-							if( enigma.addPlugboardConnection( pair[0], pair[1] ) ) {
-								System.out.println( PREFIX_INFO + "Added connection " + pair[0] + "-" + pair[1] );
-							}
-							else {
-								System.err.println( PREFIX_ERR + "Connections exist for one or more of the specified endpoints" );
-							}
+						else if( arg.equals( ARG_COUNT ) ) {
+							count = Long.parseLong( value );
+						}
+						else if( arg.equals( ARG_SEED ) ) {
+							seed = Long.parseLong( value );
+						}
+						else if( arg.equals( ARG_PAIRS ) ) {
+							pairs = Integer.parseInt( value );
+						}
+						else if( arg.equals( ARG_TEXT_LENGTH ) ) {
+							textLength = Integer.parseInt( value );
+						}
+						else if( arg.equals( ARG_WORKERS ) ) {
+							workers = Integer.parseInt( value );
+						}
+						else if( arg.equals( ARG_UNITS ) ) {
+							unitsPerTask = Long.parseLong( value );
+						}
+						else if( arg.equals( ARG_LEASE ) ) {
+							lease = Long.parseLong( value );
 						}
 						else {
-							System.err.println( PREFIX_ERR + "Incomplete connection info" );
+							port = Integer.parseInt( value );
 						}
 					}
-					else if( currLine.startsWith( CMD_CFG_REMOVE_CONNECTION ) ) {
-						char ch = currLine.substring( CMD_CFG_REMOVE_CONNECTION.length() ).toUpperCase().toCharArray()[0];
-						
-						enigma.removePlugboardConnection( ch );
+					catch( NumberFormatException e ) {
+						System.err.println( PREFIX_ERR + "Invalid number: " + value );
+						return EXIT_USAGE;
 					}
-					else if( currLine.equals( CMD_CFG_CLEAR_PLUGBOARD ) ) {
-						enigma.resetPlugboard();
+				}
+				else if( arg.equals( ARG_PRECOMPUTE ) ) {
+					try {
+						enigma.setPrecomputeLimit( Long.parseLong( value ) * 1024 * 1024 );
 					}
-					else {
-						System.err.println( PREFIX_ERR + "Unrecognized command: " + currLine );
+					catch( NumberFormatException e ) {
+						System.err.println( PREFIX_ERR + "Invalid table size: " + value );
+						return EXIT_USAGE;
 					}
 				}
-				System.out.print( USER_PROMPT );
+				else {
+					System.err.println( PREFIX_ERR + "Unrecognized option: " + arg );
+					printUsage();
+					return EXIT_USAGE;
+				}
+			}
+			else {
+				System.err.println( PREFIX_ERR + "Missing value for option: " + arg );
+				printUsage();
+				return EXIT_USAGE;
 			}
-			
-			System.out.println( PREFIX_INFO + "Done" );
 		}
-		catch( IOException e ) {
-			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+		
+		if( !readConfig( false ) ) {
+			return EXIT_USAGE;
 		}
-		finally {
+		
+		// importing resets the machine, so stepping is set afterwards
+		enigma.setAdvanceRotors( advanceRotors );
+		enigma.setAdvanceReflector( advanceReflector );
+		enigma.setStepping( stepping );
+		
+		if( enigma.getAlphabetSize() != Rotor.ROTOR_SIZE
+				&& ( mode.equals( CMD_SEARCH ) || mode.equals( CMD_KEYS ) || mode.equals( CMD_COORDINATE ) || mode.equals( CMD_WORK ) || parallel ) ) {
+			System.err.println( PREFIX_ERR + mode + ( parallel ? " --parallel" : "" ) + " needs the " + Rotor.ROTOR_SIZE
+					+ " letter alphabet, the configuration has " + enigma.getAlphabetSize() + " symbols" );
+			return EXIT_USAGE;
+		}
+		
+		if( mode.equals( CMD_SEARCH ) ) {
+			return search( in, crib, cribOffset, rotorCount, plugboard );
+		}
+		if( mode.equals( CMD_COORDINATE ) ) {
+			SearchJob job = readJob( in, crib, cribOffset, rotorCount, plugboard, stepping, advanceRotors, advanceReflector );
+			if( job == null ) {
+				return EXIT_USAGE;
+			}
+			return coordinate( job, host, port >= 0 ? port : SearchCoordinator.DEFAULT_PORT, workers, checkpoint, unitsPerTask, lease );
+		}
+		if( mode.equals( CMD_WORK ) ) {
+			return work( host, port >= 0 ? port : SearchCoordinator.DEFAULT_PORT );
+		}
+		if( mode.equals( CMD_SERVE ) ) {
+			return serve( port >= 0 ? port : EnigmaServer.DEFAULT_PORT );
+		}
+		if( mode.equals( CMD_PLACE ) ) {
+			return place( in, out, crib );
+		}
+		if( mode.equals( CMD_NGRAMS ) ) {
+			return ngrams( in, out );
+		}
+		if( mode.equals( CMD_KEYS ) ) {
+			return keys( out, count, seed, rotorCount, pairs, textLength, format );
+		}
+		if( mode.equals( CMD_BATCH ) ) {
+			// the machine can be set up here or by the script
+			if( ( rotors != null || reflector != null || plugboard != null )
+					&& !configure( rotors, reflector, positions, reflectorPosition, plugboard ) ) {
+				return EXIT_USAGE;
+			}
+			return batch( in, out );
+		}
+		
+		if( !configure( rotors, reflector, positions, reflectorPosition, plugboard ) ) {
+			return EXIT_USAGE;
+		}
+		
+		if( parallel ) {
+			if( in == null || out == null ) {
+				System.err.println( PREFIX_ERR + "Parallel translation needs both an input and an output file" );
+				return EXIT_USAGE;
+			}
 			try {
-				if( reader != null ) {
-					reader.close();
-				}
+				long start = System.nanoTime();
+				ParallelTranslator translator = new ParallelTranslator( enigma.compile(), mode.equals( CMD_ENCODE ) );
+				long letters = translator.translate( Paths.get( in ), Paths.get( out ) );
+				Metrics.getDefault().messageConverted( letters, System.nanoTime() - start );
 			}
 			catch( IOException e ) {
 				System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+				return EXIT_IO;
+			}
+			catch( Exception e ) {
+				System.err.println( PREFIX_ERR + "Exception: " + e.getMessage() );
+				return EXIT_USAGE;
 			}
+			return EXIT_OK;
+		}
+		
+		ReadableByteChannel input = null;
+		WritableByteChannel output = null;
+		try {
+			input = in != null 
+					? FileChannel.open( Paths.get( in ), StandardOpenOption.READ ) 
+					: Channels.newChannel( System.in );
+			output = out != null 
+					? FileChannel.open( Paths.get( out ), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) 
+					: Channels.newChannel( System.out );
+			
+			long start = System.nanoTime();
+			long letters;
+			if( enigma.getAlphabetSize() == Rotor.ROTOR_SIZE ) {
+				StreamTranslator translator = new StreamTranslator( enigma.compile(), mode.equals( CMD_ENCODE ) );
+				letters = translator.translate( input, output );
+			}
+			else {
+				// bytes are symbols, passed through as they are
+				BinaryTranslator translator = new BinaryTranslator( enigma.compileSymbols() );
+				letters = translator.translate( input, output );
+			}
+			Metrics.getDefault().messageConverted( letters, System.nanoTime() - start );
+		}
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			return EXIT_IO;
+		}
+		catch( Exception e ) {
+			System.err.println( PREFIX_ERR + "Exception: " + e.getMessage() );
+			return EXIT_USAGE;
+		}
+		finally {
 			try {
 				if( input != null ) {
 					input.close();
 				}
+				if( output != null ) {
+					output.close();
+				}
 			}
 			catch( IOException e ) {
 				System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
 			}
 		}
+		
+		return EXIT_OK;
 	}
 	
-	private void setReflector( String name ) {
-		ArrayList<Reflector> reflectors = enigma.getAvailableReflectors();
-		if( reflectors.size() > 0 ) {
-			for( Reflector reflector : reflectors ) {
-				if( reflector.getName().equals( name ) ) {
-					enigma.setReflector( reflector );
-					break;
+	/**
+	 * Searches every rotor order, reflector and start position for settings that decrypt the
+	 * input to the crib
+	 */
+	private int search( String in, String crib, int cribOffset, int rotorCount, String plugboard ) {
+		if( crib == null ) {
+			System.err.println( PREFIX_ERR + "A crib is required" );
+			printUsage();
+			return EXIT_USAGE;
+		}
+		if( plugboard != null && !configurePlugboard( plugboard ) ) {
+			return EXIT_USAGE;
+		}
+		
+		try {
+			char[] ciphertext = readLetters( in ).toCharArray();
+			
+			KeySearch search = new KeySearch( enigma, rotorCount, ciphertext, crib.toCharArray(), cribOffset );
+			search.search( new KeySearch.Listener() {
+				private int percent = -1;
+				
+				public synchronized void progress( long searched, long total ) {
+					int now = (int)( searched * 100 / total );
+					if( now != percent ) {
+						percent = now;
+						System.err.print( "\r" + PREFIX_INFO + "Searched " + now + "%" + ( now == 100 ? "\n" : "" ) );
+					}
 				}
-			}
+				
+				public synchronized void found( MachineKey key ) {
+					System.out.println( key );
+				}
+			} );
 		}
-		else {
-			System.out.println( PREFIX_ERR + "No reflectors available to use" );
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			return EXIT_IO;
+		}
+		catch( Exception e ) {
+			System.err.println( PREFIX_ERR + "Exception: " + e.getMessage() );
+			return EXIT_USAGE;
 		}
+		return EXIT_OK;
 	}
 	
-	private void addRotor( String name ) {
-		ArrayList<Rotor> rotors = enigma.getAvailableRotors();
-		if( rotors.size() > 0 ) {
-			for( Rotor rotor : rotors ) {
-				if( rotor.getName().equals( name ) ) {
-					enigma.addRotor( rotor );
-					break;
-				}
-			}
+	/**
+	 * Reads the cipher text for a search, keeping only its letters, in upper case
+	 */
+	private String readLetters( String in ) throws IOException {
+		InputStream input = in != null ? new FileInputStream( in ) : System.in;
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while( ( read = input.read( buffer ) ) >= 0 ) {
+			text.write( buffer, 0, read );
 		}
-		else {
-			System.out.println( PREFIX_ERR + "No rotors available to use" );
+		if( in != null ) {
+			input.close();
 		}
+		return new String( text.toByteArray(), "US-ASCII" ).toUpperCase().replaceAll( "[^A-Z]", "" );
 	}
 	
-	private void getAvailableReflectors() {
-		System.out.print( PREFIX_INFO );
-		for( String reflector : enigma.availableReflectors() ) {
-			System.out.print( reflector + " " );
+	/**
+	 * Describes the search a coordinator hands out, or returns null having reported why there
+	 * is none
+	 */
+	private SearchJob readJob( String in, String crib, int cribOffset, int rotorCount, String plugboard, Stepping stepping,
+			boolean advanceRotors, boolean advanceReflector ) {
+		if( crib == null ) {
+			System.err.println( PREFIX_ERR + "A crib is required" );
+			printUsage();
+			return null;
+		}
+		if( plugboard != null && !configurePlugboard( plugboard ) ) {
+			return null;
+		}
+		if( !crib.matches( "[A-Z]+" ) ) {
+			System.err.println( PREFIX_ERR + "Invalid crib: " + crib );
+			return null;
+		}
+		try {
+			return new SearchJob( rotorCount, readLetters( in ), crib, cribOffset, plugboard, stepping, advanceRotors, advanceReflector );
+		}
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			return null;
 		}
-		System.out.print( "\n" );
 	}
 	
-	private void getAvailableRotors() {
-		System.out.print( PREFIX_INFO );
-		for( String rotor : enigma.availableRotors() ) {
-			System.out.print( rotor + " " );
+	/**
+	 * Hands out the search to workers, starting the given number on this host, and prints the
+	 * hits once every unit is searched. With a checkpoint a stopped search picks up where it
+	 * left off, printing the hits it had already found.
+	 */
+	private int coordinate( SearchJob job, String host, int port, int workers, String checkpoint, long unitsPerTask, long lease ) {
+		SearchCoordinator coordinator = null;
+		List<Process> processes = new ArrayList<Process>();
+		try {
+			InetAddress bind = host != null ? InetAddress.getByName( host ) : InetAddress.getLoopbackAddress();
+			coordinator = new SearchCoordinator( enigma, job, bind, port, checkpoint != null ? Paths.get( checkpoint ) : null,
+					unitsPerTask, lease * 1000 );
+			System.err.println( PREFIX_INFO + "Listening on port " + coordinator.getPort() );
+			
+			String java = Paths.get( System.getProperty( "java.home" ), "bin", "java" ).toString();
+			for( int i = 0; i < workers && !coordinator.isFinished(); i++ ) {
+				ProcessBuilder builder = new ProcessBuilder( java, "-cp", System.getProperty( "java.class.path" ), Application.class.getName(),
+						CMD_WORK, ARG_PORT, String.valueOf( coordinator.getPort() ), ARG_CONFIG, configPath );
+				builder.redirectOutput( ProcessBuilder.Redirect.DISCARD );
+				builder.redirectError( ProcessBuilder.Redirect.INHERIT );
+				processes.add( builder.start() );
+			}
+			if( !processes.isEmpty() ) {
+				// with no worker left to finish it the search would wait for others forever
+				final SearchCoordinator stopped = coordinator;
+				CompletableFuture<?>[] exits = new CompletableFuture<?>[processes.size()];
+				for( int i = 0; i < exits.length; i++ ) {
+					exits[i] = processes.get( i ).onExit();
+				}
+				CompletableFuture.allOf( exits ).thenRun( new Runnable() {
+					public void run() {
+						try {
+							stopped.close();
+						}
+						catch( IOException e ) {
+							// reported when the search comes back unfinished
+						}
+					}
+				} );
+			}
+			
+			coordinator.run( new SearchCoordinator.Listener() {
+				private int percent = -1;
+				
+				public synchronized void progress( long searched, long total ) {
+					int now = (int)( searched * 100 / total );
+					if( now != percent ) {
+						percent = now;
+						System.err.print( "\r" + PREFIX_INFO + "Searched " + now + "%" + ( now == 100 ? "\n" : "" ) );
+					}
+				}
+				
+				public synchronized void found( MachineKey key ) {
+					System.out.println( key );
+				}
+				
+				public synchronized void refused( String worker, String message ) {
+					System.err.println( ( percent >= 0 ? "\n" : "" ) + PREFIX_ERR + "Worker " + worker + " dropped: " + message );
+				}
+			} );
+			
+			if( !coordinator.isFinished() ) {
+				System.err.println( PREFIX_ERR + "Every worker stopped before the search was finished" );
+				return EXIT_FAILED;
+			}
+			
+			// workers leave once told there is nothing left
+			for( Process process : processes ) {
+				process.waitFor();
+			}
+		}
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			return EXIT_IO;
+		}
+		catch( Exception e ) {
+			System.err.println( PREFIX_ERR + "Exception: " + e.getMessage() );
+			return EXIT_USAGE;
 		}
-		System.out.print( "\n" );
+		finally {
+			for( Process process : processes ) {
+				process.destroy();
+			}
+			try {
+				if( coordinator != null ) {
+					coordinator.close();
+				}
+			}
+			catch( IOException e ) {
+				System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			}
+		}
+		return EXIT_OK;
 	}
 	
-	private void reset( BufferedReader reader ) throws IOException {
-		System.out.println("Clear all imported data?" );
-		if( reader.readLine().toLowerCase().startsWith( "y" ) ) {
-			System.out.println( PREFIX_WARN + "Clearing data" );
-			enigma.clear();
+	/**
+	 * Searches tasks from a coordinator on every core until there are none left
+	 */
+	private int work( String host, int port ) {
+		String target = host != null ? host : InetAddress.getLoopbackAddress().getHostAddress();
+		try {
+			long searched = new SearchWorker( enigma, target, port, ForkJoinPool.commonPool() ).run();
+			System.err.println( PREFIX_INFO + "Searched " + searched + " units" );
+		}
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			return EXIT_IO;
 		}
-		else {
-			System.out.println( PREFIX_INFO + "Canceling" );
+		catch( Exception e ) {
+			System.err.println( PREFIX_ERR + "Exception: " + e.getMessage() );
+			return EXIT_FAILED;
 		}
+		return EXIT_OK;
 	}
 	
-	private void reload( BufferedReader reader ) throws IOException {
-		System.out.println("Reload all imported data?" );
-		if( reader.readLine().toLowerCase().startsWith( "y" ) ) {
-			System.out.println( PREFIX_WARN + "Reloading data" );
-			readConfig();
+	/**
+	 * Lists every legal placement of the cribs in the input files, as csv of file, crib and
+	 * letter offset. Placements of a file come crib by crib within each block of it, in order.
+	 */
+	private int place( String in, String out, String cribs ) {
+		if( cribs == null || in == null ) {
+			System.err.println( PREFIX_ERR + "Cribs and input files are required" );
+			printUsage();
+			return EXIT_USAGE;
+		}
+		
+		PrintStream output = null;
+		try {
+			String[] names = cribs.split( "," );
+			char[][] letters = new char[names.length][];
+			for( int i = 0; i < names.length; i++ ) {
+				letters[i] = names[i].toCharArray();
+			}
+			final CribScanner scanner = new CribScanner( letters );
+			
+			List<Path> files = new ArrayList<Path>();
+			for( String file : in.split( "," ) ) {
+				files.add( Paths.get( file ) );
+			}
+			
+			output = new PrintStream( new BufferedOutputStream( out != null 
+					? new FileOutputStream( out ) 
+					: new FileOutputStream( FileDescriptor.out ), BATCH_BUFFER_SIZE ), false );
+			final PrintStream sink = output;
+			sink.println( "file,crib,offset" );
+			
+			scanner.scan( files, new CribScanner.Listener() {
+				public synchronized void found( Path file, int crib, long offset ) {
+					sink.print( file );
+					sink.print( ',' );
+					sink.print( names[crib] );
+					sink.print( ',' );
+					sink.println( offset );
+				}
+				
+				public synchronized void scanned( Path file, long letters ) {
+					System.err.println( PREFIX_INFO + file + ": " + letters + " letters" );
+				}
+			}, ForkJoinPool.commonPool() );
+			
+			sink.flush();
+			if( sink.checkError() ) {
+				System.err.println( PREFIX_ERR + "Could not write the placements" );
+				return EXIT_IO;
+			}
 		}
-		else {
-			System.out.println( PREFIX_INFO + "Canceling" );
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			return EXIT_IO;
 		}
+		catch( Exception e ) {
+			System.err.println( PREFIX_ERR + "Exception: " + e.getMessage() );
+			return EXIT_USAGE;
+		}
+		finally {
+			if( output != null ) {
+				output.close();
+			}
+		}
+		return EXIT_OK;
 	}
 	
-	private void printHelp() {
+	/**
+	 * Counts the n-grams of the corpus files and writes a table for each size, from single
+	 * letters up, named after out: out.1.ngram, out.2.ngram and so on
+	 */
+	private int ngrams( String in, String out ) {
+		if( in == null || out == null ) {
+			System.err.println( PREFIX_ERR + "Corpus files and an output name are required" );
+			printUsage();
+			return EXIT_USAGE;
+		}
 		
-		System.out.println( "" );
-		System.out.println( "Stored Configurations:" );
-		System.out.println( "  clear config " );
-		System.out.println( "    clears all stored configuration data (rotors, reflectors)" );
-		System.out.println( "  reload config" );
-		System.out.println( "    loads stored configuration from file (same as restarting app)" );
-		System.out.println( "  get all rotors" );
-		System.out.println( "    returns the names of all available rotors" );
-		System.out.println( "  get all reflectors" );
-		System.out.println( "    returns the names of all available reflectors" );
-		System.out.println( "" );
-		System.out.println( "Rotor Configuration" );
-		System.out.println( "  add rotor [name]" );
-		System.out.println( "    adds the specified rotor to the end of the active rotor set" );
-		System.out.println( "  remove rotor [index]" );
-		System.out.println( "    removes the rotor at the specified index (zero-based) from the active rotor set" );
-		System.out.println( "  set advance rotor [on|off]" );
-		System.out.println( "    (default - on)" );
-		System.out.println( "    turns the advancing of the active rotors on or off." );
-		System.out.println( "    turning off essentially switches to a simple substitution cipher" );
-		System.out.println( "" );
-		System.out.println( "Reflector Configuration" );
-		System.out.println( "  set reflector [name]" );
-		System.out.println( "    set the active reflector to that specified " );
-		System.out.println( "  remove reflector" );
-		System.out.println( "    removes the active reflector" );
-		System.out.println( "  set advance reflector [on|off]" );
-		System.out.println( "    (default - off)" );
-		System.out.println( "    turns the advancing of the active reflector on or off." );
-		System.out.println( "    turning on adds an extra level of encryption" );
-		System.out.println( "" );
-		System.out.println( "Rotor/Reflector positioning" );
-		System.out.println( "  set positions [rotors] [reflector]" );
-		System.out.println( "    sets the rotors and reflectors to the specified positions" );
-		System.out.println( "" );
-		System.out.println( "    example: if using 4 rotors" );
-		System.out.println( "      set positions ABCD E" );
-		System.out.println( "" );
-		System.out.println( "Plugboard configuration" );
-		System.out.println( "  add connection [AB]" );
-		System.out.println( "    adds a connection between A and B" );
-		System.out.println( "  remove connection [A]" );
-		System.out.println( "    removes the connection touching A" );
-		System.out.println( "  clear plugboard" );
-		System.out.println( "    removes all connections from the plugboard" );
-		System.out.println( "" );
-		System.out.println( "Machine info" );
-		System.out.println( "  status" );
-		System.out.println( "    displays the status of the machine, as follows:" );
-		System.out.println( "" );
-		System.out.println( "           Current Configuration:" );
-		System.out.println( "    	    + Rotors" );
-		System.out.println( "    	        0      gamma: A" );
-		System.out.println( "    	        1       beta: A" );
-		System.out.println( "    	        2      delta: A" );
-		System.out.println( "    	    - Reflector" );
-		System.out.println( "    	                zulu: A" );
-		System.out.println( "    	      Plugboard" );
-		System.out.println( "    	       C-P L-O T-R" );
-		System.out.println( "" );
-		System.out.println( "      the +/- indicate advancing status (on/off)" );
-		System.out.println( "      the rotor/reflector lines give the following information:" );
-		System.out.println( "         [rotor #]   name: position" );
-		System.out.println( "" );
-		System.out.println( "Message translation" );
-		System.out.println( "  encode" );
-		System.out.println( "    after entering this command, the user is prompted for the message to be encoded." );
-		System.out.println( "    the decoded message is displayed in blocks of 5 characters" );
-		System.out.println( "  decode" );
-		System.out.println( "    after entering this command, the user is prompted for the message to be decoded." );
-		System.out.println( "" );
-		System.out.println( "Application" );
-		System.out.println( "  help" );
-		System.out.println( "    displays this message" );
-		System.out.println( "  quit" );
-		System.out.println( "    exits the application" );
-		System.out.println( "" );
+		try {
+			NgramCounts counts = new NgramCounts();
+			for( String file : in.split( "," ) ) {
+				counts.add( Paths.get( file ) );
+			}
+			for( int n = 1; n <= NgramCounts.MAX_N; n++ ) {
+				Path table = Paths.get( out + "." + n + NGRAM_EXTENSION );
+				counts.write( n, table );
+				System.err.println( PREFIX_INFO + table + ": " + counts.getTotal( n ) + " " + n + "-grams" );
+			}
+		}
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			return EXIT_IO;
+		}
+		return EXIT_OK;
 	}
 	
-	private void setPositions( String[] positions ) {
-		String rotorPositions = null;
-		String reflector = null;
-		
-		if( positions.length > 0 ) {
-			rotorPositions = positions[0].toUpperCase();
+	/**
+	 * Writes count random settings with their test vectors. Without a seed one is picked and
+	 * reported, so the sheet can be made again.
+	 */
+	private int keys( String out, long count, Long seed, int rotorCount, int pairs, int textLength, KeySheetGenerator.Format format ) {
+		if( count < 0 ) {
+			System.err.println( PREFIX_ERR + "Invalid count: " + count );
+			return EXIT_USAGE;
 		}
-		if( positions.length > 1 ) {
-			reflector = positions[1].toUpperCase();
+		if( seed == null ) {
+			seed = new SecureRandom().nextLong();
+			System.err.println( PREFIX_INFO + "Seed: " + seed );
 		}
 		
-		ArrayList<Rotor> rotors = enigma.getCurrentRotors();
-		
-		if( rotorPositions != null && reflector != null 
-				&& rotorPositions.length() == rotors.size() && reflector.length() == 1 ) {
+		OutputStream output = null;
+		try {
+			KeySheetGenerator generator = new KeySheetGenerator( enigma, rotorCount, pairs, textLength, format );
+			output = new BufferedOutputStream( out != null 
+					? new FileOutputStream( out ) 
+					: new FileOutputStream( FileDescriptor.out ), BATCH_BUFFER_SIZE );
+			generator.generate( seed, count, output );
+		}
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			return EXIT_IO;
+		}
+		catch( Exception e ) {
+			System.err.println( PREFIX_ERR + "Exception: " + e.getMessage() );
+			return EXIT_USAGE;
+		}
+		finally {
+			try {
+				if( output != null ) {
+					output.close();
+				}
+			}
+			catch( IOException e ) {
+				System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			}
+		}
+		return EXIT_OK;
+	}
+	
+	/**
+	 * Runs the console commands in a script, from a file or stdin, without prompts or
+	 * confirmations. Output is buffered and every translated message gives one line, so many
+	 * messages can be piped through one configuration; errors go to stderr with their line.
+	 * 
+	 * @return EXIT_OK, or EXIT_FAILED if any command failed
+	 */
+	private int batch( String in, String out ) {
+		BufferedReader reader = null;
+		PrintStream output = null;
+		try {
+			reader = new BufferedReader( in != null 
+					? new InputStreamReader( new FileInputStream( in ) ) 
+					: new InputStreamReader( System.in ), BATCH_BUFFER_SIZE );
+			output = new PrintStream( new BufferedOutputStream( out != null 
+					? new FileOutputStream( out ) 
+					: new FileOutputStream( FileDescriptor.out ), BATCH_BUFFER_SIZE ), false );
+			
+			Session session = new Session( enigma, reader, output, System.err, false ) {
+				@Override
+				protected boolean reloadConfiguration() {
+					return readConfig( false );
+				}
+			};
+			session.setInteractive( false );
+			session.run();
 			
-			for( int i = 0; i < rotors.size(); i++ ) {
-				rotors.get( i ).move( rotorPositions.charAt( i ) );
+			if( output.checkError() ) {
+				System.err.println( PREFIX_ERR + "Could not write the output" );
+				return EXIT_IO;
 			}
-			enigma.getCurrentReflector().move( reflector.charAt( 0 ) );
+			return session.getErrors() == 0 ? EXIT_OK : EXIT_FAILED;
 		}
-		else {
-			System.err.println( PREFIX_ERR + "Incorrect positions given" );
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			return EXIT_IO;
+		}
+		finally {
+			try {
+				if( reader != null ) {
+					reader.close();
+				}
+			}
+			catch( IOException e ) {
+				System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			}
+			if( output != null ) {
+				output.close();
+			}
 		}
 	}
 	
-	private void getStatus() {
-		System.out.println( PREFIX_INFO + "Current Configuration:" );
+	/**
+	 * Serves sessions over the loopback interface until the process is stopped. Every session
+	 * starts with an empty machine using the rotors and reflectors read from the config.
+	 */
+	private int serve( int port ) {
+		EnigmaServer server = null;
+		try {
+			server = new EnigmaServer( enigma, port );
+			System.err.println( PREFIX_INFO + "Listening on port " + server.getPort() );
+			server.serve();
+		}
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			return EXIT_IO;
+		}
+		finally {
+			try {
+				if( server != null ) {
+					server.close();
+				}
+			}
+			catch( IOException e ) {
+				System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			}
+		}
+		return EXIT_OK;
+	}
+	
+	/**
+	 * Sets up the machine from command line values. Rotors and plugboard pairs are comma
+	 * separated lists, e.g. "alpha,beta,gamma" and "AB,CD".
+	 */
+	private boolean configure( String rotors, String reflector, String positions, String reflectorPosition, String plugboard ) {
+		if( rotors == null || reflector == null ) {
+			System.err.println( PREFIX_ERR + "Rotors and reflector are required" );
+			printUsage();
+			return false;
+		}
 		
-		System.out.println( "    " + (enigma.getAdvanceRotors() ? "+" : "-") + " Rotors" );
+		// the console's commands, with anything they report going to stderr
+		Session session = new Session( enigma, null, System.err, System.err, false );
 		
-		ArrayList<Rotor> rotors = enigma.getCurrentRotors();
-		if( rotors != null && rotors.size() > 0 ) {
-			int i = 0;
-			for( Rotor rotor : enigma.getCurrentRotors() ) {
-				System.out.println( String.format("       %2d %10s: %s", i++,  rotor.getName(), rotor.getCurrent() ) );
+		for( String name : rotors.split( "," ) ) {
+			if( !session.addRotor( name ) ) {
+				return false;
 			}
 		}
-		else {
-			System.out.println( "              NO ROTORS" );
+		if( !session.setReflector( reflector ) ) {
+			return false;
 		}
 		
-		System.out.println( "    " + (enigma.getAdvanceReflector() ? "+" : "-") + " Reflector" );
-		
-		Reflector reflector = enigma.getCurrentReflector();
-		if( reflector != null ) {
-			System.out.println( String.format("          %10s: %s", reflector.getName(), reflector.getCurrent() ) );
+		if( reflectorPosition == null ) {
+			reflectorPosition = enigma.getAlphabetSize() == Rotor.ROTOR_SIZE ? "A" : "0";
 		}
-		else {
-			System.out.println( "              NO REFLECTOR" );
+		if( positions != null && !session.setPositions( new String[]{ positions, reflectorPosition } ) ) {
+			return false;
 		}
-		System.out.println( "      Plugboard" );
 		
-		int i = 0;
-		for( Character[] conn : enigma.getPlugboardConnections() ) {
-			System.out.print( (i%4==0 ? "       " : "  " ) + conn[0] + "-" + conn[1] + ((++i)%4==0 ? "\n" : "" ) );
+		if( plugboard != null ) {
+			return configurePlugboard( plugboard );
 		}
-		System.out.print( "\n" );
+		return true;
 	}
 	
-	private void translateMessage( BufferedReader reader, boolean encode ) throws IOException {
-		if( enigma.isReady() ) {
-			System.out.print( USER_PROMPT_STRESS );
-			String cipher = reader.readLine().toUpperCase().replaceAll( "[^A-Z]", "" );
-			
-			if( cipher.length() > 0 ) {
-				
-				System.out.println( PREFIX_INFO + "Translating message: " + cipher );
-				
-				System.out.print( USER_PROMPT_STRESS );
-				// convert
-				int i = 0;
-				for( Character character : cipher.toCharArray() ) {
-					try {
-						System.out.print( enigma.convert( character ) + (++i % 5 == 0 && encode ? " " : "" ) );
-					}
-					catch( Exception e ) {
-						System.err.println( PREFIX_ERR + "Exception: " + e.getMessage() );
-					}
-				}
-				System.out.println( "\n" );
+	private boolean configurePlugboard( String plugboard ) {
+		for( String pair : plugboard.split( "," ) ) {
+			char[] endpoints = Session.parseConnection( pair, enigma.getAlphabetSize() );
+			if( endpoints == null || !enigma.addPlugboardConnection( endpoints[0], endpoints[1] ) ) {
+				System.err.println( PREFIX_ERR + "Invalid plugboard connection: " + pair );
+				return false;
 			}
 		}
-		else {
-			System.err.println( PREFIX_ERR + "Machine is not ready" );
-		}
+		return true;
+	}
+	
+	private void printUsage() {
+		System.err.println( "" );
+		System.err.println( "Usage: (encode|decode) --rotors [names] --reflector [name] [options]" );
+		System.err.println( "       search --crib [text] [options]" );
+		System.err.println( "       serve [--port " + EnigmaServer.DEFAULT_PORT + "] [--config file]" );
+		System.err.println( "       batch [--in script] [--out file] [options]" );
+		System.err.println( "       keys --count [n] [--seed n] [--format csv|binary] [options]" );
+		System.err.println( "       place --crib [texts] --in [files] [--out file]" );
+		System.err.println( "       ngrams --in [corpus files] --out [name]" );
+		System.err.println( "       coordinate --crib [text] [--workers n] [--checkpoint file] [options]" );
+		System.err.println( "       work [--host address] [--port " + SearchCoordinator.DEFAULT_PORT + "] [--config file]" );
+		System.err.println( "  --rotors alpha,beta,gamma" );
+		System.err.println( "    comma separated rotors, in the same order as 'add rotor'" );
+		System.err.println( "  --reflector zulu" );
+		System.err.println( "    the reflector to use" );
+		System.err.println( "  --positions ABC" );
+		System.err.println( "    starting rotor positions (default - all A)" );
+		System.err.println( "  --reflector-position A" );
+		System.err.println( "    starting reflector position (default - A)" );
+		System.err.println( "  --plugboard AB,CD" );
+		System.err.println( "    comma separated plugboard connections; numbers for other alphabets, e.g. 3-200,17-45" );
+		System.err.println( "  --advance-reflector" );
+		System.err.println( "  --no-advance-rotors" );
+		System.err.println( "  --stepping [odometer|double]" );
+		System.err.println( "    how the rotors turn each other over (default - odometer)" );
+		System.err.println( "  --in [file]" );
+		System.err.println( "    file to read (default - stdin); place and ngrams take a comma separated list" );
+		System.err.println( "  --out [file]" );
+		System.err.println( "    file to write (default - stdout); ngrams writes name.1.ngram to name.4.ngram" );
+		System.err.println( "  --precompute [megabytes]" );
+		System.err.println( "    precompute the machine's permutations when they fit in the given size" );
+		System.err.println( "  --parallel" );
+		System.err.println( "    translate chunks of the input on all cores, needs --in and --out" );
+		System.err.println( "  --crib WETTER" );
+		System.err.println( "    search: plain text known to be in the message" );
+		System.err.println( "    place: comma separated cribs to find every legal position of" );
+		System.err.println( "  --crib-offset 0" );
+		System.err.println( "    search: where the crib starts in the message (default - 0)" );
+		System.err.println( "  --rotor-count 3" );
+		System.err.println( "    search: how many rotors the machine uses (default - 3)" );
+		System.err.println( "  --port " + EnigmaServer.DEFAULT_PORT );
+		System.err.println( "    serve: port to listen on, loopback only (default - " + EnigmaServer.DEFAULT_PORT + ")" );
+		System.err.println( "    coordinate, work: the coordinator's port (default - " + SearchCoordinator.DEFAULT_PORT + ")" );
+		System.err.println( "  --host [address]" );
+		System.err.println( "    coordinate: address to listen on; work: coordinator to connect to (default - loopback)" );
+		System.err.println( "  --workers 0" );
+		System.err.println( "    coordinate: worker processes to start on this host (default - 0)" );
+		System.err.println( "  --checkpoint [file]" );
+		System.err.println( "    coordinate: file recording progress and hits, to resume a stopped search from" );
+		System.err.println( "  --units " + SearchCoordinator.DEFAULT_UNITS_PER_TASK );
+		System.err.println( "    coordinate: rotor orders and reflectors in each task handed out (default - "
+				+ SearchCoordinator.DEFAULT_UNITS_PER_TASK + ")" );
+		System.err.println( "  --lease " + SearchCoordinator.DEFAULT_LEASE_MILLIS / 1000 );
+		System.err.println( "    coordinate: seconds before a task not reported done is handed out again (default - "
+				+ SearchCoordinator.DEFAULT_LEASE_MILLIS / 1000 + ")" );
+		System.err.println( "  --count 1" );
+		System.err.println( "    keys: how many settings to generate (default - 1)" );
+		System.err.println( "  --seed [number]" );
+		System.err.println( "    keys: seed, the same seed gives the same sheet (default - random, reported)" );
+		System.err.println( "  --pairs 10" );
+		System.err.println( "    keys: plugboard pairs in each setting (default - 10)" );
+		System.err.println( "  --text-length 32" );
+		System.err.println( "    keys: letters of plain text encrypted with each setting (default - 32)" );
+		System.err.println( "  --format csv" );
+		System.err.println( "    keys: csv or binary (default - csv)" );
+		System.err.println( "  --config [file]" );
+		System.err.println( "    configuration file (default - " + DEFAULT_CONFIG + ")" );
+		System.err.println( "" );
+		System.err.println( "  encoded output is written in blocks of 5 letters, 10 blocks to a line" );
+		System.err.println( "" );
+		System.err.println( "  a configuration starting with 'alphabet 256' wires its parts for bytes; encode and" );
+		System.err.println( "  decode then translate every byte of the input as it is, and positions are numbers," );
+		System.err.println( "  e.g. --positions 0,17,200 --reflector-position 5 --plugboard 3-200,17-45" );
+		System.err.println( "" );
+		System.err.println( "  batch runs the console commands from the script without prompts or confirmations." );
+		System.err.println( "  'encode [message]' and 'decode [message]' print one line per message and lines" );
+		System.err.println( "  starting with # are skipped. The exit status is " + EXIT_FAILED + " if any command failed." );
+		System.err.println( "" );
+		System.err.println( "  coordinate searches like search, handing rotor orders and reflectors out to workers" );
+		System.err.println( "  that connect with 'work' and must have the same configuration. A checkpoint file" );
+		System.err.println( "  lets a stopped search carry on without repeating finished tasks or hits." );
+		System.err.println( "" );
+		System.err.println( "  counters and timings are published over JMX as " + Metrics.OBJECT_NAME + "," );
+		System.err.println( "  and shown by the console command 'stats'." );
+		System.err.println( "" );
 	}
 	
-	private boolean readConfig() {
+	/**
+	 * Main application loop. User is prompted for commands and given feedback from those
+	 * commands until the user requests application termination
+	 */
+	private void processInput() {
+		
+		InputStreamReader input;
+		BufferedReader reader;
+		
+		input = new InputStreamReader( System.in );
+		reader = new BufferedReader( input );
+		
+		Session session = new Session( enigma, reader, System.out, System.err, true ) {
+			@Override
+			protected boolean reloadConfiguration() {
+				return readConfig( true );
+			}
+		};
 		
-		boolean valid = false;
-		FileInputStream input = null;
 		try {
-			File config = new File( "enigma.config" );
-			input = new FileInputStream( config );
-			System.out.println( PREFIX_INFO + "Reading configuration from " + config.getAbsolutePath() );
-			
-			enigma.importConfiguration( input );
-			valid = true;
-			
+			session.run();
 		}
-		catch( FileNotFoundException e ) {
-			System.err.println( PREFIX_ERR + "Config file not found" );
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
 		}
 		finally {
+			try {
+				if( reader != null ) {
+					reader.close();
+				}
+			}
+			catch( IOException e ) {
+				System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+			}
 			try {
 				if( input != null ) {
 					input.close();
@@ -488,9 +1064,82 @@ public class Application {
 				System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
 			}
 		}
+	}
+	
+	/**
+	 * Loads the rotors and reflectors from the config's binary snapshot when it is up to date,
+	 * otherwise from the text, leaving a fresh snapshot behind for next time
+	 */
+	private boolean readConfig( boolean verbose ) {
+		
+		boolean valid = false;
+		try {
+			File config = new File( configPath );
+			// read once, so the snapshot is checked against and made from the very text parsed
+			byte[] text = readFile( config );
+			
+			ConfigSnapshot snapshot = openSnapshot( config, text );
+			if( verbose ) {
+				System.out.println( PREFIX_INFO + "Reading configuration from " + config.getAbsolutePath() );
+			}
+			
+			if( snapshot != null ) {
+				enigma.importSnapshot( snapshot, verbose );
+			}
+			else {
+				enigma.importConfiguration( new ByteArrayInputStream( text ), verbose );
+				writeSnapshot( config, text, verbose );
+			}
+			valid = true;
+			
+		}
+		catch( FileNotFoundException e ) {
+			System.err.println( PREFIX_ERR + "Config file not found" );
+		}
+		catch( IOException e ) {
+			System.err.println( PREFIX_ERR + "IOException: " + e.getMessage() );
+		}
 		return valid;
 	}
 	
+	private static byte[] readFile( File file ) throws IOException {
+		FileInputStream input = new FileInputStream( file );
+		try {
+			ByteArrayOutputStream text = new ByteArrayOutputStream( (int)Math.min( file.length(), Integer.MAX_VALUE - 8 ) );
+			byte[] buffer = new byte[8192];
+			int read;
+			while( ( read = input.read( buffer ) ) >= 0 ) {
+				text.write( buffer, 0, read );
+			}
+			return text.toByteArray();
+		}
+		finally {
+			input.close();
+		}
+	}
+	
+	private ConfigSnapshot openSnapshot( File config, byte[] text ) {
+		try {
+			return ConfigSnapshot.open( config.toPath(), text );
+		}
+		catch( IOException e ) {
+			// unreadable, the text is parsed instead
+			return null;
+		}
+	}
+	
+	private void writeSnapshot( File config, byte[] text, boolean verbose ) {
+		try {
+			ConfigSnapshot.write( config.toPath(), text, enigma.getAlphabetSize(), enigma.getCatalog().getRotors(),
+					enigma.getCatalog().getReflectors() );
+		}
+		catch( IOException e ) {
+			if( verbose ) {
+				System.out.println( PREFIX_WARN + "Could not save configuration snapshot: " + e.getMessage() );
+			}
+		}
+	}
+	
 	private void cleanup() {
 		
 	}
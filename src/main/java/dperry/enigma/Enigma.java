@@ -4,24 +4,42 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
 
+import dperry.enigma.engine.CompiledEnigma;
+import dperry.enigma.engine.PermutationTable;
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.engine.SymbolEnigma;
+import dperry.enigma.io.ConfigSnapshot;
+import dperry.enigma.metrics.Metrics;
+import dperry.enigma.parts.Catalog;
 import dperry.enigma.parts.Plugboard;
 import dperry.enigma.parts.Reflector;
 import dperry.enigma.parts.Rotor;
 
 public class Enigma {
 
-	ArrayList<Rotor> availableRotors;
+	Catalog catalog;
 	ArrayList<Rotor> currentRotors;
 	
-	ArrayList<Reflector> availableReflectors;
 	Reflector currentReflector;
 	boolean advanceRotors;
 	boolean advanceReflector;
+	Stepping stepping;
 	
 	Plugboard plugboard;
 	
+	// symbols the parts are wired for, set by the configuration
+	int alphabetSize;
+	
+	static final int SNAPSHOT_VERSION = 2;
+	
+	// largest permutation table, in bytes, compile() may build; 0 never builds one
+	long precomputeLimit = 0;
+	PermutationTable permutationTable;
+	
 	public Enigma() {
 		reset();
 	}
@@ -33,11 +51,13 @@ public class Enigma {
 	private void reset() {
 		advanceRotors = true;
 		advanceReflector = false;
-		availableRotors = new ArrayList<Rotor>();
+		stepping = Stepping.ODOMETER;
+		catalog = Catalog.EMPTY;
 		currentRotors = new ArrayList<Rotor>();
 		currentReflector = null;
-		availableReflectors = new ArrayList<Reflector>();
+		alphabetSize = Rotor.ROTOR_SIZE;
 		plugboard = new Plugboard();
+		permutationTable = null;
 	}
 	
 	public boolean isReady() {
@@ -46,9 +66,24 @@ public class Enigma {
 	}
 	
 	public void importConfiguration( InputStream input ) {
+		importConfiguration( input, true );
+	}
+	
+	/**
+	 * Imports rotor and reflector definitions. When not verbose, only problems with the
+	 * configuration are reported.
+	 * 
+	 * A line "alphabet N" ahead of the parts wires them for N symbols instead of the 26 letters,
+	 * up to {@link SymbolEnigma#MAX_SIZE}; every rotor and reflector then has N connections.
+	 */
+	public void importConfiguration( InputStream input, boolean verbose ) {
 		
+		long start = System.nanoTime();
 		reset();
 		
+		ArrayList<Rotor> availableRotors = new ArrayList<Rotor>();
+		ArrayList<Reflector> availableReflectors = new ArrayList<Reflector>();
+		
 		BufferedReader reader = null;
 		InputStreamReader stream = null;
 		
@@ -59,6 +94,24 @@ public class Enigma {
 			String currentLine = "";
 			
 			while ( (currentLine = reader.readLine() ) != null ) {
+				if( currentLine.startsWith( "alphabet " ) ) {
+					int size = -1;
+					try {
+						size = Integer.parseInt( currentLine.substring( "alphabet ".length() ).trim() );
+					}
+					catch( NumberFormatException e ) {
+						// reported below
+					}
+					if( !availableRotors.isEmpty() || !availableReflectors.isEmpty() ) {
+						System.err.println( " # The alphabet must be set before any rotor or reflector: " + currentLine );
+					}
+					else if( size < 2 || size > SymbolEnigma.MAX_SIZE ) {
+						System.err.println( " # Invalid alphabet size: " + currentLine );
+					}
+					else {
+						alphabetSize = size;
+					}
+				}
 				if( currentLine.startsWith( "rotor " ) ) {
 					
 					// parse connections, create new rotor object
@@ -88,8 +141,8 @@ public class Enigma {
 						}
 						if( p[0].equalsIgnoreCase( "rc" ) ) {
 							String[] stringArray = p[1].split( "," );
-							if( stringArray.length == Rotor.ROTOR_SIZE ) {
-								rotorArray = new Integer[Rotor.ROTOR_SIZE];
+							if( stringArray.length == alphabetSize ) {
+								rotorArray = new Integer[alphabetSize];
 								for( int i = 0; i < stringArray.length; i++ ) {
 									rotorArray[i] = Integer.parseInt( stringArray[i] );
 								}
@@ -97,7 +150,7 @@ public class Enigma {
 						}
 					}
 					
-					if( turnover.length > 0 && Rotor.isValid( rotorArray ) ) {
+					if( turnover.length > 0 && Rotor.isValid( rotorArray, alphabetSize ) ) {
 						availableRotors.add( new Rotor( name, rotorArray, turnover ) );
 					}
 					else {
@@ -122,8 +175,8 @@ public class Enigma {
 						}
 						if( p[0].equalsIgnoreCase( "rc" ) ) {
 							String[] stringArray = p[1].split( "," );
-							if( stringArray.length == Rotor.ROTOR_SIZE ) {
-								refArray = new Integer[Rotor.ROTOR_SIZE];
+							if( stringArray.length == alphabetSize ) {
+								refArray = new Integer[alphabetSize];
 								for( int i = 0; i < stringArray.length; i++ ) {
 									refArray[i] = Integer.parseInt( stringArray[i] );
 								}
@@ -131,7 +184,7 @@ public class Enigma {
 						}
 					}
 					
-					if( Reflector.isValid( refArray ) ) {
+					if( Reflector.isValid( refArray, alphabetSize ) ) {
 						availableReflectors.add( new Reflector( name, refArray ) );
 					}
 					else {
@@ -162,13 +215,57 @@ public class Enigma {
 			}
 		}
 		
-		System.out.println( " * Imported " + availableRotors.size() + " rotor configurations:" );
-		for( Rotor rotor : availableRotors ) {
+		catalog = new Catalog( availableRotors, availableReflectors );
+		plugboard = new Plugboard( alphabetSize );
+		imported( start );
+		printDuplicates();
+		
+		if( verbose ) {
+			printImported();
+		}
+	}
+	
+	/**
+	 * Uses the rotor and reflector definitions of a snapshot. Only their names are read now, to
+	 * look them up by; the wiring is decoded as each one is used, unless verbose, which lists
+	 * them all.
+	 */
+	public void importSnapshot( ConfigSnapshot snapshot, boolean verbose ) {
+		
+		long start = System.nanoTime();
+		reset();
+		alphabetSize = snapshot.getAlphabetSize();
+		plugboard = new Plugboard( alphabetSize );
+		catalog = new Catalog( snapshot.getRotors(), snapshot.getRotorNames(), snapshot.getReflectors(), snapshot.getReflectorNames() );
+		imported( start );
+		printDuplicates();
+		
+		if( verbose ) {
+			printImported();
+		}
+	}
+	
+	private void imported( long start ) {
+		Metrics.getDefault().configurationImported( catalog.getRotors().size(), catalog.getReflectors().size(), System.nanoTime() - start );
+	}
+	
+	private void printDuplicates() {
+		for( String name : catalog.getDuplicateRotors() ) {
+			System.err.println( " # Duplicate rotor name, only the first is used: " + name );
+		}
+		for( String name : catalog.getDuplicateReflectors() ) {
+			System.err.println( " # Duplicate reflector name, only the first is used: " + name );
+		}
+	}
+	
+	private void printImported() {
+		System.out.println( " * Imported " + catalog.getRotors().size() + " rotor configurations:" );
+		for( Rotor rotor : catalog.getRotors() ) {
 			System.out.println( rotor.toString() );
 		}
 		
-		System.out.println( " * Imported " + availableReflectors.size() + " reflector configurations:" );
-		for( Reflector reflector : availableReflectors ) {
+		System.out.println( " * Imported " + catalog.getReflectors().size() + " reflector configurations:" );
+		for( Reflector reflector : catalog.getReflectors() ) {
 			System.out.println( reflector.toString() );
 		}
 	}
@@ -178,34 +275,60 @@ public class Enigma {
 	}
 	
 	public void setReflector( Reflector reflector ) {
-		currentReflector = reflector;
+		currentReflector = reflector != null ? new Reflector( reflector ) : null;
 	}
 	
-	public String[] availableRotors() {
-		String[] names = new String[availableRotors.size()];
-		int i = 0;
-		for( Rotor rotor : availableRotors ) {
-			names[i++] = rotor.getName();
+	/**
+	 * Makes the source machine's rotors and reflectors available to this one without copying
+	 * them. Catalogs never change and parts are copied as they are put in the machine, so
+	 * neither machine affects the other; importing or clearing replaces the catalog.
+	 */
+	public void shareCatalog( Enigma source ) {
+		catalog = source.catalog;
+		if( alphabetSize != source.alphabetSize ) {
+			alphabetSize = source.alphabetSize;
+			plugboard = new Plugboard( alphabetSize );
 		}
-		
-		return names;
 	}
 	
+	/**
+	 * Replaces the rotors and reflectors available to the machine, leaving the ones in use as
+	 * they are
+	 */
+	public void setCatalog( Catalog catalog ) {
+		this.catalog = catalog;
+	}
+	
+	public Catalog getCatalog() {
+		return catalog;
+	}
+	
+	/**
+	 * @deprecated the names are in {@link #getCatalog()}, which does not copy them
+	 */
+	@Deprecated
+	public String[] availableRotors() {
+		return catalog.getRotorNames().toArray( new String[0] );
+	}
+	
+	/**
+	 * @deprecated the names are in {@link #getCatalog()}, which does not copy them
+	 */
+	@Deprecated
 	public String[] availableReflectors() {
-		String[] names = new String[availableReflectors.size()];
-		int i = 0;
-		for( Reflector reflector : availableReflectors ) {
-			names[i++] = reflector.getName();
-		}
-		
-		return names;
+		return catalog.getReflectorNames().toArray( new String[0] );
 	}
 	
 	public ArrayList<Character[]> getPlugboardConnections() {
 		return plugboard.getConnections();
 	}
 	
+	/**
+	 * Converts one letter. It is not counted in {@link Metrics}; a caller going a letter at a
+	 * time counts the whole message once it is done.
+	 */
 	public char convert( char letter ) throws Exception {
+		checkLetters();
 		if( isReady() ) {
 			// convert
 			
@@ -228,18 +351,25 @@ public class Enigma {
 			}
 			
 			if( advanceRotors ) {
-				Character last = currentRotors.get(currentRotors.size()-1).getCurrent();
-				// advance the starting rotor, chain the rest
-				for( int i = 0; i < currentRotors.size(); i++ ) {
-					if( !currentRotors.get( i ).advance() )
-						break;
+				int rotorCount = currentRotors.size();
+				int atNotch = 0;
+				for( int i = 0; i < rotorCount; i++ ) {
+					if( currentRotors.get( i ).atNotch() ) {
+						atNotch |= 1 << i;
+					}
 				}
 				
-				if( advanceReflector ) {
-					if( !last.equals( currentRotors.get(currentRotors.size()-1).getCurrent() ) ) {
-						currentReflector.advance();
+				int moves = stepping.moves( atNotch, rotorCount );
+				for( int i = 0; i < rotorCount; i++ ) {
+					if( ( moves & ( 1 << i ) ) != 0 ) {
+						currentRotors.get( i ).advance();
 					}
 				}
+				
+				// the reflector follows the last rotor
+				if( advanceReflector && ( moves & ( 1 << ( rotorCount - 1 ) ) ) != 0 ) {
+					currentReflector.advance();
+				}
 			}
 			
 			return plugboard.getEndpoint( (char)(result+'A') );
@@ -247,6 +377,324 @@ public class Enigma {
 		throw new Exception( "Machine is not ready" );		
 	}
 	
+	/**
+	 * Converts letters in place
+	 */
+	public void convert( char[] letters ) throws Exception {
+		convert( letters, 0, letters.length );
+	}
+	
+	/**
+	 * Converts length letters in place starting at offset. The whole range is checked before
+	 * any letter is converted; letters must be 'A' through 'Z'.
+	 */
+	public void convert( char[] letters, int offset, int length ) throws Exception {
+		if( isReady() ) {
+			long start = System.nanoTime();
+			for( int i = offset; i < offset + length; i++ ) {
+				checkLetter( letters[i] );
+			}
+			
+			CompiledEnigma machine = compile();
+			machine.convert( letters, offset, letters, offset, length );
+			machine.writePositions();
+			Metrics.getDefault().messageConverted( length, System.nanoTime() - start );
+			return;
+		}
+		throw new Exception( "Machine is not ready" );
+	}
+	
+	/**
+	 * Converts letters into destination starting at offset. Letters must be 'A' through 'Z'.
+	 */
+	public void convert( CharSequence letters, char[] destination, int offset ) throws Exception {
+		if( isReady() ) {
+			long start = System.nanoTime();
+			int length = letters.length();
+			for( int i = 0; i < length; i++ ) {
+				checkLetter( letters.charAt( i ) );
+			}
+			if( destination.length - offset < length ) {
+				throw new Exception( "Destination is too small" );
+			}
+			
+			CompiledEnigma machine = compile();
+			machine.convert( letters, destination, offset );
+			machine.writePositions();
+			Metrics.getDefault().messageConverted( length, System.nanoTime() - start );
+			return;
+		}
+		throw new Exception( "Machine is not ready" );
+	}
+	
+	/**
+	 * Converts the remaining ASCII letters of the buffer in place, leaving its position at
+	 * its limit
+	 */
+	public void convert( ByteBuffer letters ) throws Exception {
+		convert( letters, letters );
+	}
+	
+	/**
+	 * Converts the remaining ASCII letters of source into destination, advancing the
+	 * position of both buffers. Letters must be 'A' through 'Z'.
+	 */
+	public void convert( ByteBuffer source, ByteBuffer destination ) throws Exception {
+		if( isReady() ) {
+			long start = System.nanoTime();
+			int length = source.remaining();
+			for( int i = source.position(); i < source.limit(); i++ ) {
+				checkLetter( (char)source.get( i ) );
+			}
+			if( destination.remaining() < source.remaining() ) {
+				throw new Exception( "Destination is too small" );
+			}
+			
+			CompiledEnigma machine = compile();
+			machine.convert( source, destination );
+			machine.writePositions();
+			Metrics.getDefault().messageConverted( length, System.nanoTime() - start );
+			return;
+		}
+		throw new Exception( "Machine is not ready" );
+	}
+	
+	private static void checkLetter( char letter ) throws Exception {
+		if( letter < 'A' || letter > 'Z' ) {
+			throw new Exception( "Invalid character: " + letter );
+		}
+	}
+	
+	/**
+	 * Converts length symbols in place starting at offset, byte b being symbol b & 0xFF. For
+	 * machines of any alphabet; every byte is checked to be in it before any is converted.
+	 */
+	public void convertSymbols( byte[] symbols, int offset, int length ) throws Exception {
+		if( isReady() ) {
+			long start = System.nanoTime();
+			for( int i = offset; i < offset + length; i++ ) {
+				checkSymbol( symbols[i] );
+			}
+			
+			SymbolEnigma machine = compileSymbols();
+			machine.convert( symbols, offset, length );
+			machine.writePositions();
+			Metrics.getDefault().messageConverted( length, System.nanoTime() - start );
+			return;
+		}
+		throw new Exception( "Machine is not ready" );
+	}
+	
+	/**
+	 * Converts the remaining symbols of source into destination, advancing the position of both
+	 * buffers, see {@link #convertSymbols(byte[], int, int)}
+	 */
+	public void convertSymbols( ByteBuffer source, ByteBuffer destination ) throws Exception {
+		if( isReady() ) {
+			long start = System.nanoTime();
+			int length = source.remaining();
+			for( int i = source.position(); i < source.limit(); i++ ) {
+				checkSymbol( source.get( i ) );
+			}
+			if( destination.remaining() < length ) {
+				throw new Exception( "Destination is too small" );
+			}
+			
+			SymbolEnigma machine = compileSymbols();
+			machine.convert( source, destination );
+			machine.writePositions();
+			Metrics.getDefault().messageConverted( length, System.nanoTime() - start );
+			return;
+		}
+		throw new Exception( "Machine is not ready" );
+	}
+	
+	private void checkSymbol( byte symbol ) throws Exception {
+		if( ( symbol & 0xFF ) >= alphabetSize ) {
+			throw new Exception( "Invalid symbol: " + ( symbol & 0xFF ) );
+		}
+	}
+	
+	private void checkLetters() throws Exception {
+		if( alphabetSize != Rotor.ROTOR_SIZE ) {
+			throw new Exception( "Machine is wired for " + alphabetSize + " symbols, not letters" );
+		}
+	}
+	
+	/**
+	 * Freezes the current rotors, reflector and plugboard into a {@link SymbolEnigma}, which
+	 * works for any alphabet
+	 */
+	public SymbolEnigma compileSymbols() throws Exception {
+		if( isReady() ) {
+			return new SymbolEnigma( this );
+		}
+		throw new Exception( "Machine is not ready" );
+	}
+	
+	/**
+	 * Freezes the current rotors, reflector and plugboard into a {@link CompiledEnigma}.
+	 * Later changes to this machine's configuration are not seen by the compiled copy.
+	 * Only for the 26 letter alphabet.
+	 */
+	public CompiledEnigma compile() throws Exception {
+		checkLetters();
+		if( isReady() ) {
+			CompiledEnigma machine = new CompiledEnigma( this );
+			
+			// the table is kept for as long as the wiring it was built for stays in place, and
+			// never larger than an array can be, whatever the limit
+			if( PermutationTable.size( machine ) <= Math.min( precomputeLimit, Integer.MAX_VALUE ) ) {
+				if( permutationTable == null || !permutationTable.covers( machine ) ) {
+					permutationTable = new PermutationTable( machine );
+				}
+				machine.setPermutationTable( permutationTable );
+			}
+			return machine;
+		}
+		throw new Exception( "Machine is not ready" );
+	}
+	
+	/**
+	 * Moves the rotors and reflector to where they would be after converting offset more
+	 * letters. Takes the same time however large offset is, except with double stepping and a
+	 * rotor whose notches are next to each other, see {@link CompiledEnigma#skip(long)}.
+	 */
+	public void seek( long offset ) throws Exception {
+		CompiledEnigma machine = stateAt( offset );
+		machine.writePositions();
+	}
+	
+	/**
+	 * Returns a compiled copy of this machine positioned offset letters ahead of it, leaving
+	 * this machine where it is
+	 */
+	public CompiledEnigma stateAt( long offset ) throws Exception {
+		if( offset < 0 ) {
+			throw new Exception( "Cannot seek backwards" );
+		}
+		CompiledEnigma machine = compile();
+		machine.skip( offset );
+		return machine;
+	}
+	
+	/**
+	 * Packs the machine's moving state, where the rotors and reflector are and the plugboard,
+	 * into a few bytes that {@link #restore(byte[])} takes back. The snapshot carries the
+	 * {@link #fingerprint()} of the machine so it is only restored onto the same configuration.
+	 * A compiled machine's state is taken by writing its positions back first.
+	 * 
+	 * Layout: version, fingerprint, rotor count, a byte per rotor position, the reflector
+	 * position, the number of plugboard pairs and the two symbols of each pair.
+	 */
+	public byte[] snapshot() throws Exception {
+		if( !isReady() ) {
+			throw new Exception( "Machine is not ready" );
+		}
+		ArrayList<Character[]> connections = plugboard.getConnections();
+		int rotorCount = currentRotors.size();
+		
+		ByteBuffer state = ByteBuffer.allocate( 1 + 8 + 1 + rotorCount + 1 + 1 + 2 * connections.size() );
+		state.put( (byte)SNAPSHOT_VERSION );
+		state.putLong( fingerprint() );
+		state.put( (byte)rotorCount );
+		for( Rotor rotor : currentRotors ) {
+			state.put( (byte)normalize( rotor.getPosition() ) );
+		}
+		state.put( (byte)normalize( currentReflector.getPosition() ) );
+		state.put( (byte)connections.size() );
+		for( Character[] connection : connections ) {
+			state.put( (byte)( connection[0] - 'A' ) );
+			state.put( (byte)( connection[1] - 'A' ) );
+		}
+		return state.array();
+	}
+	
+	/**
+	 * Puts the machine back in the state of a {@link #snapshot()}. Nothing changes unless the
+	 * whole snapshot is valid and was taken from a machine with the same fingerprint.
+	 */
+	public void restore( byte[] snapshot ) throws Exception {
+		if( !isReady() ) {
+			throw new Exception( "Machine is not ready" );
+		}
+		ByteBuffer state = ByteBuffer.wrap( snapshot );
+		int rotorCount = currentRotors.size();
+		if( snapshot.length < 1 + 8 + 1 + rotorCount + 1 + 1 || state.get() != SNAPSHOT_VERSION ) {
+			throw new Exception( "Not a machine snapshot" );
+		}
+		if( state.getLong() != fingerprint() || ( state.get() & 0xFF ) != rotorCount ) {
+			throw new Exception( "Snapshot was taken from a different configuration" );
+		}
+		
+		int[] positions = new int[rotorCount];
+		for( int i = 0; i < rotorCount; i++ ) {
+			positions[i] = checkPosition( state.get() & 0xFF );
+		}
+		int reflectorPosition = checkPosition( state.get() & 0xFF );
+		
+		int pairs = state.get() & 0xFF;
+		if( pairs > alphabetSize / 2 || state.remaining() != 2 * pairs ) {
+			throw new Exception( "Not a machine snapshot" );
+		}
+		Plugboard restored = new Plugboard( alphabetSize );
+		for( int i = 0; i < pairs; i++ ) {
+			if( !restored.addConnection( (char)( 'A' + ( state.get() & 0xFF ) ), (char)( 'A' + ( state.get() & 0xFF ) ) ) ) {
+				throw new Exception( "Invalid plugboard in snapshot" );
+			}
+		}
+		
+		for( int i = 0; i < rotorCount; i++ ) {
+			currentRotors.get( i ).reset( positions[i] );
+		}
+		currentReflector.reset( reflectorPosition );
+		plugboard.reset();
+		for( Character[] connection : restored.getConnections() ) {
+			plugboard.addConnection( connection[0], connection[1] );
+		}
+	}
+	
+	/**
+	 * Identifies everything about the machine that a snapshot does not hold: its alphabet, the
+	 * wiring and notches of its rotors in order, its reflector's wiring, and how it steps. Names
+	 * are left out, so the same parts under other names match.
+	 */
+	public long fingerprint() {
+		long hash = Fnv.OFFSET;
+		hash = Fnv.mix( hash, alphabetSize );
+		hash = Fnv.mix( hash, currentRotors.size() );
+		for( Rotor rotor : currentRotors ) {
+			for( int connection : rotor.getConnections() ) {
+				hash = Fnv.mix( hash, connection );
+			}
+			for( int position = 0; position < rotor.getSize(); position++ ) {
+				if( rotor.isTurnover( position ) ) {
+					hash = Fnv.mix( hash, position );
+				}
+			}
+		}
+		if( currentReflector != null ) {
+			for( int connection : currentReflector.getPairs() ) {
+				hash = Fnv.mix( hash, connection );
+			}
+		}
+		hash = Fnv.mix( hash, advanceRotors ? 1 : 0 );
+		hash = Fnv.mix( hash, advanceReflector ? 1 : 0 );
+		return Fnv.mix( hash, stepping.ordinal() );
+	}
+	
+	private int checkPosition( int position ) throws Exception {
+		if( position >= alphabetSize ) {
+			throw new Exception( "Invalid position in snapshot: " + position );
+		}
+		return position;
+	}
+	
+	private int normalize( int position ) {
+		position %= alphabetSize;
+		return position < 0 ? position + alphabetSize : position;
+	}
+	
 	public void resetPlugboard() {
 		plugboard.reset();
 	}
@@ -259,12 +707,24 @@ public class Enigma {
 		return plugboard.addConnection( char1, char2 );
 	}
 
+	/**
+	 * Returns a copy of the available rotors; changing it no longer changes the machine's
+	 *
+	 * @deprecated use {@link #getCatalog()}, which neither copies nor decodes every rotor
+	 */
+	@Deprecated
 	public ArrayList<Rotor> getAvailableRotors() {
-		return availableRotors;
+		return new ArrayList<Rotor>( catalog.getRotors() );
 	}
 
+	/**
+	 * Returns a copy of the available reflectors, see {@link #getAvailableRotors()}
+	 *
+	 * @deprecated use {@link #getCatalog()}
+	 */
+	@Deprecated
 	public ArrayList<Reflector> getAvailableReflectors() {
-		return availableReflectors;
+		return new ArrayList<Reflector>( catalog.getReflectors() );
 	}
 	
 	public ArrayList<Rotor> getCurrentRotors() {
@@ -279,6 +739,14 @@ public class Enigma {
 		return plugboard;
 	}
 	
+	/**
+	 * The number of symbols the machine is wired for, {@link Rotor#ROTOR_SIZE} unless the
+	 * configuration set another
+	 */
+	public int getAlphabetSize() {
+		return alphabetSize;
+	}
+	
 	public void setAdvanceRotors( boolean advanceRotors ) {
 		this.advanceRotors = advanceRotors;
 	}
@@ -294,4 +762,27 @@ public class Enigma {
 	public boolean getAdvanceReflector() {
 		return advanceReflector;
 	}
+	
+	public void setStepping( Stepping stepping ) {
+		this.stepping = stepping;
+	}
+	
+	public Stepping getStepping() {
+		return stepping;
+	}
+	
+	/**
+	 * Sets the largest permutation table, in bytes, compiled machines may precompute. A table
+	 * turns every letter into a single lookup; three rotors need about 450 KB, four about 12 MB,
+	 * and an advancing reflector multiplies that by 26. Machines that would need more than the
+	 * limit are compiled without one. 0, the default, turns precomputing off.
+	 */
+	public void setPrecomputeLimit( long precomputeLimit ) {
+		this.precomputeLimit = precomputeLimit;
+		permutationTable = null;
+	}
+	
+	public long getPrecomputeLimit() {
+		return precomputeLimit;
+	}
 }
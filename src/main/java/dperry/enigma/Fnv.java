@@ -0,0 +1,53 @@
+package dperry.enigma;
+
+/**
+ * FNV-1a hashing, for fingerprints that must come out the same in every process and on every
+ * run, which {@link Object#hashCode()} does not promise. Start from {@link #OFFSET} and mix in
+ * each value in turn.
+ */
+public final class Fnv {
+
+	public static final long OFFSET = 0xcbf29ce484222325L;
+
+	private static final long PRIME = 0x100000001b3L;
+
+	private Fnv() {
+	}
+
+	/**
+	 * Mixes in the four bytes of value, lowest first
+	 */
+	public static long mix( long hash, int value ) {
+		for( int shift = 0; shift < 32; shift += 8 ) {
+			hash ^= ( value >>> shift ) & 0xFF;
+			hash *= PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Mixes in the length and characters of value, so "AB" then "C" differs from "A" then "BC";
+	 * null mixes in as length -1
+	 */
+	public static long mix( long hash, String value ) {
+		if( value == null ) {
+			return mix( hash, -1 );
+		}
+		hash = mix( hash, value.length() );
+		for( int i = 0; i < value.length(); i++ ) {
+			hash = mix( hash, value.charAt( i ) );
+		}
+		return hash;
+	}
+
+	/**
+	 * Mixes in length bytes of value from offset, one round each
+	 */
+	public static long mix( long hash, byte[] value, int offset, int length ) {
+		for( int i = offset; i < offset + length; i++ ) {
+			hash ^= value[i] & 0xFF;
+			hash *= PRIME;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,689 @@
+package dperry.enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.metrics.Metrics;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * The interactive commands for one machine. Commands are read a line at a time from the
+ * reader and answered on the session's streams, so the same commands work on the console and
+ * over a connection. A session touches nothing but its own machine.
+ */
+public class Session {
+
+	private static final String COMMENT = "#";
+
+	private final Enigma enigma;
+	private final BufferedReader reader;
+	private final PrintStream out;
+	private final PrintStream err;
+	private final boolean prompt;
+
+	private boolean interactive = true;
+	private long lineNumber;
+	private int errors;
+
+	/**
+	 * @param prompt whether to print the prompts ahead of each command and message
+	 */
+	public Session( Enigma enigma, BufferedReader reader, PrintStream out, PrintStream err, boolean prompt ) {
+		this.enigma = enigma;
+		this.reader = reader;
+		this.out = out;
+		this.err = err;
+		this.prompt = prompt;
+	}
+
+	/**
+	 * Non-interactive sessions run scripts: there is no greeting, nothing asks for
+	 * confirmation or is acknowledged, lines starting with '#' are skipped, errors give their
+	 * line number and output is only flushed when the session ends. Every message translated
+	 * is answered with exactly one line. Sessions are interactive unless set otherwise.
+	 */
+	public void setInteractive( boolean interactive ) {
+		this.interactive = interactive;
+	}
+
+	/**
+	 * Number of commands that failed so far
+	 */
+	public int getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Reads and runs commands until the user quits or the input ends. The streams are left
+	 * open.
+	 */
+	public void run() throws IOException {
+
+		String currLine;
+
+		if( interactive ) {
+			out.println( Application.PREFIX_INFO + "Type 'help' for available commands" );
+		}
+
+		prompt( Application.USER_PROMPT );
+		while( (currLine = readLine()) != null && !(currLine = currLine.trim()).equals( Application.CMD_QUIT ) ) {
+
+			if( currLine.length() > 0 && ( interactive || !currLine.startsWith( COMMENT ) ) ) {
+				execute( currLine );
+			}
+			prompt( Application.USER_PROMPT );
+		}
+
+		if( interactive ) {
+			out.println( Application.PREFIX_INFO + "Done" );
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reloads the machine's rotor and reflector definitions for 'reload config'
+	 *
+	 * @return false if they could not be loaded
+	 */
+	protected boolean reloadConfiguration() {
+		error( "Configuration cannot be reloaded" );
+		return false;
+	}
+
+	private void execute( String currLine ) throws IOException {
+
+		// encode/decode
+
+		if( currLine.equals( Application.CMD_ENCODE )
+				|| currLine.equals( Application.CMD_DECODE ) ) {
+			translateMessage( currLine.equals( Application.CMD_ENCODE ), null );
+		}
+		else if( currLine.startsWith( Application.CMD_ENCODE + " " )
+				|| currLine.startsWith( Application.CMD_DECODE + " " ) ) {
+			int space = currLine.indexOf( ' ' );
+			translateMessage( currLine.startsWith( Application.CMD_ENCODE ), currLine.substring( space + 1 ) );
+		}
+
+		// info
+
+		else if( currLine.startsWith( Application.CMD_INFO_HELP ) ) {
+			printHelp();
+		}
+		else if( currLine.startsWith( Application.CMD_INFO_AVAILABLE_ROTORS ) ) {
+			getAvailableRotors();
+		}
+		else if( currLine.startsWith( Application.CMD_INFO_AVAILABLE_REFLECTORS ) ) {
+			getAvailableReflectors();
+		}
+		else if( currLine.startsWith( Application.CMD_INFO_STATUS ) ) {
+			getStatus();
+		}
+		else if( currLine.equals( Application.CMD_INFO_STATS ) ) {
+			getStats();
+		}
+		else if( currLine.equals( Application.CMD_INFO_STATE ) ) {
+			getState();
+		}
+
+		// configure
+
+		else if( currLine.startsWith( Application.CMD_CFG_RESET ) ) {
+			reset();
+		}
+		else if( currLine.startsWith( Application.CMD_CFG_RELOAD ) ) {
+			reload();
+		}
+		else if( currLine.startsWith( Application.CMD_CFG_STATE ) ) {
+			setState( currLine.substring( Application.CMD_CFG_STATE.length() ).trim() );
+		}
+		else if( currLine.startsWith( Application.CMD_CFG_SET_POSITIONS ) ) {
+			setPositions( currLine.substring( Application.CMD_CFG_SET_POSITIONS.length() ).split( " " ) );
+			if( interactive ) {
+				getStatus();
+			}
+		}
+		else if( currLine.equals( Application.CMD_CFG_ADV_ROT_ON ) ) {
+			enigma.setAdvanceRotors( true );
+		}
+		else if( currLine.equals( Application.CMD_CFG_ADV_ROT_OFF ) ) {
+			enigma.setAdvanceRotors( false );
+		}
+		else if( currLine.equals( Application.CMD_CFG_ADV_REF_ON ) ) {
+			enigma.setAdvanceReflector( true );
+		}
+		else if( currLine.equals( Application.CMD_CFG_ADV_REF_OFF ) ) {
+			enigma.setAdvanceReflector( false );
+		}
+		else if( currLine.startsWith( Application.CMD_CFG_STEPPING ) ) {
+			Stepping stepping = parseStepping( currLine.substring( Application.CMD_CFG_STEPPING.length() ) );
+			if( stepping != null ) {
+				enigma.setStepping( stepping );
+			}
+			else {
+				error( "Unknown stepping, expected odometer or double" );
+			}
+		}
+		else if( currLine.startsWith( Application.CMD_CFG_REMOVE_ROTOR ) ) {
+			ArrayList<Rotor> rotors = enigma.getCurrentRotors();
+			if( rotors.size() > 0 ) {
+				try {
+					int index = Integer.parseInt( currLine.substring( Application.CMD_CFG_REMOVE_ROTOR.length() ) );
+					rotors.remove( index );
+				}
+				catch( NumberFormatException e ) {
+					error( "Invalid rotor selection" );
+				}
+				catch( IndexOutOfBoundsException e ) {
+					error( "Invalid rotor selection" );
+				}
+			}
+			else {
+				error( "No rotors in use" );
+			}
+		}
+		else if( currLine.equals( Application.CMD_CFG_REMOVE_REFLECTOR ) ) {
+			enigma.setReflector( null );
+		}
+
+		else if( currLine.startsWith( Application.CMD_CFG_ADD_ROTOR ) ) {
+			addRotor( currLine.substring( Application.CMD_CFG_ADD_ROTOR.length() ) );
+		}
+		else if( currLine.startsWith( Application.CMD_CFG_SET_REFLECTOR ) ) {
+			setReflector( currLine.substring( Application.CMD_CFG_SET_REFLECTOR.length() ) );
+		}
+		else if( currLine.startsWith( Application.CMD_CFG_ADD_CONNECTION ) ) {
+			char[] pair = parseConnection( currLine.substring( Application.CMD_CFG_ADD_CONNECTION.length() ), enigma.getAlphabetSize() );
+
+			if( pair != null ) {
+				if( enigma.addPlugboardConnection( pair[0], pair[1] ) ) {
+					info( Application.PREFIX_INFO + "Added connection " + symbol( pair[0] ) + "-" + symbol( pair[1] ) );
+				}
+				else {
+					error( "Connections exist for one or more of the specified endpoints" );
+				}
+			}
+			else {
+				error( "Incomplete connection info" );
+			}
+		}
+		else if( currLine.startsWith( Application.CMD_CFG_REMOVE_CONNECTION ) ) {
+			Character ch = parseEndpoint( currLine.substring( Application.CMD_CFG_REMOVE_CONNECTION.length() ), enigma.getAlphabetSize() );
+
+			if( ch != null ) {
+				enigma.removePlugboardConnection( ch );
+			}
+			else {
+				error( "Incomplete connection info" );
+			}
+		}
+		else if( currLine.equals( Application.CMD_CFG_CLEAR_PLUGBOARD ) ) {
+			enigma.resetPlugboard();
+		}
+		else {
+			error( "Unrecognized command: " + currLine );
+		}
+	}
+
+	/**
+	 * Reads a plugboard connection, two letters such as "AB", or with an alphabet other than
+	 * the letters two numbers such as "3-200". Returns the endpoints as the plugboard takes
+	 * them, counted up from 'A', or null if they are not a connection.
+	 */
+	static char[] parseConnection( String text, int alphabetSize ) {
+		if( alphabetSize == Rotor.ROTOR_SIZE ) {
+			char[] pair = text.toUpperCase().toCharArray();
+			return pair.length == 2 ? pair : null;
+		}
+		String[] numbers = text.split( "-" );
+		if( numbers.length != 2 ) {
+			return null;
+		}
+		Character first = parseEndpoint( numbers[0], alphabetSize );
+		Character second = parseEndpoint( numbers[1], alphabetSize );
+		return first != null && second != null ? new char[] { first, second } : null;
+	}
+
+	/**
+	 * Reads one plugboard endpoint, a letter or a number as for {@link #parseConnection(String, int)}
+	 */
+	static Character parseEndpoint( String text, int alphabetSize ) {
+		text = text.trim();
+		if( alphabetSize == Rotor.ROTOR_SIZE ) {
+			return text.length() > 0 ? Character.toUpperCase( text.charAt( 0 ) ) : null;
+		}
+		try {
+			int symbol = Integer.parseInt( text );
+			return symbol >= 0 && symbol < alphabetSize ? (char)( 'A' + symbol ) : null;
+		}
+		catch( NumberFormatException e ) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the stepping policy with the given name, in any case, or null if there is none
+	 */
+	static Stepping parseStepping( String name ) {
+		for( Stepping stepping : Stepping.values() ) {
+			if( stepping.name().equalsIgnoreCase( name.trim() ) ) {
+				return stepping;
+			}
+		}
+		return null;
+	}
+
+	boolean setReflector( String name ) {
+		if( enigma.getCatalog().getReflectors().size() > 0 ) {
+			Reflector reflector = enigma.getCatalog().getReflector( name );
+			if( reflector != null ) {
+				enigma.setReflector( reflector );
+				return true;
+			}
+			error( "Unknown reflector: " + name );
+		}
+		else {
+			error( "No reflectors available to use" );
+		}
+		return false;
+	}
+
+	boolean addRotor( String name ) {
+		if( enigma.getCatalog().getRotors().size() > 0 ) {
+			Rotor rotor = enigma.getCatalog().getRotor( name );
+			if( rotor != null ) {
+				enigma.addRotor( rotor );
+				return true;
+			}
+			error( "Unknown rotor: " + name );
+		}
+		else {
+			error( "No rotors available to use" );
+		}
+		return false;
+	}
+
+	private void getAvailableReflectors() {
+		out.print( Application.PREFIX_INFO );
+		for( String reflector : enigma.getCatalog().getReflectorNames() ) {
+			out.print( reflector + " " );
+		}
+		out.print( "\n" );
+	}
+
+	private void getAvailableRotors() {
+		out.print( Application.PREFIX_INFO );
+		for( String rotor : enigma.getCatalog().getRotorNames() ) {
+			out.print( rotor + " " );
+		}
+		out.print( "\n" );
+	}
+
+	private void reset() throws IOException {
+		if( confirm( "Clear all imported data?" ) ) {
+			info( Application.PREFIX_WARN + "Clearing data" );
+			enigma.clear();
+		}
+		else {
+			out.println( Application.PREFIX_INFO + "Canceling" );
+		}
+	}
+
+	private void reload() throws IOException {
+		if( confirm( "Reload all imported data?" ) ) {
+			info( Application.PREFIX_WARN + "Reloading data" );
+			reloadConfiguration();
+		}
+		else {
+			out.println( Application.PREFIX_INFO + "Canceling" );
+		}
+	}
+
+	private boolean confirm( String question ) throws IOException {
+		if( !interactive ) {
+			return true;
+		}
+		out.println( question );
+		String answer = readLine();
+		return answer != null && answer.toLowerCase().startsWith( "y" );
+	}
+
+	private void printHelp() {
+
+		out.println( "" );
+		out.println( "Stored Configurations:" );
+		out.println( "  clear config " );
+		out.println( "    clears all stored configuration data (rotors, reflectors)" );
+		out.println( "  reload config" );
+		out.println( "    loads stored configuration from file (same as restarting app)" );
+		out.println( "  get all rotors" );
+		out.println( "    returns the names of all available rotors" );
+		out.println( "  get all reflectors" );
+		out.println( "    returns the names of all available reflectors" );
+		out.println( "" );
+		out.println( "Rotor Configuration" );
+		out.println( "  add rotor [name]" );
+		out.println( "    adds the specified rotor to the end of the active rotor set" );
+		out.println( "  remove rotor [index]" );
+		out.println( "    removes the rotor at the specified index (zero-based) from the active rotor set" );
+		out.println( "  set advance rotor [on|off]" );
+		out.println( "    (default - on)" );
+		out.println( "    turns the advancing of the active rotors on or off." );
+		out.println( "    turning off essentially switches to a simple substitution cipher" );
+		out.println( "  set stepping [odometer|double]" );
+		out.println( "    (default - odometer)" );
+		out.println( "    odometer: a rotor turns the next one over as it moves onto a notch." );
+		out.println( "    double: the historical pawls, where a middle rotor at its notch steps twice in a row" );
+		out.println( "" );
+		out.println( "Reflector Configuration" );
+		out.println( "  set reflector [name]" );
+		out.println( "    set the active reflector to that specified " );
+		out.println( "  remove reflector" );
+		out.println( "    removes the active reflector" );
+		out.println( "  set advance reflector [on|off]" );
+		out.println( "    (default - off)" );
+		out.println( "    turns the advancing of the active reflector on or off." );
+		out.println( "    turning on adds an extra level of encryption" );
+		out.println( "" );
+		out.println( "Rotor/Reflector positioning" );
+		out.println( "  set positions [rotors] [reflector]" );
+		out.println( "    sets the rotors and reflectors to the specified positions" );
+		out.println( "" );
+		out.println( "    example: if using 4 rotors" );
+		out.println( "      set positions ABCD E" );
+		out.println( "    with an alphabet other than the letters, positions are numbers" );
+		out.println( "      set positions 0,17,200 5" );
+		out.println( "" );
+		out.println( "Saving state" );
+		out.println( "  get state" );
+		out.println( "    prints the rotor and reflector positions and the plugboard as one hex string" );
+		out.println( "  set state [hex]" );
+		out.println( "    puts them back; only accepted by a machine with the same rotors, reflector and stepping" );
+		out.println( "" );
+		out.println( "Plugboard configuration" );
+		out.println( "  add connection [AB]" );
+		out.println( "    adds a connection between A and B" );
+		out.println( "  remove connection [A]" );
+		out.println( "    removes the connection touching A" );
+		out.println( "    with an alphabet other than the letters, endpoints are numbers" );
+		out.println( "      add connection 3-200" );
+		out.println( "      remove connection 3" );
+		out.println( "  clear plugboard" );
+		out.println( "    removes all connections from the plugboard" );
+		out.println( "" );
+		out.println( "Machine info" );
+		out.println( "  status" );
+		out.println( "    displays the status of the machine, as follows:" );
+		out.println( "" );
+		out.println( "           Current Configuration:" );
+		out.println( "    	    + Rotors" );
+		out.println( "    	        0      gamma: A" );
+		out.println( "    	        1       beta: A" );
+		out.println( "    	        2      delta: A" );
+		out.println( "    	    - Reflector" );
+		out.println( "    	                zulu: A" );
+		out.println( "    	      Plugboard" );
+		out.println( "    	       C-P L-O T-R" );
+		out.println( "" );
+		out.println( "      the +/- indicate advancing status (on/off)" );
+		out.println( "      the rotor/reflector lines give the following information:" );
+		out.println( "         [rotor #]   name: position" );
+		out.println( "  stats" );
+		out.println( "    displays what every machine in this process has converted so far," );
+		out.println( "    how long messages took and how long the configuration took to load" );
+		out.println( "" );
+		out.println( "Message translation" );
+		out.println( "  encode" );
+		out.println( "    after entering this command, the user is prompted for the message to be encoded." );
+		out.println( "    the decoded message is displayed in blocks of 5 characters" );
+		out.println( "  decode" );
+		out.println( "    after entering this command, the user is prompted for the message to be decoded." );
+		out.println( "  encode [message], decode [message]" );
+		out.println( "    translates the message given on the same line" );
+		out.println( "" );
+		out.println( "Application" );
+		out.println( "  help" );
+		out.println( "    displays this message" );
+		out.println( "  quit" );
+		out.println( "    exits the application" );
+		out.println( "" );
+	}
+
+	boolean setPositions( String[] positions ) {
+		String rotorPositions = null;
+		String reflector = null;
+
+		if( positions.length > 0 ) {
+			rotorPositions = positions[0].toUpperCase();
+		}
+		if( positions.length > 1 ) {
+			reflector = positions[1].toUpperCase();
+		}
+
+		ArrayList<Rotor> rotors = enigma.getCurrentRotors();
+
+		// past the letters, positions are numbers, the rotors' comma separated
+		if( enigma.getAlphabetSize() != Rotor.ROTOR_SIZE && rotorPositions != null && reflector != null
+				&& enigma.getCurrentReflector() != null ) {
+			String[] numbers = rotorPositions.split( "," );
+			if( numbers.length == rotors.size() ) {
+				try {
+					int[] values = new int[numbers.length + 1];
+					for( int i = 0; i <= numbers.length; i++ ) {
+						values[i] = Integer.parseInt( i < numbers.length ? numbers[i] : reflector );
+						if( values[i] < 0 || values[i] >= enigma.getAlphabetSize() ) {
+							throw new NumberFormatException();
+						}
+					}
+					for( int i = 0; i < rotors.size(); i++ ) {
+						rotors.get( i ).reset( values[i] );
+					}
+					enigma.getCurrentReflector().reset( values[numbers.length] );
+					return true;
+				}
+				catch( NumberFormatException e ) {
+					// reported below
+				}
+			}
+		}
+		else if( rotorPositions != null && reflector != null && enigma.getCurrentReflector() != null
+				&& rotorPositions.length() == rotors.size() && reflector.length() == 1 ) {
+
+			for( int i = 0; i < rotors.size(); i++ ) {
+				rotors.get( i ).move( rotorPositions.charAt( i ) );
+			}
+			enigma.getCurrentReflector().move( reflector.charAt( 0 ) );
+			return true;
+		}
+		error( "Incorrect positions given" );
+		return false;
+	}
+
+	private void getState() {
+		try {
+			StringBuilder hex = new StringBuilder();
+			for( byte b : enigma.snapshot() ) {
+				hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+			}
+			out.println( interactive ? Application.PREFIX_INFO + "State: " + hex : hex.toString() );
+		}
+		catch( Exception e ) {
+			error( e.getMessage() );
+		}
+	}
+
+	private void setState( String hex ) {
+		if( hex.length() % 2 != 0 ) {
+			error( "Not a machine snapshot" );
+			return;
+		}
+		byte[] snapshot = new byte[hex.length() / 2];
+		for( int i = 0; i < snapshot.length; i++ ) {
+			int high = Character.digit( hex.charAt( 2 * i ), 16 );
+			int low = Character.digit( hex.charAt( 2 * i + 1 ), 16 );
+			if( high < 0 || low < 0 ) {
+				error( "Not a machine snapshot" );
+				return;
+			}
+			snapshot[i] = (byte)( ( high << 4 ) | low );
+		}
+		try {
+			enigma.restore( snapshot );
+			info( Application.PREFIX_INFO + "State restored" );
+		}
+		catch( Exception e ) {
+			error( e.getMessage() );
+		}
+	}
+
+	private void getStatus() {
+		out.println( Application.PREFIX_INFO + "Current Configuration:" );
+
+		out.println( "    " + (enigma.getAdvanceRotors() ? "+" : "-") + " Rotors" );
+
+		ArrayList<Rotor> rotors = enigma.getCurrentRotors();
+		if( rotors != null && rotors.size() > 0 ) {
+			int i = 0;
+			for( Rotor rotor : enigma.getCurrentRotors() ) {
+				out.println( String.format("       %2d %10s: %s", i++,  rotor.getName(), position( rotor.getPosition() ) ) );
+			}
+		}
+		else {
+			out.println( "              NO ROTORS" );
+		}
+
+		out.println( "    " + (enigma.getAdvanceReflector() ? "+" : "-") + " Reflector" );
+
+		Reflector reflector = enigma.getCurrentReflector();
+		if( reflector != null ) {
+			out.println( String.format("          %10s: %s", reflector.getName(), position( reflector.getPosition() ) ) );
+		}
+		else {
+			out.println( "              NO REFLECTOR" );
+		}
+		out.println( "      Plugboard" );
+
+		int i = 0;
+		for( Character[] conn : enigma.getPlugboardConnections() ) {
+			out.print( (i%4==0 ? "       " : "  " ) + symbol( conn[0] ) + "-" + symbol( conn[1] ) + ((++i)%4==0 ? "\n" : "" ) );
+		}
+		out.print( "\n" );
+	}
+
+	// a letter for the classic machine, a number for other alphabets
+	private String position( int position ) {
+		return enigma.getAlphabetSize() == Rotor.ROTOR_SIZE ? String.valueOf( (char)( position + 'A' ) ) : String.valueOf( position );
+	}
+
+	// the same for a plugboard endpoint, which is kept as a character counted up from 'A'
+	private String symbol( char endpoint ) {
+		return position( endpoint - 'A' );
+	}
+
+	private void getStats() {
+		Metrics metrics = Metrics.getDefault();
+		out.println( Application.PREFIX_INFO + "Statistics:" );
+		out.println( String.format( "      characters converted  %d", metrics.getCharactersConverted() ) );
+		out.println( String.format( "      messages processed    %d", metrics.getMessagesProcessed() ) );
+		out.println( String.format( "      conversions/second    %.1f over %.1f s", metrics.getConversionsPerSecond(), metrics.getUptimeSeconds() ) );
+		out.println( String.format( "      message latency (us)  p50 %.1f  p90 %.1f  p99 %.1f  max %.1f",
+				metrics.getLatency50thMicros(), metrics.getLatency90thMicros(), metrics.getLatency99thMicros(), metrics.getLatencyMaxMicros() ) );
+		out.println( String.format( "      config imports        %d, last took %.2f ms", metrics.getConfigImports(), metrics.getLastImportMillis() ) );
+		out.println( String.format( "      catalog               %d rotors, %d reflectors",
+				enigma.getCatalog().getRotors().size(), enigma.getCatalog().getReflectors().size() ) );
+	}
+
+	/**
+	 * Translates the message, or the next line when message is null
+	 */
+	private void translateMessage( boolean encode, String message ) throws IOException {
+		if( !enigma.isReady() ) {
+			// a script's message line is still taken, so it is not run as a command
+			if( message == null && !interactive ) {
+				readLine();
+			}
+			error( "Machine is not ready" );
+			return;
+		}
+
+		if( message == null ) {
+			prompt( Application.USER_PROMPT_STRESS );
+			message = readLine();
+		}
+		String cipher = message != null ? message.toUpperCase().replaceAll( "[^A-Z]", "" ) : "";
+
+		if( !interactive ) {
+			try {
+				StringBuilder output = translate( cipher, encode );
+				if( output.length() > 0 && output.charAt( output.length() - 1 ) == ' ' ) {
+					output.setLength( output.length() - 1 );
+				}
+				out.println( output );
+			}
+			catch( Exception e ) {
+				error( "Exception: " + e.getMessage() );
+			}
+			return;
+		}
+
+		if( cipher.length() > 0 ) {
+
+			out.println( Application.PREFIX_INFO + "Translating message: " + cipher );
+
+			prompt( Application.USER_PROMPT_STRESS );
+			// convert
+			try {
+				out.print( translate( cipher, encode ) );
+			}
+			catch( Exception e ) {
+				error( "Exception: " + e.getMessage() );
+			}
+			out.println( "\n" );
+		}
+	}
+
+	private StringBuilder translate( String cipher, boolean encode ) throws Exception {
+		char[] letters = cipher.toCharArray();
+		enigma.convert( letters );
+
+		StringBuilder output = new StringBuilder( letters.length + letters.length / 5 );
+		for( int i = 0; i < letters.length; i++ ) {
+			output.append( letters[i] );
+			if( (i+1) % 5 == 0 && encode ) {
+				output.append( ' ' );
+			}
+		}
+		return output;
+	}
+
+	private void prompt( String text ) {
+		if( prompt ) {
+			out.print( text );
+		}
+	}
+
+	// acknowledgements, which scripts do not need
+	private void info( String message ) {
+		if( interactive ) {
+			out.println( message );
+		}
+	}
+
+	private void error( String message ) {
+		errors++;
+		err.println( Application.PREFIX_ERR + ( interactive ? "" : "line " + lineNumber + ": " ) + message );
+	}
+
+	// everything written so far goes out before waiting on the user
+	private String readLine() throws IOException {
+		if( interactive ) {
+			out.flush();
+			err.flush();
+		}
+		lineNumber++;
+		return reader.readLine();
+	}
+}
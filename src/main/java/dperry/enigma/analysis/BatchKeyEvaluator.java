@@ -0,0 +1,153 @@
+package dperry.enigma.analysis;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.engine.LaneEnigma;
+
+/**
+ * Decrypts one cipher text under many start positions at once and reports a score or a match
+ * per key, without building a machine or a string for any of them.
+ *
+ * Keys are given as structure of arrays: positions[r][k] is where rotor r starts for key k and
+ * reflectorPositions[k] where the reflector does. They are run through a {@link LaneEnigma} a
+ * batch of lanes at a time, every lane decrypting the same letter together.
+ *
+ * An evaluator reuses its buffers between calls, so each thread needs its own.
+ */
+public class BatchKeyEvaluator {
+
+	public static final int DEFAULT_LANES = 256;
+
+	private final LaneEnigma machine;
+	private final int lanes;
+	private final int rotorCount;
+	private final byte[] ciphertext;
+
+	private final int[] values;
+	private final int[] keys;
+	private final int[] start;
+	// decryption of each lane, one after the other, for scoring
+	private byte[] texts;
+
+	public BatchKeyEvaluator( Enigma enigma, char[] ciphertext ) throws Exception {
+		this( enigma, ciphertext, DEFAULT_LANES );
+	}
+
+	/**
+	 * Uses the machine's rotors, reflector, plugboard and stepping; only its positions are
+	 * replaced by each key's. The machine itself is left unchanged.
+	 *
+	 * @param lanes how many keys are run together
+	 */
+	public BatchKeyEvaluator( Enigma enigma, char[] ciphertext, int lanes ) throws Exception {
+		if( lanes < 1 ) {
+			throw new Exception( "At least one lane is needed" );
+		}
+		this.ciphertext = new byte[ciphertext.length];
+		for( int i = 0; i < ciphertext.length; i++ ) {
+			if( ciphertext[i] < 'A' || ciphertext[i] > 'Z' ) {
+				throw new Exception( "Invalid character: " + ciphertext[i] );
+			}
+			this.ciphertext[i] = (byte)( ciphertext[i] - 'A' );
+		}
+
+		machine = new LaneEnigma( enigma.compile(), lanes );
+		this.lanes = lanes;
+		rotorCount = enigma.getCurrentRotors().size();
+
+		values = new int[lanes];
+		keys = new int[lanes];
+		start = new int[rotorCount];
+	}
+
+	/**
+	 * Scores the whole decryption under each of the first count keys into scores[k]
+	 */
+	public void score( int[][] positions, int[] reflectorPositions, int count, Scorer scorer, double[] scores ) {
+		int length = ciphertext.length;
+		if( texts == null ) {
+			texts = new byte[lanes * length];
+		}
+
+		for( int first = 0; first < count; first += lanes ) {
+			int batch = load( positions, reflectorPositions, first, Math.min( lanes, count - first ) );
+
+			for( int t = 0; t < length; t++ ) {
+				int letter = ciphertext[t];
+				for( int i = 0; i < batch; i++ ) {
+					values[i] = letter;
+				}
+				machine.convert( values, batch );
+				for( int i = 0, offset = t; i < batch; i++, offset += length ) {
+					texts[offset] = (byte)values[i];
+				}
+			}
+
+			for( int i = 0; i < batch; i++ ) {
+				scores[first + i] = scorer.score( texts, i * length, length );
+			}
+		}
+	}
+
+	/**
+	 * Sets matches[k] for each of the first count keys to whether it decrypts the cipher text
+	 * at cribOffset into the crib. A key stops being decrypted at its first wrong letter.
+	 *
+	 * @return the number of keys that matched
+	 */
+	public int match( int[][] positions, int[] reflectorPositions, int count, char[] crib, int cribOffset, boolean[] matches ) throws Exception {
+		if( crib.length == 0 || cribOffset < 0 || cribOffset + crib.length > ciphertext.length ) {
+			throw new Exception( "Crib does not fit in the cipher text" );
+		}
+
+		int matched = 0;
+		for( int first = 0; first < count; first += lanes ) {
+			int batch = load( positions, reflectorPositions, first, Math.min( lanes, count - first ) );
+			for( int i = 0; i < batch; i++ ) {
+				keys[i] = first + i;
+				matches[first + i] = false;
+			}
+			machine.skip( cribOffset );
+
+			// keys that fail are swapped behind the ones still running
+			int active = batch;
+			for( int t = 0; t < crib.length && active > 0; t++ ) {
+				int letter = ciphertext[cribOffset + t];
+				int expected = crib[t] - 'A';
+				for( int i = 0; i < active; i++ ) {
+					values[i] = letter;
+				}
+				machine.convert( values, active );
+
+				for( int i = 0; i < active; ) {
+					if( values[i] == expected ) {
+						i++;
+						continue;
+					}
+					active--;
+					machine.swapLanes( i, active );
+					values[i] = values[active];
+					int key = keys[i];
+					keys[i] = keys[active];
+					keys[active] = key;
+				}
+			}
+
+			for( int i = 0; i < active; i++ ) {
+				matches[keys[i]] = true;
+			}
+			matched += active;
+		}
+		return matched;
+	}
+
+	// puts keys first through first+batch-1 in the lanes
+	private int load( int[][] positions, int[] reflectorPositions, int first, int batch ) {
+		for( int i = 0; i < batch; i++ ) {
+			for( int r = 0; r < rotorCount; r++ ) {
+				start[r] = positions[r][first + i];
+			}
+			machine.setPositions( i, start, reflectorPositions[first + i] );
+		}
+		return batch;
+	}
+}
@@ -0,0 +1,372 @@
+package dperry.enigma.analysis;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Finds every place a crib could sit in a cipher text. The machine never turns a letter into
+ * itself, so a crib cannot start anywhere one of its letters lines up with the same cipher
+ * letter; every other start is a legal placement.
+ *
+ * The cipher text is split into blocks. For each block a bitmap of where every letter occurs
+ * is built once, then the illegal starts of a crib are the bitmaps of its letters, each
+ * shifted back by the letter's place in the crib and or-ed together, 64 starts a word. Blocks
+ * overlap by the longest crib less one letter, so every start is tested in exactly one block.
+ *
+ * Files are scanned at the same time on a fork-join pool and each file's blocks are scanned
+ * in parallel while it is read. Placements are reported as each block finishes, blocks in file
+ * order and within a block crib by crib in offset order, so a file's results can be written
+ * out as they come without holding them all.
+ */
+public class CribScanner {
+
+	/**
+	 * Receives placements as they are found. Each file is reported from one thread at a time,
+	 * but different files at once, so implementations must be thread safe.
+	 */
+	public interface Listener {
+		/**
+		 * @param file the file scanned, null for text given directly
+		 * @param crib index of the crib
+		 * @param offset letter the crib starts at, counting only letters
+		 */
+		void found( Path file, int crib, long offset );
+
+		void scanned( Path file, long letters );
+	}
+
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 18;
+
+	static final int SIZE = Rotor.ROTOR_SIZE;
+
+	private static final int READ_SIZE = 64 * 1024;
+
+	private final char[][] cribs;
+	private final int longest;
+	private final int blockSize;
+
+	private volatile boolean cancelled;
+
+	public CribScanner( char[][] cribs ) throws Exception {
+		this( cribs, DEFAULT_BLOCK_SIZE );
+	}
+
+	/**
+	 * @param cribs plain text to place, letters 'A' through 'Z'
+	 * @param blockSize starts tested by each block, a multiple of 64
+	 */
+	public CribScanner( char[][] cribs, int blockSize ) throws Exception {
+		if( cribs.length == 0 ) {
+			throw new Exception( "No cribs given" );
+		}
+		if( blockSize <= 0 || blockSize % 64 != 0 ) {
+			throw new Exception( "Invalid block size: " + blockSize );
+		}
+
+		int longest = 0;
+		this.cribs = new char[cribs.length][];
+		for( int c = 0; c < cribs.length; c++ ) {
+			if( cribs[c].length == 0 ) {
+				throw new Exception( "Empty crib" );
+			}
+			for( char letter : cribs[c] ) {
+				if( letter < 'A' || letter > 'Z' ) {
+					throw new Exception( "Invalid character: " + letter );
+				}
+			}
+			this.cribs[c] = cribs[c].clone();
+			longest = Math.max( longest, cribs[c].length );
+		}
+		this.longest = longest;
+		this.blockSize = blockSize;
+	}
+
+	public int getCribCount() {
+		return cribs.length;
+	}
+
+	public char[] getCrib( int crib ) {
+		return cribs[crib].clone();
+	}
+
+	/**
+	 * Scans cipher text already in memory, letters 'A' through 'Z', reporting it as file null
+	 */
+	public void scan( char[] ciphertext, Listener listener, ForkJoinPool pool ) throws Exception {
+		for( char letter : ciphertext ) {
+			if( letter < 'A' || letter > 'Z' ) {
+				throw new Exception( "Invalid character: " + letter );
+			}
+		}
+		pool.invoke( new TextScan( ciphertext, listener, window( pool ) ) );
+	}
+
+	/**
+	 * Scans the files, returning once all are done or the scan is cancelled. Letters of either
+	 * case are read and everything else is skipped, so grouped output can be scanned as it is.
+	 */
+	public void scan( List<Path> files, Listener listener, ForkJoinPool pool ) throws IOException {
+		List<FileScan> scans = new ArrayList<FileScan>();
+		for( Path file : files ) {
+			scans.add( new FileScan( file, listener, window( pool ) ) );
+		}
+		try {
+			pool.invoke( new RecursiveAction() {
+				@Override
+				protected void compute() {
+					invokeAll( scans );
+				}
+			} );
+		}
+		catch( UncheckedIOException e ) {
+			throw e.getCause();
+		}
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	// blocks of one file in flight at once, enough to keep every worker busy
+	private static int window( ForkJoinPool pool ) {
+		return Math.max( 2, pool.getParallelism() * 2 );
+	}
+
+	/**
+	 * Returns the legal starts of every crib among the first starts letters, a bitmap per crib.
+	 * letters holds the block and, after it, the start of the next one.
+	 */
+	long[][] place( byte[] letters, int length, int starts ) {
+		int words = ( length + 63 ) >>> 6;
+
+		// where each letter occurs, with a spare zero word so shifting can read one past the end
+		long[][] occurs = new long[SIZE][words + 1];
+		for( int i = 0; i < length; i++ ) {
+			occurs[letters[i] - 'A'][i >>> 6] |= 1L << i;
+		}
+
+		long[][] legal = new long[cribs.length][];
+		for( int c = 0; c < cribs.length; c++ ) {
+			char[] crib = cribs[c];
+			int last = Math.min( starts, length - crib.length + 1 );
+			if( last <= 0 ) {
+				legal[c] = new long[0];
+				continue;
+			}
+			int used = ( last + 63 ) >>> 6;
+
+			// a start is illegal when any letter of the crib is under the same cipher letter
+			long[] illegal = new long[used];
+			for( int j = 0; j < crib.length; j++ ) {
+				long[] bits = occurs[crib[j] - 'A'];
+				int skip = j >>> 6;
+				int shift = j & 63;
+				if( shift == 0 ) {
+					for( int w = 0; w < used && w + skip < words; w++ ) {
+						illegal[w] |= bits[w + skip];
+					}
+				}
+				else {
+					for( int w = 0; w < used && w + skip < words; w++ ) {
+						illegal[w] |= ( bits[w + skip] >>> shift ) | ( bits[w + skip + 1] << ( 64 - shift ) );
+					}
+				}
+			}
+
+			for( int w = 0; w < used; w++ ) {
+				illegal[w] = ~illegal[w];
+			}
+			if( ( last & 63 ) != 0 ) {
+				illegal[used - 1] &= ( 1L << last ) - 1;
+			}
+			legal[c] = illegal;
+		}
+		return legal;
+	}
+
+	private void report( Path file, long base, long[][] legal, Listener listener ) {
+		for( int c = 0; c < legal.length; c++ ) {
+			long[] bits = legal[c];
+			for( int w = 0; w < bits.length; w++ ) {
+				for( long word = bits[w]; word != 0; word &= word - 1 ) {
+					listener.found( file, c, base + ( (long)w << 6 ) + Long.numberOfTrailingZeros( word ) );
+				}
+			}
+		}
+	}
+
+	private class Block extends RecursiveTask<long[][]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] letters;
+		private final int length;
+		private final int starts;
+
+		Block( byte[] letters, int length, int starts ) {
+			this.letters = letters;
+			this.length = length;
+			this.starts = starts;
+		}
+
+		@Override
+		protected long[][] compute() {
+			return place( letters, length, starts );
+		}
+	}
+
+	/**
+	 * Hands out blocks to the pool and reports them in order, with a bounded number in flight
+	 */
+	private abstract class Scan extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		final Path file;
+		final Listener listener;
+
+		private final ArrayDeque<Block> pending = new ArrayDeque<Block>();
+		private final int window;
+		private long reported;
+
+		Scan( Path file, Listener listener, int window ) {
+			this.file = file;
+			this.listener = listener;
+			this.window = window;
+		}
+
+		void submit( byte[] letters, int length, int starts ) {
+			Block block = new Block( letters, length, starts );
+			block.fork();
+			pending.add( block );
+			if( pending.size() >= window ) {
+				finishOldest();
+			}
+		}
+
+		void finish( long letters ) {
+			while( !pending.isEmpty() ) {
+				finishOldest();
+			}
+			if( !cancelled ) {
+				listener.scanned( file, letters );
+			}
+		}
+
+		private void finishOldest() {
+			Block block = pending.poll();
+			long[][] legal = block.join();
+			if( !cancelled ) {
+				report( file, reported, legal, listener );
+			}
+			reported += block.starts;
+		}
+	}
+
+	private class TextScan extends Scan {
+
+		private static final long serialVersionUID = 1L;
+
+		private final char[] ciphertext;
+
+		TextScan( char[] ciphertext, Listener listener, int window ) {
+			super( null, listener, window );
+			this.ciphertext = ciphertext;
+		}
+
+		@Override
+		protected void compute() {
+			for( int start = 0; start < ciphertext.length && !cancelled; start += blockSize ) {
+				int length = Math.min( ciphertext.length - start, blockSize + longest - 1 );
+				byte[] letters = new byte[length];
+				for( int i = 0; i < length; i++ ) {
+					letters[i] = (byte)ciphertext[start + i];
+				}
+				submit( letters, length, Math.min( length, blockSize ) );
+			}
+			finish( ciphertext.length );
+		}
+	}
+
+	private class FileScan extends Scan {
+
+		private static final long serialVersionUID = 1L;
+
+		FileScan( Path file, Listener listener, int window ) {
+			super( file, listener, window );
+		}
+
+		@Override
+		protected void compute() {
+			int capacity = blockSize + longest - 1;
+			byte[] letters = new byte[capacity];
+			int length = 0;
+			long total = 0;
+
+			ByteBuffer buffer = ByteBuffer.allocate( READ_SIZE );
+			FileChannel channel = null;
+			try {
+				channel = FileChannel.open( file, StandardOpenOption.READ );
+				while( !cancelled && channel.read( buffer ) >= 0 ) {
+					buffer.flip();
+					byte[] input = buffer.array();
+					for( int i = 0; i < buffer.limit(); i++ ) {
+						int ch = input[i];
+						if( ch >= 'a' && ch <= 'z' ) {
+							ch -= 'a' - 'A';
+						}
+						else if( ch < 'A' || ch > 'Z' ) {
+							continue;
+						}
+
+						if( length == capacity ) {
+							// the block is full; its tail starts the next one
+							byte[] next = new byte[capacity];
+							System.arraycopy( letters, blockSize, next, 0, capacity - blockSize );
+							submit( letters, length, blockSize );
+							letters = next;
+							length = capacity - blockSize;
+						}
+						letters[length++] = (byte)ch;
+						total++;
+					}
+					buffer.clear();
+				}
+			}
+			catch( IOException e ) {
+				throw new UncheckedIOException( new IOException( "Could not read " + file, e ) );
+			}
+			finally {
+				try {
+					if( channel != null ) {
+						channel.close();
+					}
+				}
+				catch( IOException e ) {
+					// everything wanted from the file has been read
+				}
+			}
+
+			if( length > 0 && !cancelled ) {
+				submit( letters, length, length );
+			}
+			finish( total );
+		}
+	}
+}
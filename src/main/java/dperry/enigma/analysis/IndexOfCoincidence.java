@@ -0,0 +1,40 @@
+package dperry.enigma.analysis;
+
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Scores text by its index of coincidence, the chance that two letters picked from it are
+ * the same. Uniformly random text scores about 0.038, English about 0.066. It needs no
+ * language model and still rises as a plugboard gets closer to right, which makes it a
+ * good first score for ciphertext-only work.
+ */
+public class IndexOfCoincidence implements Scorer {
+
+	// per thread letter counts, so scoring allocates nothing
+	private static final ThreadLocal<int[]> COUNTS = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[Rotor.ROTOR_SIZE];
+		}
+	};
+
+	public double score( byte[] text, int offset, int length ) {
+		if( length < 2 ) {
+			return 0;
+		}
+
+		int[] counts = COUNTS.get();
+		for( int i = 0; i < counts.length; i++ ) {
+			counts[i] = 0;
+		}
+		for( int i = offset; i < offset + length; i++ ) {
+			counts[text[i]]++;
+		}
+
+		long sum = 0;
+		for( int count : counts ) {
+			sum += (long)count * ( count - 1 );
+		}
+		return (double)sum / ( (long)length * ( length - 1 ) );
+	}
+}
@@ -0,0 +1,279 @@
+package dperry.enigma.analysis;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.engine.CompiledEnigma;
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.parts.Plugboard;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Brute force search for the setting that decrypts a cipher text into a known crib.
+ *
+ * Every ordering of rotorCount distinct rotors from the machine's available rotors is tried
+ * with every available reflector and every rotor and reflector start position. The
+ * plugboard and stepping are taken from the machine as they are.
+ *
+ * The space is split into units, one per rotor order and reflector, which are spread over a
+ * fork-join pool. Each unit compiles its machine once and then only moves it between
+ * candidates, so nothing is allocated per candidate.
+ */
+public class KeySearch {
+
+	/**
+	 * Receives results as the search runs. Called from the worker threads, so implementations
+	 * must be thread safe.
+	 */
+	public interface Listener {
+		void progress( long searched, long total );
+
+		void found( MachineKey key );
+	}
+
+	static final int SIZE = Rotor.ROTOR_SIZE;
+
+	private final Rotor[] rotors;
+	private final Reflector[] reflectors;
+	private final Plugboard plugboard;
+	private final boolean advanceRotors;
+	private final boolean advanceReflector;
+	private final Stepping stepping;
+
+	private final int rotorCount;
+	private final char[] ciphertext;
+	private final char[] crib;
+	private final int cribOffset;
+
+	private final long units;
+	private final long unitSize;
+
+	private volatile boolean cancelled;
+
+	/**
+	 * @param ciphertext the cipher text, letters 'A' through 'Z'
+	 * @param crib plain text known to sit at cribOffset in the cipher text
+	 */
+	public KeySearch( Enigma enigma, int rotorCount, char[] ciphertext, char[] crib, int cribOffset ) throws Exception {
+		List<Rotor> available = enigma.getCatalog().getRotors();
+
+		if( rotorCount < 1 || rotorCount > available.size() ) {
+			throw new Exception( "Cannot choose " + rotorCount + " of " + available.size() + " rotors" );
+		}
+		if( enigma.getCatalog().getReflectors().isEmpty() ) {
+			throw new Exception( "No reflectors available to use" );
+		}
+		if( crib.length == 0 || cribOffset < 0 || cribOffset + crib.length > ciphertext.length ) {
+			throw new Exception( "Crib does not fit in the cipher text" );
+		}
+		for( char letter : ciphertext ) {
+			checkLetter( letter );
+		}
+		for( char letter : crib ) {
+			checkLetter( letter );
+		}
+
+		this.rotors = available.toArray( new Rotor[available.size()] );
+		this.reflectors = enigma.getCatalog().getReflectors().toArray( new Reflector[0] );
+		this.plugboard = enigma.getPlugboard();
+		this.advanceRotors = enigma.getAdvanceRotors();
+		this.advanceReflector = enigma.getAdvanceReflector();
+		this.stepping = enigma.getStepping();
+
+		this.rotorCount = rotorCount;
+		this.ciphertext = ciphertext.clone();
+		this.crib = crib.clone();
+		this.cribOffset = cribOffset;
+
+		// every count, up to the total, must fit a long for units and progress to be counted
+		try {
+			long orders = 1;
+			for( int i = 0; i < rotorCount; i++ ) {
+				orders = Math.multiplyExact( orders, rotors.length - i );
+			}
+			units = Math.multiplyExact( orders, reflectors.length );
+
+			long size = SIZE;
+			for( int i = 0; i < rotorCount; i++ ) {
+				size = Math.multiplyExact( size, SIZE );
+			}
+			unitSize = size;
+			Math.multiplyExact( units, unitSize );
+		}
+		catch( ArithmeticException e ) {
+			throw new Exception( "Too many keys to search with " + rotorCount + " of " + rotors.length + " rotors" );
+		}
+	}
+
+	/**
+	 * Number of units, one for every rotor order and reflector
+	 */
+	public long getUnits() {
+		return units;
+	}
+
+	/**
+	 * Number of candidates in each unit, every rotor and reflector start position
+	 */
+	public long getUnitSize() {
+		return unitSize;
+	}
+
+	public long getTotal() {
+		return units * unitSize;
+	}
+
+	public void search( Listener listener ) {
+		search( 0, units, listener, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Searches the units from first up to, not including, last and returns once they are done
+	 * or the search is cancelled. Progress counts only these units.
+	 */
+	public void search( long first, long last, Listener listener, ForkJoinPool pool ) {
+		AtomicLong searched = new AtomicLong();
+		long total = ( last - first ) * unitSize;
+		pool.invoke( new Units( first, last, listener, searched, total ) );
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the rotors, in order, and reflector for a unit. The unit number is read as mixed
+	 * radix digits: the reflector, then which of the remaining rotors goes in each slot.
+	 */
+	public MachineKey describe( long unit ) {
+		Rotor[] order = new Rotor[rotorCount];
+		Reflector reflector = unit( unit, order );
+
+		String[] names = new String[rotorCount];
+		for( int r = 0; r < rotorCount; r++ ) {
+			names[r] = order[r].getName();
+		}
+		return new MachineKey( names, reflector.getName(), new int[rotorCount], 0 );
+	}
+
+	private Reflector unit( long unit, Rotor[] order ) {
+		Reflector reflector = reflectors[(int)( unit % reflectors.length )];
+		unit /= reflectors.length;
+
+		boolean[] used = new boolean[rotors.length];
+		for( int r = 0; r < rotorCount; r++ ) {
+			int radix = rotors.length - r;
+			int digit = (int)( unit % radix );
+			unit /= radix;
+
+			// take the digit'th rotor not used yet
+			int i = 0;
+			while( used[i] || digit > 0 ) {
+				if( !used[i] ) {
+					digit--;
+				}
+				i++;
+			}
+			used[i] = true;
+			order[r] = rotors[i];
+		}
+		return reflector;
+	}
+
+	private void searchUnit( long unit, Listener listener ) {
+		Rotor[] order = new Rotor[rotorCount];
+		Reflector reflector = unit( unit, order );
+
+		// copies, so the machine never moves the shared catalog parts
+		for( int r = 0; r < rotorCount; r++ ) {
+			order[r] = new Rotor( order[r] );
+		}
+		CompiledEnigma machine = new CompiledEnigma( order, reflector, plugboard, advanceRotors, advanceReflector, stepping );
+		int[] positions = new int[rotorCount];
+
+		for( int reflectorPosition = 0; reflectorPosition < SIZE && !cancelled; reflectorPosition++ ) {
+			do {
+				machine.setPositions( positions, reflectorPosition );
+				machine.skip( cribOffset );
+
+				if( matches( machine ) ) {
+					String[] names = new String[rotorCount];
+					for( int r = 0; r < rotorCount; r++ ) {
+						names[r] = order[r].getName();
+					}
+					listener.found( new MachineKey( names, reflector.getName(), positions, reflectorPosition ) );
+				}
+			}
+			while( next( positions ) );
+		}
+	}
+
+	private boolean matches( CompiledEnigma machine ) {
+		for( int i = 0; i < crib.length; i++ ) {
+			if( machine.convert( ciphertext[cribOffset + i] ) != crib[i] ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// odometer over every combination of positions, false once it wraps back to the start
+	private static boolean next( int[] positions ) {
+		for( int r = 0; r < positions.length; r++ ) {
+			if( ++positions[r] < SIZE ) {
+				return true;
+			}
+			positions[r] = 0;
+		}
+		return false;
+	}
+
+	private static void checkLetter( char letter ) throws Exception {
+		if( letter < 'A' || letter > 'Z' ) {
+			throw new Exception( "Invalid character: " + letter );
+		}
+	}
+
+	private class Units extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long first;
+		private final long last;
+		private final Listener listener;
+		private final AtomicLong searched;
+		private final long total;
+
+		Units( long first, long last, Listener listener, AtomicLong searched, long total ) {
+			this.first = first;
+			this.last = last;
+			this.listener = listener;
+			this.searched = searched;
+			this.total = total;
+		}
+
+		@Override
+		protected void compute() {
+			if( cancelled ) {
+				return;
+			}
+			if( last - first > 1 ) {
+				long middle = first + ( last - first ) / 2;
+				invokeAll( new Units( first, middle, listener, searched, total ),
+						new Units( middle, last, listener, searched, total ) );
+			}
+			else if( last > first ) {
+				searchUnit( first, listener );
+				listener.progress( searched.addAndGet( unitSize ), total );
+			}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package dperry.enigma.analysis;
+
+/**
+ * A machine setting found or produced by the analysis tools: which rotors in which order,
+ * the reflector, and where each starts. Positions are letters, first rotor first.
+ */
+public class MachineKey {
+
+	private final String[] rotors;
+	private final String reflector;
+	private final String positions;
+	private final char reflectorPosition;
+
+	public MachineKey( String[] rotors, String reflector, String positions, char reflectorPosition ) {
+		this.rotors = rotors.clone();
+		this.reflector = reflector;
+		this.positions = positions;
+		this.reflectorPosition = reflectorPosition;
+	}
+
+	public MachineKey( String[] rotors, String reflector, int[] positions, int reflectorPosition ) {
+		this( rotors, reflector, letters( positions ), (char)( 'A' + reflectorPosition ) );
+	}
+
+	/**
+	 * Reads a key written by {@link #toString()}
+	 */
+	public static MachineKey parse( String text ) throws Exception {
+		String[] fields = text.trim().split( " " );
+		if( fields.length != 4 || fields[3].length() != 1 ) {
+			throw new Exception( "Invalid machine key: " + text );
+		}
+		String[] rotors = fields[0].split( "," );
+		if( rotors.length != fields[2].length() ) {
+			throw new Exception( "Invalid machine key: " + text );
+		}
+		return new MachineKey( rotors, fields[1], fields[2], fields[3].charAt( 0 ) );
+	}
+
+	public String[] getRotors() {
+		return rotors.clone();
+	}
+
+	public String getReflector() {
+		return reflector;
+	}
+
+	public String getPositions() {
+		return positions;
+	}
+
+	public char getReflectorPosition() {
+		return reflectorPosition;
+	}
+
+	/**
+	 * Formats the key as "alpha,beta,gamma zulu ABC D"
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for( int i = 0; i < rotors.length; i++ ) {
+			sb.append( i == 0 ? "" : "," ).append( rotors[i] );
+		}
+		sb.append( ' ' ).append( reflector );
+		sb.append( ' ' ).append( positions );
+		sb.append( ' ' ).append( reflectorPosition );
+		return sb.toString();
+	}
+
+	private static String letters( int[] positions ) {
+		char[] letters = new char[positions.length];
+		for( int i = 0; i < positions.length; i++ ) {
+			letters[i] = (char)( 'A' + positions[i] );
+		}
+		return new String( letters );
+	}
+}
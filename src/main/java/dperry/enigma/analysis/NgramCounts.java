@@ -0,0 +1,151 @@
+package dperry.enigma.analysis;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Counts the letter n-grams of a corpus, from single letters up to {@link #MAX_N} at once, and
+ * writes them as the tables {@link NgramModel} scores with. Only letters count; everything
+ * else in the corpus is skipped, so n-grams run across spaces and punctuation the way they do
+ * in a message typed into the machine. Files added one after another are counted as one text.
+ *
+ * Not thread safe.
+ */
+public class NgramCounts {
+
+	public static final int MAX_N = 4;
+
+	static final int SIZE = Rotor.ROTOR_SIZE;
+
+	private static final int READ_SIZE = 64 * 1024;
+
+	// counts[n - 1] holds the n-grams, indexed by their letters as base 26 digits
+	private final long[][] counts = new long[MAX_N][];
+	private final long[] totals = new long[MAX_N];
+
+	// the last MAX_N letters, as base 26 digits, and how many have been seen up to MAX_N
+	private int recent;
+	private int seen;
+
+	public NgramCounts() {
+		for( int n = 1; n <= MAX_N; n++ ) {
+			counts[n - 1] = new long[NgramModel.tableSize( n )];
+		}
+	}
+
+	/**
+	 * Counts text of letter values, 0 for 'A' through 25 for 'Z'. Nothing is counted if any
+	 * value is out of range.
+	 */
+	public void add( byte[] text, int offset, int length ) {
+		for( int i = offset; i < offset + length; i++ ) {
+			if( text[i] < 0 || text[i] >= SIZE ) {
+				throw new IllegalArgumentException( "Invalid letter value: " + text[i] );
+			}
+		}
+		for( int i = offset; i < offset + length; i++ ) {
+			add( text[i] );
+		}
+	}
+
+	/**
+	 * Counts the letters of a file, in either case
+	 */
+	public void add( Path file ) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate( READ_SIZE );
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open( file, StandardOpenOption.READ );
+			while( channel.read( buffer ) >= 0 ) {
+				byte[] input = buffer.array();
+				for( int i = 0; i < buffer.position(); i++ ) {
+					int ch = input[i];
+					if( ch >= 'a' && ch <= 'z' ) {
+						add( ch - 'a' );
+					}
+					else if( ch >= 'A' && ch <= 'Z' ) {
+						add( ch - 'A' );
+					}
+				}
+				buffer.clear();
+			}
+		}
+		finally {
+			if( channel != null ) {
+				channel.close();
+			}
+		}
+	}
+
+	private void add( int letter ) {
+		recent = ( recent % NgramModel.tableSize( MAX_N - 1 ) ) * SIZE + letter;
+		if( seen < MAX_N ) {
+			seen++;
+		}
+
+		// the last n letters are the low n digits
+		for( int n = 1; n <= seen; n++ ) {
+			counts[n - 1][recent % counts[n - 1].length]++;
+			totals[n - 1]++;
+		}
+	}
+
+	public long getCount( int n, int index ) {
+		return counts[n - 1][index];
+	}
+
+	/**
+	 * Number of n-grams counted
+	 */
+	public long getTotal( int n ) {
+		return totals[n - 1];
+	}
+
+	/**
+	 * Writes the n-gram table, replacing any older one in one step so a reader never sees it
+	 * half written. N-grams never seen get a hundredth of the probability of one seen once.
+	 */
+	public void write( int n, Path path ) throws IOException {
+		if( n < 1 || n > MAX_N ) {
+			throw new IOException( "Invalid n-gram size: " + n );
+		}
+		long total = Math.max( totals[n - 1], 1 );
+		double floor = Math.log10( 0.01 / total );
+
+		Path temporary = Files.createTempFile( path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp" );
+		OutputStream stream = null;
+		try {
+			stream = Files.newOutputStream( temporary );
+			DataOutputStream out = new DataOutputStream( new BufferedOutputStream( stream ) );
+
+			out.writeInt( NgramModel.MAGIC );
+			out.writeInt( NgramModel.VERSION );
+			out.writeInt( n );
+			out.writeLong( totals[n - 1] );
+			for( long count : counts[n - 1] ) {
+				out.writeFloat( (float)( count > 0 ? Math.log10( (double)count / total ) : floor ) );
+			}
+			out.flush();
+			stream.close();
+			stream = null;
+
+			Files.move( temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		}
+		finally {
+			if( stream != null ) {
+				stream.close();
+			}
+			Files.deleteIfExists( temporary );
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package dperry.enigma.analysis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Scores text by how likely its n-grams are in the language of a corpus: the sum of the log
+ * probabilities of every run of n letters, so plain text scores higher than gibberish of the
+ * same length. Tables are written by {@link NgramCounts}.
+ *
+ * The table file is memory mapped and read in place, nothing is copied onto the heap, and a
+ * score is a lookup per letter that allocates nothing. Lookups only read, so one model can
+ * score from any number of threads.
+ *
+ * Layout, big endian: magic, version, n, the number of n-grams counted, then a float log10
+ * probability for each of the 26^n n-grams, indexed by their letters as base 26 digits.
+ */
+public class NgramModel implements Scorer {
+
+	static final int MAGIC = 0x454E474D;
+	static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+	private static final int SIZE = Rotor.ROTOR_SIZE;
+
+	private final FloatBuffer table;
+	private final int n;
+	private final long total;
+
+	// n-gram indexes are kept below this before the next letter is added
+	private final int prefixes;
+
+	private NgramModel( FloatBuffer table, int n, long total ) {
+		this.table = table;
+		this.n = n;
+		this.total = total;
+		prefixes = tableSize( n - 1 );
+	}
+
+	/**
+	 * Maps an n-gram table
+	 */
+	public static NgramModel open( Path path ) throws IOException {
+		ByteBuffer buffer;
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open( path, StandardOpenOption.READ );
+			long size = channel.size();
+			if( size < HEADER_SIZE || size > Integer.MAX_VALUE ) {
+				throw new IOException( "Not an n-gram table: " + path );
+			}
+			// the mapping stays valid once the channel is closed
+			buffer = channel.map( MapMode.READ_ONLY, 0, size );
+		}
+		finally {
+			if( channel != null ) {
+				channel.close();
+			}
+		}
+
+		int n = buffer.getInt( 8 );
+		if( buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION || n < 1 || n > NgramCounts.MAX_N
+				|| buffer.limit() != HEADER_SIZE + 4L * tableSize( n ) ) {
+			throw new IOException( "Not an n-gram table: " + path );
+		}
+
+		buffer.position( HEADER_SIZE );
+		return new NgramModel( buffer.slice().asFloatBuffer(), n, buffer.getLong( 12 ) );
+	}
+
+	/**
+	 * Number of entries in a table of n-grams, 26^n
+	 */
+	static int tableSize( int n ) {
+		int size = 1;
+		for( int i = 0; i < n; i++ ) {
+			size *= SIZE;
+		}
+		return size;
+	}
+
+	public int getN() {
+		return n;
+	}
+
+	/**
+	 * Number of n-grams in the corpus the table was built from
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Log10 probability of the n-gram with the given index
+	 */
+	public float logProbability( int index ) {
+		return table.get( index );
+	}
+
+	/**
+	 * Scores letter values, 0 for 'A' through 25 for 'Z'. Text shorter than n scores 0.
+	 */
+	public double score( byte[] text, int offset, int length ) {
+		double score = 0;
+		int index = 0;
+		for( int i = 0; i < length; i++ ) {
+			index = ( index % prefixes ) * SIZE + text[offset + i];
+			if( i >= n - 1 ) {
+				score += table.get( index );
+			}
+		}
+		return score;
+	}
+
+	/**
+	 * Scores letters 'A' through 'Z', as {@link dperry.enigma.Enigma#convert(char[])} leaves them
+	 */
+	public double score( char[] letters, int offset, int length ) {
+		double score = 0;
+		int index = 0;
+		for( int i = 0; i < length; i++ ) {
+			index = ( index % prefixes ) * SIZE + letters[offset + i] - 'A';
+			if( i >= n - 1 ) {
+				score += table.get( index );
+			}
+		}
+		return score;
+	}
+}
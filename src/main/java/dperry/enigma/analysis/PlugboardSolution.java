@@ -0,0 +1,63 @@
+package dperry.enigma.analysis;
+
+import java.util.ArrayList;
+
+import dperry.enigma.Enigma;
+
+/**
+ * A plugboard found by {@link PlugboardSolver} and the score its decryption reached
+ */
+public class PlugboardSolution {
+
+	private final byte[] endpoints;
+	private final double score;
+	private final int restarts;
+
+	PlugboardSolution( byte[] endpoints, double score, int restarts ) {
+		this.endpoints = endpoints.clone();
+		this.score = score;
+		this.restarts = restarts;
+	}
+
+	public double getScore() {
+		return score;
+	}
+
+	/**
+	 * Number of restarts run before the search stopped
+	 */
+	public int getRestarts() {
+		return restarts;
+	}
+
+	/**
+	 * Connected pairs, lower letter first, in the same form as {@link Enigma#getPlugboardConnections()}
+	 */
+	public ArrayList<Character[]> getConnections() {
+		ArrayList<Character[]> connections = new ArrayList<Character[]>();
+		for( int i = 0; i < endpoints.length; i++ ) {
+			if( endpoints[i] > i ) {
+				connections.add( new Character[]{ (char)( 'A' + i ), (char)( 'A' + endpoints[i] ) } );
+			}
+		}
+		return connections;
+	}
+
+	/**
+	 * Replaces the machine's plugboard connections with these
+	 */
+	public void applyTo( Enigma enigma ) {
+		enigma.resetPlugboard();
+		for( Character[] connection : getConnections() ) {
+			enigma.addPlugboardConnection( connection[0], connection[1] );
+		}
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for( Character[] connection : getConnections() ) {
+			sb.append( sb.length() == 0 ? "" : "," ).append( connection[0] ).append( connection[1] );
+		}
+		return sb.toString();
+	}
+}
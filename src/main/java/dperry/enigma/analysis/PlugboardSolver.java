@@ -0,0 +1,266 @@
+package dperry.enigma.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.engine.CompiledEnigma;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Ciphertext-only recovery of the plugboard once the rotors, reflector and their start
+ * positions are known.
+ *
+ * The machine's rotor and reflector permutation at every letter of the message is worked
+ * out once up front. A candidate plugboard then only needs one pass over that table to
+ * decrypt, so candidates are cheap and allocate nothing.
+ *
+ * Each restart hill-climbs from a random plugboard: every pair of letters is tried as a
+ * connection, breaking whatever connections they had, the same way the machine's
+ * addConnection/removeConnector would, and a change is kept when it raises the score.
+ * Restarts run in parallel and stop early once the best score has been reached by enough
+ * separate restarts to call it converged. Their results are taken in restart order whatever
+ * order they finish in, and convergence is only called once every restart before it is in,
+ * so the same seed always gives the same solution.
+ */
+public class PlugboardSolver {
+
+	public static final int DEFAULT_MAX_PAIRS = 10;
+	public static final int DEFAULT_AGREEMENT = 3;
+
+	static final int SIZE = Rotor.ROTOR_SIZE;
+
+	// scores closer than this are treated as equal
+	static final double EPSILON = 1e-9;
+
+	private final byte[] ciphertext;
+	private final byte[] permutations;
+	private final Scorer scorer;
+
+	private int maxPairs = DEFAULT_MAX_PAIRS;
+	private int agreement = DEFAULT_AGREEMENT;
+
+	// best so far, shared by the restarts and guarded by lock
+	private final Object lock = new Object();
+	private byte[] bestEndpoints;
+	private double bestScore;
+	private int bestCount;
+	private volatile boolean converged;
+
+	// finished restarts not yet taken, by restart number, and how many have been taken
+	private byte[][] finished;
+	private double[] finishedScores;
+	private int taken;
+
+	/**
+	 * Uses the machine's rotors, reflector and stepping at their current positions; the
+	 * machine itself is left unchanged. Its plugboard is ignored.
+	 */
+	public PlugboardSolver( Enigma enigma, char[] ciphertext, Scorer scorer ) throws Exception {
+		this.ciphertext = new byte[ciphertext.length];
+		for( int i = 0; i < ciphertext.length; i++ ) {
+			if( ciphertext[i] < 'A' || ciphertext[i] > 'Z' ) {
+				throw new Exception( "Invalid character: " + ciphertext[i] );
+			}
+			this.ciphertext[i] = (byte)( ciphertext[i] - 'A' );
+		}
+
+		CompiledEnigma machine = enigma.compile();
+		permutations = machine.unroll( ciphertext.length );
+		this.scorer = scorer;
+	}
+
+	/**
+	 * Largest number of connections a candidate may have
+	 */
+	public void setMaxPairs( int maxPairs ) {
+		this.maxPairs = maxPairs;
+	}
+
+	/**
+	 * How many restarts must reach the same best score before the search stops early
+	 */
+	public void setAgreement( int agreement ) {
+		this.agreement = agreement;
+	}
+
+	public PlugboardSolution solve( int restarts, long seed ) {
+		return solve( restarts, seed, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Runs up to the given number of restarts, each seeded from seed and its own number, and
+	 * returns the best plugboard found, the same for the same seed on any pool
+	 */
+	public synchronized PlugboardSolution solve( final int restarts, final long seed, ForkJoinPool pool ) {
+		bestEndpoints = identity();
+		bestScore = score( bestEndpoints, new byte[ciphertext.length] );
+		bestCount = 0;
+		converged = false;
+		finished = new byte[Math.max( restarts, 0 )][];
+		finishedScores = new double[finished.length];
+		taken = 0;
+
+		final AtomicInteger next = new AtomicInteger();
+		final List<RecursiveAction> workers = new ArrayList<RecursiveAction>();
+		for( int w = 0; w < pool.getParallelism(); w++ ) {
+			workers.add( new RecursiveAction() {
+				@Override
+				protected void compute() {
+					byte[] endpoints = new byte[SIZE];
+					byte[] text = new byte[ciphertext.length];
+
+					int restart;
+					while( !converged && ( restart = next.getAndIncrement() ) < restarts ) {
+						Random random = new Random( seed + restart );
+						randomize( endpoints, restart == 0 ? 0 : random.nextInt( maxPairs + 1 ), random );
+						double score = climb( endpoints, text );
+						offer( restart, endpoints, score );
+					}
+				}
+			} );
+		}
+
+		pool.invoke( new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll( workers );
+			}
+		} );
+
+		synchronized( lock ) {
+			finished = null;
+			finishedScores = null;
+			return new PlugboardSolution( bestEndpoints, bestScore, taken );
+		}
+	}
+
+	/**
+	 * Scores the decryption under the given plugboard, leaving it in text
+	 */
+	double score( byte[] endpoints, byte[] text ) {
+		byte[] cipher = ciphertext;
+		byte[] table = permutations;
+		for( int t = 0, offset = 0; t < cipher.length; t++, offset += SIZE ) {
+			text[t] = endpoints[table[offset + endpoints[cipher[t]]]];
+		}
+		return scorer.score( text, 0, text.length );
+	}
+
+	private double climb( byte[] endpoints, byte[] text ) {
+		int pairs = pairs( endpoints );
+		double best = score( endpoints, text );
+
+		boolean improved = true;
+		while( improved && !converged ) {
+			improved = false;
+
+			for( int a = 0; a < SIZE; a++ ) {
+				for( int b = a + 1; b < SIZE; b++ ) {
+					int oldA = endpoints[a];
+					int oldB = endpoints[b];
+
+					int change;
+					if( oldA == b ) {
+						// already connected, try without
+						endpoints[a] = (byte)a;
+						endpoints[b] = (byte)b;
+						change = -1;
+					}
+					else {
+						// connect a and b, breaking their existing connections
+						change = 1 - ( oldA != a ? 1 : 0 ) - ( oldB != b ? 1 : 0 );
+						if( pairs + change > maxPairs ) {
+							continue;
+						}
+						endpoints[oldA] = (byte)oldA;
+						endpoints[oldB] = (byte)oldB;
+						endpoints[a] = (byte)b;
+						endpoints[b] = (byte)a;
+					}
+
+					double score = score( endpoints, text );
+					if( score > best + EPSILON ) {
+						best = score;
+						pairs += change;
+						improved = true;
+					}
+					else {
+						// put back the connections touched
+						endpoints[oldA] = (byte)a;
+						endpoints[oldB] = (byte)b;
+						endpoints[a] = (byte)oldA;
+						endpoints[b] = (byte)oldB;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Holds a finished restart until those before it are in, then takes them in order. A
+	 * restart cut short once the search has converged comes after the last one taken, so it
+	 * is never looked at.
+	 */
+	private void offer( int restart, byte[] endpoints, double score ) {
+		synchronized( lock ) {
+			if( converged ) {
+				return;
+			}
+			finished[restart] = endpoints.clone();
+			finishedScores[restart] = score;
+
+			while( !converged && taken < finished.length && finished[taken] != null ) {
+				score = finishedScores[taken];
+				if( score > bestScore + EPSILON ) {
+					bestScore = score;
+					bestEndpoints = finished[taken];
+					bestCount = 1;
+				}
+				else if( score > bestScore - EPSILON ) {
+					bestCount++;
+				}
+				finished[taken++] = null;
+				if( bestCount >= agreement ) {
+					converged = true;
+				}
+			}
+		}
+	}
+
+	private static void randomize( byte[] endpoints, int pairs, Random random ) {
+		System.arraycopy( identity(), 0, endpoints, 0, SIZE );
+		for( int made = 0; made < pairs; ) {
+			int a = random.nextInt( SIZE );
+			int b = random.nextInt( SIZE );
+			if( a != b && endpoints[a] == a && endpoints[b] == b ) {
+				endpoints[a] = (byte)b;
+				endpoints[b] = (byte)a;
+				made++;
+			}
+		}
+	}
+
+	private static int pairs( byte[] endpoints ) {
+		int pairs = 0;
+		for( int i = 0; i < SIZE; i++ ) {
+			if( endpoints[i] > i ) {
+				pairs++;
+			}
+		}
+		return pairs;
+	}
+
+	private static byte[] identity() {
+		byte[] endpoints = new byte[SIZE];
+		for( int i = 0; i < SIZE; i++ ) {
+			endpoints[i] = (byte)i;
+		}
+		return endpoints;
+	}
+}
@@ -0,0 +1,11 @@
+package dperry.enigma.analysis;
+
+/**
+ * Rates how much a candidate decryption looks like plain text. Text is given as letter
+ * values, 0 for 'A' through 25 for 'Z'. Higher scores are better. Implementations are
+ * called from many threads at once and must be thread safe.
+ */
+public interface Scorer {
+
+	double score( byte[] text, int offset, int length );
+}
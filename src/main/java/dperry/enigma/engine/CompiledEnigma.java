@@ -0,0 +1,605 @@
+package dperry.enigma.engine;
+
+import java.nio.ByteBuffer;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.parts.Plugboard;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * A frozen copy of an {@link Enigma}'s rotor stack, reflector and plugboard, flattened
+ * into primitive tables. Conversions produce exactly the same output and stepping as
+ * {@link Enigma#convert(char)} but without boxing, list lookups or allocation.
+ *
+ * The compiled machine keeps its own positions. Use {@link #writePositions()} to copy
+ * them back onto the rotors and reflector it was compiled from.
+ */
+public class CompiledEnigma {
+
+	static final int SIZE = Rotor.ROTOR_SIZE;
+
+	// reduces any value in [0, 3*SIZE) modulo SIZE without branching
+	static final byte[] MOD = new byte[3 * SIZE];
+
+	static {
+		for( int i = 0; i < MOD.length; i++ ) {
+			MOD[i] = (byte)( i % SIZE );
+		}
+	}
+
+	private final Rotor[] rotors;
+	private final Reflector sourceReflector;
+
+	final int rotorCount;
+
+	// wiring tables, each rotor occupies 2*SIZE entries holding its wiring twice so that
+	// position + value can be used as an index without reducing it first
+	final byte[] forward;
+	final byte[] backward;
+	final byte[] reflector;
+	final byte[] plugboard;
+
+	// bit n set when stepping onto position n carries into the next rotor
+	private final int[] notches;
+	// the same shifted down one, bit n set when stepping from position n carries
+	final int[] carries;
+
+	private final int[] positions;
+	private int reflectorPosition;
+
+	private final boolean advanceRotors;
+	private final boolean advanceReflector;
+	private final Stepping stepping;
+	// double stepping is counted in closed form unless a rotor with a pawl has two notches
+	// next to each other; then it is walked
+	private final boolean walkDouble;
+
+	// bit r set when rotor r is at a notch, kept up to date while stepping
+	private int atNotch;
+
+	// optional table of the whole permutation for every position, see PermutationTable.
+	// state is the table offset for the current positions, kept up to date while stepping
+	// by adding each rotor's weight; the weights are all zero when there is no table
+	private PermutationTable table;
+	private int[] weights;
+	private int reflectorWeight;
+	private int state;
+
+	public CompiledEnigma( Enigma enigma ) {
+		this( enigma.getCurrentRotors().toArray( new Rotor[0] ), enigma.getCurrentReflector(), enigma.getPlugboard(),
+				enigma.getAdvanceRotors(), enigma.getAdvanceReflector(), enigma.getStepping() );
+	}
+
+	public CompiledEnigma( Rotor[] rotors, Reflector sourceReflector, Plugboard sourcePlugboard, boolean advanceRotors, boolean advanceReflector ) {
+		this( rotors, sourceReflector, sourcePlugboard, advanceRotors, advanceReflector, Stepping.ODOMETER );
+	}
+
+	/**
+	 * Compiles the given parts directly, without an {@link Enigma}. Positions are read from the
+	 * rotors and reflector, and {@link #writePositions()} writes to them, so pass copies where
+	 * they are shared.
+	 */
+	public CompiledEnigma( Rotor[] rotors, Reflector sourceReflector, Plugboard sourcePlugboard, boolean advanceRotors, boolean advanceReflector,
+			Stepping stepping ) {
+		if( sourceReflector.getSize() != SIZE ) {
+			throw new IllegalArgumentException( "Only the " + SIZE + " letter alphabet can be compiled; use SymbolEnigma for others" );
+		}
+		for( Rotor rotor : rotors ) {
+			if( rotor.getSize() != SIZE ) {
+				throw new IllegalArgumentException( "Rotor " + rotor.getName() + " has " + rotor.getSize() + " symbols, not " + SIZE );
+			}
+		}
+
+		rotorCount = rotors.length;
+		this.rotors = rotors.clone();
+		this.sourceReflector = sourceReflector;
+
+		forward = new byte[rotorCount * 2 * SIZE];
+		backward = new byte[rotorCount * 2 * SIZE];
+		notches = new int[rotorCount];
+		carries = new int[rotorCount];
+		positions = new int[rotorCount];
+
+		for( int r = 0; r < rotorCount; r++ ) {
+			int[] wiring = this.rotors[r].getConnections();
+			int base = r * 2 * SIZE;
+			for( int i = 0; i < SIZE; i++ ) {
+				forward[base + i] = forward[base + i + SIZE] = (byte)wiring[i];
+				backward[base + wiring[i]] = backward[base + wiring[i] + SIZE] = (byte)i;
+			}
+			notches[r] = this.rotors[r].getNotches();
+			carries[r] = ( notches[r] >>> 1 ) | ( ( notches[r] & 1 ) << ( SIZE - 1 ) );
+		}
+
+		reflector = new byte[2 * SIZE];
+		int[] pairs = sourceReflector.getPairs();
+		for( int i = 0; i < SIZE; i++ ) {
+			reflector[i] = reflector[i + SIZE] = (byte)pairs[i];
+		}
+
+		plugboard = new byte[SIZE];
+		for( int i = 0; i < SIZE; i++ ) {
+			plugboard[i] = (byte)( sourcePlugboard.getEndpoint( (char)( i + 'A' ) ) - 'A' );
+		}
+
+		this.advanceRotors = advanceRotors;
+		this.advanceReflector = advanceReflector;
+		this.stepping = stepping;
+
+		boolean adjacent = false;
+		for( int r = 0; r < rotorCount - 1; r++ ) {
+			int next = ( carries[r] >>> 1 ) | ( ( carries[r] & 1 ) << ( SIZE - 1 ) );
+			adjacent |= ( carries[r] & next ) != 0;
+		}
+		walkDouble = adjacent;
+
+		weights = new int[rotorCount];
+
+		readPositions();
+	}
+
+	/**
+	 * Creates an independent machine with the same wiring and positions as the given one.
+	 * The wiring tables are shared, only the positions are copied.
+	 */
+	public CompiledEnigma( CompiledEnigma machine ) {
+		rotors = machine.rotors;
+		sourceReflector = machine.sourceReflector;
+		rotorCount = machine.rotorCount;
+
+		forward = machine.forward;
+		backward = machine.backward;
+		reflector = machine.reflector;
+		plugboard = machine.plugboard;
+		notches = machine.notches;
+		carries = machine.carries;
+
+		positions = machine.positions.clone();
+		reflectorPosition = machine.reflectorPosition;
+
+		advanceRotors = machine.advanceRotors;
+		advanceReflector = machine.advanceReflector;
+		stepping = machine.stepping;
+		walkDouble = machine.walkDouble;
+		atNotch = machine.atNotch;
+
+		table = machine.table;
+		weights = machine.weights;
+		reflectorWeight = machine.reflectorWeight;
+		state = machine.state;
+	}
+
+	/**
+	 * Reloads the positions from the rotors and reflector this machine was compiled from
+	 */
+	public void readPositions() {
+		for( int r = 0; r < rotorCount; r++ ) {
+			positions[r] = normalize( rotors[r].getPosition() );
+		}
+		reflectorPosition = normalize( sourceReflector.getPosition() );
+
+		if( table != null && !table.covers( this ) ) {
+			setPermutationTable( null );
+		}
+		atNotch = notchMask();
+		state = index();
+	}
+
+	/**
+	 * Copies the current positions onto the rotors and reflector this machine was compiled from
+	 */
+	public void writePositions() {
+		for( int r = 0; r < rotorCount; r++ ) {
+			rotors[r].reset( positions[r] );
+		}
+		sourceReflector.reset( reflectorPosition );
+	}
+
+	/**
+	 * Converts a single letter, 'A' through 'Z', and steps the machine
+	 */
+	public char convert( char letter ) {
+		return (char)( translate( letter - 'A' ) + 'A' );
+	}
+
+	/**
+	 * Converts length letters from source into destination. The arrays may be the same
+	 * to convert in place. Letters must be 'A' through 'Z'.
+	 */
+	public void convert( char[] source, int sourceOffset, char[] destination, int destinationOffset, int length ) {
+		for( int i = 0; i < length; i++ ) {
+			destination[destinationOffset + i] = (char)( translate( source[sourceOffset + i] - 'A' ) + 'A' );
+		}
+	}
+
+	/**
+	 * Converts every letter of source into destination starting at offset. Letters must
+	 * be 'A' through 'Z'.
+	 */
+	public void convert( CharSequence source, char[] destination, int offset ) {
+		int length = source.length();
+		for( int i = 0; i < length; i++ ) {
+			destination[offset + i] = (char)( translate( source.charAt( i ) - 'A' ) + 'A' );
+		}
+	}
+
+	/**
+	 * Converts the remaining ASCII letters of source into destination, advancing the
+	 * position of both buffers. They may be the same buffer to convert in place. Letters
+	 * must be 'A' through 'Z' and destination must have room for all of them.
+	 */
+	public void convert( ByteBuffer source, ByteBuffer destination ) {
+		int length = source.remaining();
+		int sourceEnd = source.position() + length;
+		int destinationEnd = destination.position() + length;
+		int in = source.position();
+		int out = destination.position();
+
+		if( source.hasArray() && destination.hasArray() ) {
+			byte[] src = source.array();
+			byte[] dst = destination.array();
+			in += source.arrayOffset();
+			out += destination.arrayOffset();
+			for( int i = 0; i < length; i++ ) {
+				dst[out + i] = (byte)( translate( src[in + i] - 'A' ) + 'A' );
+			}
+		}
+		else {
+			for( int i = 0; i < length; i++ ) {
+				destination.put( out + i, (byte)( translate( source.get( in + i ) - 'A' ) + 'A' ) );
+			}
+		}
+
+		source.position( sourceEnd );
+		destination.position( destinationEnd );
+	}
+
+	/**
+	 * Steps the machine as if count letters had been converted. This takes time proportional
+	 * to the number of rotors, not to count: with odometer stepping every rotor steps as many
+	 * times as the one before it stepped onto a notch, which can be counted from the notch
+	 * positions directly, and double stepping is counted much the same way, see
+	 * {@link #doubleMoves(int, long)}. The one exception is double stepping with a rotor that
+	 * has notches next to each other, which is walked a notch at a time.
+	 */
+	public void skip( long count ) {
+		if( !advanceRotors || count <= 0 ) {
+			return;
+		}
+		if( stepping == Stepping.DOUBLE && !walkDouble ) {
+			// from the last rotor down, since each count reads the positions below it
+			long lastMoves = 0;
+			for( int r = rotorCount - 1; r >= 0; r-- ) {
+				long moves = doubleMoves( r, count );
+				if( r == rotorCount - 1 ) {
+					lastMoves = moves;
+				}
+				positions[r] = (int)( ( positions[r] + moves % SIZE ) % SIZE );
+			}
+			if( advanceReflector ) {
+				reflectorPosition = (int)( ( reflectorPosition + lastMoves % SIZE ) % SIZE );
+			}
+			atNotch = notchMask();
+			state = index();
+			return;
+		}
+		if( stepping != Stepping.ODOMETER ) {
+			walk( count );
+			atNotch = notchMask();
+			state = index();
+			return;
+		}
+
+		long steps = count;
+		long lastSteps = 0;
+		for( int r = 0; r < rotorCount && steps > 0; r++ ) {
+			int position = positions[r];
+			long carries = notchesPassed( notches[r], position, steps );
+
+			positions[r] = (int)( ( position + steps % SIZE ) % SIZE );
+			if( r == rotorCount - 1 ) {
+				lastSteps = steps;
+			}
+			steps = carries;
+		}
+
+		// the reflector follows the last rotor
+		if( advanceReflector ) {
+			reflectorPosition = (int)( ( reflectorPosition + lastSteps % SIZE ) % SIZE );
+		}
+
+		atNotch = notchMask();
+		state = index();
+	}
+
+	/**
+	 * Number of times rotor r moves in the next count letters under double stepping, from the
+	 * current positions.
+	 *
+	 * A rotor with a pawl, every rotor but the last, never stays at a notch: it is there for
+	 * one letter at a time and moves on. So the rotor before r is at a notch once for every
+	 * notch it passes over, counted from its own moves in the first count - 1 letters, and
+	 * each time it pushes r. The last rotor only moves when pushed. Any other rotor also moves
+	 * itself the letter after it is pushed onto a notch, which, as no two of its notches are
+	 * next to each other, takes it off the notch again. Over a whole turn that is SIZE moves
+	 * for every SIZE - notches pushes, and the pushes left over are counted one by one. A push
+	 * onto a notch on the very last letter has not been followed by the extra move yet.
+	 */
+	private long doubleMoves( int r, long count ) {
+		if( count <= 0 ) {
+			return 0;
+		}
+		if( r == 0 ) {
+			return count;
+		}
+
+		int previous = positions[r - 1];
+		long before = doubleMoves( r - 1, count - 1 );
+		long pushes = notchesPassed( notches[r - 1], previous, before + 1 );
+		if( r == rotorCount - 1 ) {
+			return pushes;
+		}
+		boolean lastPush = isCarry( r - 1, (int)( ( previous + before % SIZE ) % SIZE ) );
+
+		int position = positions[r];
+		long moves = 0;
+		if( isCarry( r, position ) ) {
+			// moves off the notch on the first letter, together with any push then
+			position = ( position + 1 ) % SIZE;
+			moves++;
+			if( isCarry( r - 1, previous ) ) {
+				pushes--;
+			}
+		}
+		if( pushes == 0 ) {
+			return moves;
+		}
+
+		int turn = SIZE - Integer.bitCount( carries[r] );
+		long turns = ( pushes - 1 ) / turn;
+		moves += turns * SIZE;
+		for( pushes -= turns * turn; pushes > 0; pushes-- ) {
+			position = ( position + 1 ) % SIZE;
+			moves++;
+			if( isCarry( r, position ) && ( pushes > 1 || !lastPush ) ) {
+				position = ( position + 1 ) % SIZE;
+				moves++;
+			}
+		}
+		return moves;
+	}
+
+	private boolean isCarry( int r, int position ) {
+		return ( ( carries[r] >>> position ) & 1 ) != 0;
+	}
+
+	/**
+	 * Steps count times, a letter at a time except while no rotor is at a notch. Then only the
+	 * first rotor moves, under any policy, so it goes straight to its next notch; the walk
+	 * takes time in proportion to the number of notches passed rather than to count.
+	 */
+	private void walk( long count ) {
+		while( count > 0 ) {
+			if( atNotch != 0 ) {
+				step();
+				count--;
+				continue;
+			}
+
+			// steps until the first rotor is at a notch, or all of them when it has none
+			long twice = ( (long)carries[0] << SIZE ) | carries[0];
+			long window = twice >>> ( positions[0] + 1 );
+			long jump = window != 0 ? Math.min( Long.numberOfTrailingZeros( window ) + 1, count ) : count;
+
+			positions[0] = (int)( ( positions[0] + jump % SIZE ) % SIZE );
+			if( advanceReflector && rotorCount == 1 ) {
+				reflectorPosition = (int)( ( reflectorPosition + jump % SIZE ) % SIZE );
+			}
+			atNotch = notchMask();
+			count -= jump;
+		}
+	}
+
+	/**
+	 * Switches to looking up each letter in the given table instead of sending it through the
+	 * rotors, or back again when null. The table must have been built for this machine's
+	 * wiring, see {@link PermutationTable#covers(CompiledEnigma)}.
+	 */
+	public void setPermutationTable( PermutationTable table ) {
+		this.table = table;
+
+		weights = new int[rotorCount];
+		reflectorWeight = 0;
+		if( table != null ) {
+			int weight = SIZE;
+			for( int r = 0; r < rotorCount; r++ ) {
+				weights[r] = weight;
+				weight *= SIZE;
+			}
+			if( table.reflectorIndexed ) {
+				reflectorWeight = weight;
+			}
+		}
+		state = index();
+	}
+
+	public PermutationTable getPermutationTable() {
+		return table;
+	}
+
+	// offset of the current positions in the permutation table
+	private int index() {
+		int index = reflectorPosition * reflectorWeight;
+		for( int r = 0; r < rotorCount; r++ ) {
+			index += positions[r] * weights[r];
+		}
+		return index;
+	}
+
+	/**
+	 * Moves the rotors, 0 through SIZE-1 from the first rotor on, and the reflector to the
+	 * given positions without allocating
+	 */
+	public void setPositions( int[] positions, int reflectorPosition ) {
+		System.arraycopy( positions, 0, this.positions, 0, rotorCount );
+		this.reflectorPosition = reflectorPosition;
+		atNotch = notchMask();
+		state = index();
+	}
+
+	/**
+	 * True when both machines have the same rotors, reflector and stepping; positions and
+	 * plugboard are not compared
+	 */
+	boolean sameWiring( CompiledEnigma machine ) {
+		if( machine.rotorCount != rotorCount || machine.sourceReflector != sourceReflector
+				|| machine.advanceRotors != advanceRotors || machine.advanceReflector != advanceReflector ) {
+			return false;
+		}
+		for( int r = 0; r < rotorCount; r++ ) {
+			if( machine.rotors[r] != rotors[r] ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	int getRotorCount() {
+		return rotorCount;
+	}
+
+	boolean getAdvanceRotors() {
+		return advanceRotors;
+	}
+
+	boolean getAdvanceReflector() {
+		return advanceReflector;
+	}
+
+	public Stepping getStepping() {
+		return stepping;
+	}
+
+	public int[] getPositions() {
+		return positions.clone();
+	}
+
+	public int getReflectorPosition() {
+		return reflectorPosition;
+	}
+
+	/**
+	 * Returns the permutation the rotors and reflector apply at each of the next length letters,
+	 * SIZE entries per letter, and steps past them. The plugboard is left out: a letter c at
+	 * position t converts to plugboard[table[t * SIZE + plugboard[c]]], so the table stays good
+	 * for any plugboard.
+	 */
+	public byte[] unroll( int length ) {
+		byte[] table = new byte[length * SIZE];
+		for( int t = 0, offset = 0; t < length; t++, offset += SIZE ) {
+			for( int value = 0; value < SIZE; value++ ) {
+				table[offset + value] = (byte)substitute( value );
+			}
+			step();
+		}
+		return table;
+	}
+
+	/**
+	 * Sends a value, 0 through SIZE-1, through the machine and steps it
+	 */
+	private int translate( int value ) {
+		if( table != null ) {
+			value = table.table[state + plugboard[value]];
+		}
+		else {
+			value = substitute( plugboard[value] );
+		}
+
+		step();
+
+		return plugboard[value];
+	}
+
+	/**
+	 * Sends a value through the rotors and reflector at their current positions, without the
+	 * plugboard or any stepping
+	 */
+	int substitute( int value ) {
+		// send character down the rotors
+		for( int r = 0, base = 0; r < rotorCount; r++, base += 2 * SIZE ) {
+			int position = positions[r];
+			value = MOD[forward[base + position + value] - position + SIZE];
+		}
+
+		// hit the reflector
+		value = MOD[reflector[reflectorPosition + value] - reflectorPosition + SIZE];
+
+		// send the character back down the rotors
+		for( int r = rotorCount - 1, base = r * 2 * SIZE; r >= 0; r--, base -= 2 * SIZE ) {
+			int position = positions[r];
+			value = MOD[backward[base + position + value] - position + SIZE];
+		}
+
+		return value;
+	}
+
+	private void step() {
+		if( advanceRotors ) {
+			int moves = stepping.moves( atNotch, rotorCount );
+
+			// usually only the first rotor, so go by the set bits
+			for( int remaining = moves; remaining != 0; remaining &= remaining - 1 ) {
+				int r = Integer.numberOfTrailingZeros( remaining );
+				int position = positions[r] + 1;
+				if( position == SIZE ) {
+					position = 0;
+					state -= ( SIZE - 1 ) * weights[r];
+				}
+				else {
+					state += weights[r];
+				}
+				positions[r] = position;
+				atNotch = ( atNotch & ~( 1 << r ) ) | ( ( ( carries[r] >>> position ) & 1 ) << r );
+			}
+
+			// the reflector follows the last rotor
+			if( advanceReflector && ( ( moves >>> ( rotorCount - 1 ) ) & 1 ) != 0 ) {
+				if( reflectorPosition + 1 == SIZE ) {
+					reflectorPosition = 0;
+					state -= ( SIZE - 1 ) * reflectorWeight;
+				}
+				else {
+					reflectorPosition++;
+					state += reflectorWeight;
+				}
+			}
+		}
+	}
+
+	// number of notches landed on while stepping the given number of times from position
+	private static long notchesPassed( int notches, int position, long steps ) {
+		long passed = ( steps / SIZE ) * Integer.bitCount( notches );
+		int remainder = (int)( steps % SIZE );
+
+		// the notches twice over, so the window after position never wraps
+		long twice = ( (long)notches << SIZE ) | notches;
+		long window = ( twice >>> ( position + 1 ) ) & ( ( 1L << remainder ) - 1 );
+
+		return passed + Long.bitCount( window );
+	}
+
+	private int notchMask() {
+		int mask = 0;
+		for( int r = 0; r < rotorCount; r++ ) {
+			mask |= ( ( carries[r] >>> positions[r] ) & 1 ) << r;
+		}
+		return mask;
+	}
+
+	private static int normalize( int position ) {
+		position %= SIZE;
+		return position < 0 ? position + SIZE : position;
+	}
+}
@@ -0,0 +1,269 @@
+package dperry.enigma.engine;
+
+import java.util.Arrays;
+
+/**
+ * Many machines with the same wiring but their own positions, run side by side. Each machine
+ * is a lane; the positions are kept as one array per rotor across all lanes, so converting a
+ * letter in every lane is a handful of tight loops over flat arrays, one per rotor, instead of
+ * a walk down each machine in turn. Every lane produces exactly what a {@link CompiledEnigma}
+ * started at the same positions would.
+ *
+ * The wiring tables, plugboard and stepping are shared with the compiled machine the lanes
+ * are made from and every lane starts at its positions.
+ */
+public class LaneEnigma {
+
+	static final int SIZE = CompiledEnigma.SIZE;
+	private static final byte[] MOD = CompiledEnigma.MOD;
+
+	private final int lanes;
+	private final int rotorCount;
+
+	private final byte[] forward;
+	private final byte[] backward;
+	private final byte[] reflector;
+	private final byte[] plugboard;
+	private final int[] carries;
+
+	private final boolean advanceRotors;
+	private final boolean advanceReflector;
+	private final Stepping stepping;
+	// counts a lane's positions forward for skip
+	private final CompiledEnigma counter;
+
+	// positions[r][lane], each rotor's positions together
+	private int[][] positions;
+	private int[] reflectorPositions;
+	// bit r set when the lane's rotor r is at a notch
+	private int[] atNotch;
+
+	public LaneEnigma( CompiledEnigma machine, int lanes ) {
+		if( lanes < 1 ) {
+			throw new IllegalArgumentException( "At least one lane is needed" );
+		}
+		this.lanes = lanes;
+		rotorCount = machine.rotorCount;
+
+		forward = machine.forward;
+		backward = machine.backward;
+		reflector = machine.reflector;
+		plugboard = machine.plugboard;
+		carries = machine.carries;
+
+		advanceRotors = machine.getAdvanceRotors();
+		advanceReflector = machine.getAdvanceReflector();
+		stepping = machine.getStepping();
+		counter = new CompiledEnigma( machine );
+
+		positions = new int[rotorCount][lanes];
+		reflectorPositions = new int[lanes];
+		atNotch = new int[lanes];
+
+		int[] start = machine.getPositions();
+		for( int lane = 0; lane < lanes; lane++ ) {
+			setPositions( lane, start, machine.getReflectorPosition() );
+		}
+	}
+
+	public int getLanes() {
+		return lanes;
+	}
+
+	/**
+	 * Moves one lane's rotors, 0 through SIZE-1 from the first rotor on, and reflector to the
+	 * given positions
+	 */
+	public void setPositions( int lane, int[] positions, int reflectorPosition ) {
+		int mask = 0;
+		for( int r = 0; r < rotorCount; r++ ) {
+			this.positions[r][lane] = positions[r];
+			mask |= ( ( carries[r] >>> positions[r] ) & 1 ) << r;
+		}
+		reflectorPositions[lane] = reflectorPosition;
+		atNotch[lane] = mask;
+	}
+
+	public int[] getPositions( int lane ) {
+		int[] result = new int[rotorCount];
+		for( int r = 0; r < rotorCount; r++ ) {
+			result[r] = positions[r][lane];
+		}
+		return result;
+	}
+
+	public int getReflectorPosition( int lane ) {
+		return reflectorPositions[lane];
+	}
+
+	/**
+	 * Converts each lane's message in place, messages[lane] through lane; messages may have
+	 * different lengths and each lane steps once per letter of its own. Letters must be 'A'
+	 * through 'Z'.
+	 */
+	public void convert( char[][] messages ) {
+		if( messages.length != lanes ) {
+			throw new IllegalArgumentException( "Expected " + lanes + " messages, got " + messages.length );
+		}
+
+		// longest first, so the lanes still running are always the first ones; the length
+		// and lane are packed into one long so the sort is on primitives
+		long[] keys = new long[lanes];
+		for( int lane = 0; lane < lanes; lane++ ) {
+			keys[lane] = (long)messages[lane].length << 32 | lane;
+		}
+		Arrays.sort( keys );
+		int[] order = new int[lanes];
+		for( int i = 0; i < lanes; i++ ) {
+			order[i] = (int)keys[lanes - 1 - i];
+		}
+
+		permute( order, false );
+		try {
+			int[] values = new int[lanes];
+			int active = lanes;
+			for( int t = 0; active > 0; t++ ) {
+				while( active > 0 && messages[order[active - 1]].length <= t ) {
+					active--;
+				}
+				for( int i = 0; i < active; i++ ) {
+					values[i] = messages[order[i]][t] - 'A';
+				}
+				convert( values, active );
+				for( int i = 0; i < active; i++ ) {
+					messages[order[i]][t] = (char)( values[i] + 'A' );
+				}
+			}
+		}
+		finally {
+			permute( order, true );
+		}
+	}
+
+	/**
+	 * Converts one value, 0 through SIZE-1, in each of the first count lanes in place,
+	 * values[lane] through lane, and steps those lanes. The other lanes do not move.
+	 */
+	public void convert( int[] values, int count ) {
+		for( int i = 0; i < count; i++ ) {
+			values[i] = plugboard[values[i]];
+		}
+
+		// send the letters down the rotors
+		for( int r = 0, base = 0; r < rotorCount; r++, base += 2 * SIZE ) {
+			int[] row = positions[r];
+			for( int i = 0; i < count; i++ ) {
+				int position = row[i];
+				values[i] = MOD[forward[base + position + values[i]] - position + SIZE];
+			}
+		}
+
+		// hit the reflector
+		for( int i = 0; i < count; i++ ) {
+			int position = reflectorPositions[i];
+			values[i] = MOD[reflector[position + values[i]] - position + SIZE];
+		}
+
+		// send the letters back down the rotors
+		for( int r = rotorCount - 1, base = r * 2 * SIZE; r >= 0; r--, base -= 2 * SIZE ) {
+			int[] row = positions[r];
+			for( int i = 0; i < count; i++ ) {
+				int position = row[i];
+				values[i] = MOD[backward[base + position + values[i]] - position + SIZE];
+			}
+		}
+
+		for( int i = 0; i < count; i++ ) {
+			values[i] = plugboard[values[i]];
+		}
+
+		step( count );
+	}
+
+	/**
+	 * Steps every lane as if count letters had been converted. Each lane is counted forward
+	 * by a compiled machine, see {@link CompiledEnigma#skip(long)}, so this takes time in
+	 * proportion to the lanes and rotors rather than to count.
+	 */
+	public void skip( long count ) {
+		if( !advanceRotors || count <= 0 ) {
+			return;
+		}
+		int[] start = new int[rotorCount];
+		for( int lane = 0; lane < lanes; lane++ ) {
+			for( int r = 0; r < rotorCount; r++ ) {
+				start[r] = positions[r][lane];
+			}
+			counter.setPositions( start, reflectorPositions[lane] );
+			counter.skip( count );
+			setPositions( lane, counter.getPositions(), counter.getReflectorPosition() );
+		}
+	}
+
+	/**
+	 * Exchanges the positions of two lanes, so the lanes still wanted can be kept first
+	 */
+	public void swapLanes( int a, int b ) {
+		for( int r = 0; r < rotorCount; r++ ) {
+			int[] row = positions[r];
+			int position = row[a];
+			row[a] = row[b];
+			row[b] = position;
+		}
+		int position = reflectorPositions[a];
+		reflectorPositions[a] = reflectorPositions[b];
+		reflectorPositions[b] = position;
+
+		int mask = atNotch[a];
+		atNotch[a] = atNotch[b];
+		atNotch[b] = mask;
+	}
+
+	private void step( int count ) {
+		if( !advanceRotors ) {
+			return;
+		}
+		int last = rotorCount - 1;
+		for( int i = 0; i < count; i++ ) {
+			int moves = stepping.moves( atNotch[i], rotorCount );
+			int mask = atNotch[i];
+
+			for( int remaining = moves; remaining != 0; remaining &= remaining - 1 ) {
+				int r = Integer.numberOfTrailingZeros( remaining );
+				int position = positions[r][i] + 1;
+				if( position == SIZE ) {
+					position = 0;
+				}
+				positions[r][i] = position;
+				mask = ( mask & ~( 1 << r ) ) | ( ( ( carries[r] >>> position ) & 1 ) << r );
+			}
+			atNotch[i] = mask;
+
+			// the reflector follows the last rotor
+			if( advanceReflector && ( ( moves >>> last ) & 1 ) != 0 ) {
+				reflectorPositions[i] = reflectorPositions[i] + 1 == SIZE ? 0 : reflectorPositions[i] + 1;
+			}
+		}
+	}
+
+	// moves lane order[i] to i, or back again
+	private void permute( int[] order, boolean back ) {
+		int[][] newPositions = new int[rotorCount][lanes];
+		int[] newReflectorPositions = new int[lanes];
+		int[] newAtNotch = new int[lanes];
+
+		for( int i = 0; i < lanes; i++ ) {
+			int from = back ? i : order[i];
+			int to = back ? order[i] : i;
+			for( int r = 0; r < rotorCount; r++ ) {
+				newPositions[r][to] = positions[r][from];
+			}
+			newReflectorPositions[to] = reflectorPositions[from];
+			newAtNotch[to] = atNotch[from];
+		}
+
+		positions = newPositions;
+		reflectorPositions = newReflectorPositions;
+		atNotch = newAtNotch;
+	}
+}
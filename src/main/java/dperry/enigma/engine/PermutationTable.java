@@ -0,0 +1,101 @@
+package dperry.enigma.engine;
+
+/**
+ * The complete permutation of a machine's rotors and reflector for every combination of
+ * positions. With the table a letter costs one array lookup instead of a trip through every
+ * rotor and back.
+ *
+ * The table holds SIZE entries per state, where a state is one position for every rotor,
+ * and also for the reflector when it advances. When it does not, the table is only good for
+ * the reflector position it was built at. The plugboard is left out so it can change without
+ * rebuilding. Tables are immutable and can be shared between machines and threads.
+ */
+public class PermutationTable {
+
+	static final int SIZE = CompiledEnigma.SIZE;
+
+	final byte[] table;
+	final boolean reflectorIndexed;
+
+	// the machine the table was built from, positions aside
+	private final CompiledEnigma prototype;
+	private final int reflectorPosition;
+
+	/**
+	 * Builds the table for the machine's wiring. Check {@link #size(CompiledEnigma)} first,
+	 * the table can be large.
+	 */
+	public PermutationTable( CompiledEnigma machine ) {
+		long size = size( machine );
+		if( size > Integer.MAX_VALUE ) {
+			throw new IllegalArgumentException( "Permutation table would be too large: " + size + " bytes" );
+		}
+
+		prototype = new CompiledEnigma( machine );
+		prototype.setPermutationTable( null );
+		reflectorIndexed = machine.getAdvanceReflector();
+		reflectorPosition = machine.getReflectorPosition();
+
+		table = new byte[(int)size];
+
+		int rotorCount = machine.getRotorCount();
+		int[] positions = new int[rotorCount];
+		int reflectorPositions = reflectorIndexed ? SIZE : 1;
+
+		// states are laid out with the first rotor changing fastest, then the reflector last
+		int offset = 0;
+		for( int reflector = 0; reflector < reflectorPositions; reflector++ ) {
+			do {
+				prototype.setPositions( positions, reflectorIndexed ? reflector : reflectorPosition );
+				for( int value = 0; value < SIZE; value++ ) {
+					table[offset + value] = (byte)prototype.substitute( value );
+				}
+				offset += SIZE;
+			}
+			while( next( positions ) );
+		}
+	}
+
+	/**
+	 * Returns the number of bytes a table for the machine would take, or Long.MAX_VALUE when
+	 * the machine cannot use one because its rotors do not advance
+	 */
+	public static long size( CompiledEnigma machine ) {
+		if( !machine.getAdvanceRotors() ) {
+			return Long.MAX_VALUE;
+		}
+
+		long size = SIZE;
+		int dimensions = machine.getRotorCount() + ( machine.getAdvanceReflector() ? 1 : 0 );
+		for( int i = 0; i < dimensions; i++ ) {
+			if( size > Long.MAX_VALUE / SIZE ) {
+				return Long.MAX_VALUE;
+			}
+			size *= SIZE;
+		}
+		return size;
+	}
+
+	/**
+	 * True if this table can be used by the machine at its current reflector position
+	 */
+	public boolean covers( CompiledEnigma machine ) {
+		return prototype.sameWiring( machine )
+				&& ( reflectorIndexed || machine.getReflectorPosition() == reflectorPosition );
+	}
+
+	public int getSize() {
+		return table.length;
+	}
+
+	// odometer over every combination of positions, false once it wraps back to the start
+	private static boolean next( int[] positions ) {
+		for( int r = 0; r < positions.length; r++ ) {
+			if( ++positions[r] < SIZE ) {
+				return true;
+			}
+			positions[r] = 0;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,51 @@
+package dperry.enigma.engine;
+
+/**
+ * How the rotors move after each letter.
+ *
+ * A policy only sees which rotors are at a notch, as a bitmask with bit r set when stepping
+ * rotor r from where it is now lands on one of its turnover positions, and answers with the
+ * mask of rotors that move, so it works the same for every engine and never allocates. Masks
+ * are ints, so machines are limited to 32 rotors.
+ * Rotor 0 is the first rotor a letter passes through and moves on every letter. Whether the
+ * reflector advances is set separately; when it does, it moves whenever the last rotor does.
+ */
+public enum Stepping {
+
+	/**
+	 * Each rotor moves when the one before it moves onto a notch, like an odometer
+	 */
+	ODOMETER {
+		@Override
+		public int moves( int atNotch, int rotorCount ) {
+			// the first rotor and every rotor after a run of carrying rotors
+			int carrying = Integer.numberOfTrailingZeros( ~atNotch );
+			return carrying + 1 >= rotorCount ? all( rotorCount ) : ( 1 << ( carrying + 1 ) ) - 1;
+		}
+	},
+
+	/**
+	 * The historical ratchet and pawl mechanism. A rotor at a notch moves the next rotor on
+	 * the following letter whether or not it moves itself, and a rotor pushed by the pawl of
+	 * the rotor before it moves along with the next one, so a middle rotor at its notch steps
+	 * twice in a row. The last rotor has no pawl beyond it and only moves when pushed.
+	 */
+	DOUBLE {
+		@Override
+		public int moves( int atNotch, int rotorCount ) {
+			int pawls = atNotch & ( all( rotorCount ) >>> 1 );
+			return 1 | ( pawls << 1 ) | ( pawls & ~1 );
+		}
+	};
+
+	/**
+	 * Returns the mask of rotors that move on the next letter
+	 *
+	 * @param atNotch bit r set when rotor r is one step before a turnover position
+	 */
+	public abstract int moves( int atNotch, int rotorCount );
+
+	private static int all( int rotorCount ) {
+		return rotorCount >= Integer.SIZE ? -1 : ( 1 << rotorCount ) - 1;
+	}
+}
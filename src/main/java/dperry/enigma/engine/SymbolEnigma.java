@@ -0,0 +1,228 @@
+package dperry.enigma.engine;
+
+import java.nio.ByteBuffer;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.parts.Plugboard;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * A frozen copy of a machine of any alphabet up to 256 symbols, flattened into primitive
+ * tables, which converts bytes directly: byte b is symbol b & 0xFF. With 256 symbols any data
+ * goes through as it is. Stepping is the same as {@link CompiledEnigma}'s, turnovers and all.
+ *
+ * The machine keeps its own positions; {@link #writePositions()} copies them back onto the
+ * rotors and reflector it was compiled from.
+ */
+public class SymbolEnigma {
+
+	public static final int MAX_SIZE = 256;
+
+	private final Rotor[] rotors;
+	private final Reflector sourceReflector;
+
+	private final int size;
+	private final int rotorCount;
+
+	// like CompiledEnigma, each rotor's wiring twice over so position + value needs no reducing
+	private final int[] forward;
+	private final int[] backward;
+	private final int[] reflector;
+	private final int[] plugboard;
+	// reduces any value in [0, 3*size) modulo size
+	private final int[] mod;
+
+	// carries[r * size + p] is 1 when rotor r stepping from position p carries
+	private final byte[] carries;
+
+	private final int[] positions;
+	private int reflectorPosition;
+
+	private final boolean advanceRotors;
+	private final boolean advanceReflector;
+	private final Stepping stepping;
+
+	// bit r set when rotor r is at a notch
+	private int atNotch;
+
+	public SymbolEnigma( Enigma enigma ) {
+		this( enigma.getCurrentRotors().toArray( new Rotor[0] ), enigma.getCurrentReflector(), enigma.getPlugboard(),
+				enigma.getAdvanceRotors(), enigma.getAdvanceReflector(), enigma.getStepping() );
+	}
+
+	/**
+	 * Compiles the given parts, which must all have the same alphabet of at most
+	 * {@link #MAX_SIZE} symbols
+	 */
+	public SymbolEnigma( Rotor[] rotors, Reflector sourceReflector, Plugboard sourcePlugboard, boolean advanceRotors, boolean advanceReflector,
+			Stepping stepping ) {
+		size = sourceReflector.getSize();
+		if( size > MAX_SIZE || sourcePlugboard.getSize() != size ) {
+			throw new IllegalArgumentException( "Alphabet of " + size + " symbols cannot be compiled" );
+		}
+		for( Rotor rotor : rotors ) {
+			if( rotor.getSize() != size ) {
+				throw new IllegalArgumentException( "Rotor " + rotor.getName() + " has " + rotor.getSize() + " symbols, not " + size );
+			}
+		}
+
+		rotorCount = rotors.length;
+		this.rotors = rotors.clone();
+		this.sourceReflector = sourceReflector;
+
+		forward = new int[rotorCount * 2 * size];
+		backward = new int[rotorCount * 2 * size];
+		carries = new byte[rotorCount * size];
+		positions = new int[rotorCount];
+
+		for( int r = 0; r < rotorCount; r++ ) {
+			int[] wiring = this.rotors[r].getConnections();
+			int base = r * 2 * size;
+			for( int i = 0; i < size; i++ ) {
+				forward[base + i] = forward[base + i + size] = wiring[i];
+				backward[base + wiring[i]] = backward[base + wiring[i] + size] = i;
+				carries[r * size + i] = (byte)( this.rotors[r].isTurnover( ( i + 1 ) % size ) ? 1 : 0 );
+			}
+		}
+
+		reflector = new int[2 * size];
+		int[] pairs = sourceReflector.getPairs();
+		for( int i = 0; i < size; i++ ) {
+			reflector[i] = reflector[i + size] = pairs[i];
+		}
+
+		plugboard = new int[size];
+		for( int i = 0; i < size; i++ ) {
+			plugboard[i] = sourcePlugboard.getEndpoint( (char)( 'A' + i ) ) - 'A';
+		}
+
+		mod = new int[3 * size];
+		for( int i = 0; i < mod.length; i++ ) {
+			mod[i] = i % size;
+		}
+
+		this.advanceRotors = advanceRotors;
+		this.advanceReflector = advanceReflector;
+		this.stepping = stepping;
+
+		readPositions();
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Reloads the positions from the rotors and reflector this machine was compiled from
+	 */
+	public void readPositions() {
+		for( int r = 0; r < rotorCount; r++ ) {
+			positions[r] = normalize( rotors[r].getPosition() );
+		}
+		reflectorPosition = normalize( sourceReflector.getPosition() );
+
+		atNotch = 0;
+		for( int r = 0; r < rotorCount; r++ ) {
+			atNotch |= carries[r * size + positions[r]] << r;
+		}
+	}
+
+	/**
+	 * Copies the current positions onto the rotors and reflector this machine was compiled from
+	 */
+	public void writePositions() {
+		for( int r = 0; r < rotorCount; r++ ) {
+			rotors[r].reset( positions[r] );
+		}
+		sourceReflector.reset( reflectorPosition );
+	}
+
+	/**
+	 * Converts length symbols of data in place starting at offset. Every byte must be below the
+	 * alphabet size.
+	 */
+	public void convert( byte[] data, int offset, int length ) {
+		for( int i = offset; i < offset + length; i++ ) {
+			data[i] = (byte)translate( data[i] & 0xFF );
+		}
+	}
+
+	/**
+	 * Converts the remaining bytes of source into destination, advancing the position of both.
+	 * They may be the same buffer to convert in place.
+	 */
+	public void convert( ByteBuffer source, ByteBuffer destination ) {
+		int length = source.remaining();
+		int in = source.position();
+		int out = destination.position();
+
+		if( source.hasArray() && destination.hasArray() ) {
+			byte[] src = source.array();
+			byte[] dst = destination.array();
+			int from = in + source.arrayOffset();
+			int to = out + destination.arrayOffset();
+			for( int i = 0; i < length; i++ ) {
+				dst[to + i] = (byte)translate( src[from + i] & 0xFF );
+			}
+		}
+		else {
+			for( int i = 0; i < length; i++ ) {
+				destination.put( out + i, (byte)translate( source.get( in + i ) & 0xFF ) );
+			}
+		}
+
+		source.position( in + length );
+		destination.position( out + length );
+	}
+
+	private int translate( int value ) {
+		value = plugboard[value];
+
+		// send the symbol down the rotors
+		for( int r = 0, base = 0; r < rotorCount; r++, base += 2 * size ) {
+			int position = positions[r];
+			value = mod[forward[base + position + value] - position + size];
+		}
+
+		// hit the reflector
+		value = mod[reflector[reflectorPosition + value] - reflectorPosition + size];
+
+		// send the symbol back down the rotors
+		for( int r = rotorCount - 1, base = r * 2 * size; r >= 0; r--, base -= 2 * size ) {
+			int position = positions[r];
+			value = mod[backward[base + position + value] - position + size];
+		}
+
+		step();
+
+		return plugboard[value];
+	}
+
+	private void step() {
+		if( !advanceRotors ) {
+			return;
+		}
+		int moves = stepping.moves( atNotch, rotorCount );
+
+		for( int remaining = moves; remaining != 0; remaining &= remaining - 1 ) {
+			int r = Integer.numberOfTrailingZeros( remaining );
+			int position = positions[r] + 1;
+			if( position == size ) {
+				position = 0;
+			}
+			positions[r] = position;
+			atNotch = ( atNotch & ~( 1 << r ) ) | ( carries[r * size + position] << r );
+		}
+
+		// the reflector follows the last rotor
+		if( advanceReflector && ( ( moves >>> ( rotorCount - 1 ) ) & 1 ) != 0 ) {
+			reflectorPosition = reflectorPosition + 1 == size ? 0 : reflectorPosition + 1;
+		}
+	}
+
+	private int normalize( int position ) {
+		position %= size;
+		return position < 0 ? position + size : position;
+	}
+}
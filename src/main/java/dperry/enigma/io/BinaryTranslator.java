@@ -0,0 +1,59 @@
+package dperry.enigma.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import dperry.enigma.engine.SymbolEnigma;
+
+/**
+ * Streams bytes from one channel to another through a {@link SymbolEnigma}, each byte one
+ * symbol, using a single fixed size buffer converted in place. Nothing is filtered or
+ * formatted, so with a 256 symbol alphabet any data goes through and comes back unchanged by
+ * the reverse translation. With a smaller alphabet every byte must be below its size.
+ */
+public class BinaryTranslator {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final SymbolEnigma machine;
+	private final ByteBuffer buffer;
+
+	public BinaryTranslator( SymbolEnigma machine ) {
+		this.machine = machine;
+
+		buffer = ByteBuffer.allocate( BUFFER_SIZE );
+	}
+
+	/**
+	 * Translates everything readable from in and writes it to out. Neither channel is closed.
+	 *
+	 * @return the number of bytes translated
+	 */
+	public long translate( ReadableByteChannel in, WritableByteChannel out ) throws IOException {
+		long count = 0;
+		int size = machine.getSize();
+
+		while( in.read( buffer ) >= 0 ) {
+			buffer.flip();
+			if( size < SymbolEnigma.MAX_SIZE ) {
+				for( int i = 0; i < buffer.limit(); i++ ) {
+					if( ( buffer.get( i ) & 0xFF ) >= size ) {
+						throw new IOException( "Byte " + ( buffer.get( i ) & 0xFF ) + " at " + ( count + i ) + " is outside the alphabet" );
+					}
+				}
+			}
+			count += buffer.remaining();
+
+			machine.convert( buffer, buffer );
+			buffer.flip();
+			while( buffer.hasRemaining() ) {
+				out.write( buffer );
+			}
+			buffer.clear();
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,155 @@
+package dperry.enigma.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes what is read from a channel as text chunks, each byte one character. A chunk is
+ * only read once one has been requested, on the executor, and nothing is read ahead, so a
+ * slow subscriber holds back the reading instead of filling memory, and no thread is used
+ * while there is no demand.
+ *
+ * The channel is closed when it has been read to the end, on an error and on cancel. Only one
+ * subscriber is supported.
+ */
+public class ChannelPublisher implements Flow.Publisher<CharSequence> {
+
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	private static final Charset LATIN1 = Charset.forName( "ISO-8859-1" );
+
+	private final ReadableByteChannel channel;
+	private final Executor executor;
+	private final int chunkSize;
+
+	private final AtomicBoolean subscribed = new AtomicBoolean();
+
+	public ChannelPublisher( ReadableByteChannel channel, Executor executor ) {
+		this( channel, executor, DEFAULT_CHUNK_SIZE );
+	}
+
+	public ChannelPublisher( ReadableByteChannel channel, Executor executor, int chunkSize ) {
+		this.channel = channel;
+		this.executor = executor;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public void subscribe( final Flow.Subscriber<? super CharSequence> subscriber ) {
+		if( !subscribed.compareAndSet( false, true ) ) {
+			subscriber.onSubscribe( new Flow.Subscription() {
+				public void request( long n ) {
+				}
+
+				public void cancel() {
+				}
+			} );
+			subscriber.onError( new IllegalStateException( "Only one subscriber is supported" ) );
+			return;
+		}
+		subscriber.onSubscribe( new Reader( subscriber ) );
+	}
+
+	private class Reader implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super CharSequence> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final ByteBuffer buffer = ByteBuffer.allocate( chunkSize );
+		private volatile boolean done;
+
+		Reader( Flow.Subscriber<? super CharSequence> subscriber ) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request( long n ) {
+			if( done ) {
+				return;
+			}
+			if( n <= 0 ) {
+				finish( new IllegalArgumentException( "Demand must be positive: " + n ) );
+				return;
+			}
+
+			long previous;
+			long next;
+			do {
+				previous = demand.get();
+				next = previous + n < 0 ? Long.MAX_VALUE : previous + n;
+			}
+			while( !demand.compareAndSet( previous, next ) );
+
+			// the reader is already running when there was demand before
+			if( previous == 0 ) {
+				executor.execute( this );
+			}
+		}
+
+		@Override
+		public void cancel() {
+			done = true;
+			close();
+		}
+
+		@Override
+		public void run() {
+			long wanted = demand.get();
+			while( true ) {
+				long sent = 0;
+				while( sent < wanted ) {
+					if( done ) {
+						return;
+					}
+					try {
+						buffer.clear();
+						if( channel.read( buffer ) < 0 ) {
+							finish( null );
+							return;
+						}
+					}
+					catch( IOException e ) {
+						finish( e );
+						return;
+					}
+					buffer.flip();
+					subscriber.onNext( new String( buffer.array(), 0, buffer.limit(), LATIN1 ) );
+					sent++;
+				}
+
+				wanted = demand.addAndGet( -sent );
+				if( wanted == 0 ) {
+					return;
+				}
+			}
+		}
+
+		private void finish( Throwable error ) {
+			if( done ) {
+				return;
+			}
+			done = true;
+			close();
+			if( error != null ) {
+				subscriber.onError( error );
+			}
+			else {
+				subscriber.onComplete();
+			}
+		}
+
+		private void close() {
+			try {
+				channel.close();
+			}
+			catch( IOException e ) {
+				// nothing more will be read either way
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package dperry.enigma.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Writes chunks of letters to a channel, formatted the same way as {@link StreamTranslator}:
+ * when grouping, in blocks of {@link StreamTranslator#GROUP_SIZE} letters,
+ * {@link StreamTranslator#GROUPS_PER_LINE} blocks to a line, with a final newline if anything
+ * was written. One chunk is requested at a time, so the writer sets the pace.
+ *
+ * The channel is not closed. {@link #getResult()} completes with the number of letters once
+ * the stream ends, or with the error that ended it.
+ */
+public class ChannelSubscriber implements Flow.Subscriber<CharSequence> {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final WritableByteChannel channel;
+	private final boolean group;
+	private final ByteBuffer output = ByteBuffer.allocate( BUFFER_SIZE );
+	private final CompletableFuture<Long> result = new CompletableFuture<Long>();
+
+	private Flow.Subscription subscription;
+	private long count;
+
+	public ChannelSubscriber( WritableByteChannel channel, boolean group ) {
+		this.channel = channel;
+		this.group = group;
+	}
+
+	public CompletableFuture<Long> getResult() {
+		return result;
+	}
+
+	@Override
+	public void onSubscribe( Flow.Subscription subscription ) {
+		if( this.subscription != null ) {
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		subscription.request( 1 );
+	}
+
+	@Override
+	public void onNext( CharSequence letters ) {
+		try {
+			int length = letters.length();
+			for( int i = 0; i < length; i++ ) {
+				// room for a separator and a letter
+				if( output.remaining() < 2 ) {
+					drain();
+				}
+				byte separator = StreamTranslator.separator( count, group );
+				if( separator != 0 ) {
+					output.put( separator );
+				}
+				output.put( (byte)letters.charAt( i ) );
+				count++;
+			}
+			drain();
+		}
+		catch( IOException e ) {
+			subscription.cancel();
+			result.completeExceptionally( e );
+			return;
+		}
+		subscription.request( 1 );
+	}
+
+	@Override
+	public void onError( Throwable throwable ) {
+		result.completeExceptionally( throwable );
+	}
+
+	@Override
+	public void onComplete() {
+		try {
+			if( count > 0 ) {
+				output.put( (byte)'\n' );
+			}
+			drain();
+			result.complete( count );
+		}
+		catch( IOException e ) {
+			result.completeExceptionally( e );
+		}
+	}
+
+	private void drain() throws IOException {
+		output.flip();
+		while( output.hasRemaining() ) {
+			channel.write( output );
+		}
+		output.clear();
+	}
+}
@@ -0,0 +1,387 @@
+package dperry.enigma.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import dperry.enigma.Fnv;
+import dperry.enigma.engine.SymbolEnigma;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * A binary copy of a text configuration's rotors and reflectors, kept next to it, which loads
+ * without parsing. The file is memory mapped and each entry is only decoded the first time it
+ * is asked for. Opening a snapshot still hashes the text and checks that every entry lies
+ * within the file, so it grows with both, but far more slowly than parsing.
+ *
+ * The snapshot records the length and a hash of the text it was made from and is ignored once
+ * they no longer match the text read now. The hash is checked rather than the modification
+ * time, which can miss an edit that keeps the length and lands within the file system's
+ * timestamp granularity; hashing costs far less than parsing. Only entries that passed validation are written, so
+ * they are not checked again on the way back in.
+ *
+ * Layout, big endian: a header of magic, version, the snapshot's own length, the source's
+ * length and FNV-1a hash, the alphabet size and the number of rotors and reflectors;
+ * then the offset of every entry, rotors first; then the entries. A rotor is its name, a byte
+ * for each of its connections and its turnover positions; a reflector is its name and its
+ * connections. Names are a short length followed by UTF-8 bytes, with a length of 0xFFFF
+ * standing for no name.
+ */
+public class ConfigSnapshot {
+
+	public static final String EXTENSION = ".snap";
+
+	static final int MAGIC = 0x454E4753;
+	static final int VERSION = 3;
+
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 4 + 4;
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+	private static final int NO_NAME = 0xFFFF;
+
+	private final ByteBuffer buffer;
+	private final int alphabetSize;
+	private final int rotorCount;
+	private final int reflectorCount;
+
+	private final AtomicReferenceArray<Rotor> rotors;
+	private final AtomicReferenceArray<Reflector> reflectors;
+
+	private ConfigSnapshot( ByteBuffer buffer, int alphabetSize, int rotorCount, int reflectorCount ) {
+		this.buffer = buffer;
+		this.alphabetSize = alphabetSize;
+		this.rotorCount = rotorCount;
+		this.reflectorCount = reflectorCount;
+
+		rotors = new AtomicReferenceArray<Rotor>( rotorCount );
+		reflectors = new AtomicReferenceArray<Reflector>( reflectorCount );
+	}
+
+	/**
+	 * Returns where the snapshot for the given text configuration is kept
+	 */
+	public static Path pathFor( Path config ) {
+		return config.resolveSibling( config.getFileName() + EXTENSION );
+	}
+
+	/**
+	 * Maps the snapshot of the given text configuration
+	 *
+	 * @param text the whole text configuration as it reads now
+	 * @return the snapshot, or null if there is none or it is out of date or not one this
+	 * version can read
+	 */
+	public static ConfigSnapshot open( Path config, byte[] text ) throws IOException {
+		Path path = pathFor( config );
+		if( !Files.isRegularFile( path ) ) {
+			return null;
+		}
+
+		ByteBuffer buffer;
+		FileChannel channel = FileChannel.open( path, StandardOpenOption.READ );
+		try {
+			long size = channel.size();
+			if( size < HEADER_SIZE || size > Integer.MAX_VALUE ) {
+				return null;
+			}
+			buffer = channel.map( MapMode.READ_ONLY, 0, size );
+		}
+		finally {
+			channel.close();
+		}
+
+		if( buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION || buffer.getLong( 8 ) != buffer.limit()
+				|| buffer.getLong( 16 ) != text.length || buffer.getLong( 24 ) != hash( text ) ) {
+			return null;
+		}
+
+		int alphabetSize = buffer.getInt( 32 );
+		int rotorCount = buffer.getInt( 36 );
+		int reflectorCount = buffer.getInt( 40 );
+		long entries = (long)rotorCount + reflectorCount;
+		if( alphabetSize < 2 || alphabetSize > SymbolEnigma.MAX_SIZE || rotorCount < 0 || reflectorCount < 0 || HEADER_SIZE + 4 * entries > buffer.limit() ) {
+			return null;
+		}
+		// a cut short or damaged entry is caught here rather than when it is decoded
+		for( int i = 0; i < entries; i++ ) {
+			int offset = buffer.getInt( HEADER_SIZE + 4 * i );
+			if( offset < HEADER_SIZE || entryEnd( buffer, offset, alphabetSize, i < rotorCount ) > buffer.limit() ) {
+				return null;
+			}
+		}
+
+		return new ConfigSnapshot( buffer, alphabetSize, rotorCount, reflectorCount );
+	}
+
+	/**
+	 * Writes the snapshot of a text configuration, replacing any older one in one step so a
+	 * reader never sees it half written
+	 *
+	 * @param text the whole text configuration the rotors and reflectors were parsed from
+	 * @param alphabetSize number of symbols every rotor and reflector is wired for
+	 */
+	public static void write( Path config, byte[] text, int alphabetSize, List<Rotor> rotors, List<Reflector> reflectors )
+			throws IOException {
+		int entries = rotors.size() + reflectors.size();
+		byte[][] names = new byte[entries][];
+		int[][] turnovers = new int[rotors.size()][];
+
+		// sizes first, so the offsets can go ahead of the entries
+		long size = HEADER_SIZE + 4L * entries;
+		for( int i = 0; i < entries; i++ ) {
+			if( i < rotors.size() ) {
+				Rotor rotor = rotors.get( i );
+				names[i] = encodeName( rotor.getName() );
+				turnovers[i] = rotor.getTurnover();
+				size += 2 + 4 * turnovers[i].length;
+			}
+			else {
+				names[i] = encodeName( reflectors.get( i - rotors.size() ).getName() );
+			}
+			size += 2 + nameLength( names[i] ) + alphabetSize;
+		}
+
+		Path path = pathFor( config );
+		Path temporary = Files.createTempFile( path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp" );
+		OutputStream stream = null;
+		try {
+			stream = Files.newOutputStream( temporary );
+			DataOutputStream out = new DataOutputStream( new BufferedOutputStream( stream ) );
+
+			out.writeInt( MAGIC );
+			out.writeInt( VERSION );
+			out.writeLong( size );
+			out.writeLong( text.length );
+			out.writeLong( hash( text ) );
+			out.writeInt( alphabetSize );
+			out.writeInt( rotors.size() );
+			out.writeInt( reflectors.size() );
+
+			int offset = HEADER_SIZE + 4 * entries;
+			for( int i = 0; i < entries; i++ ) {
+				out.writeInt( offset );
+				offset += 2 + nameLength( names[i] ) + alphabetSize + ( i < rotors.size() ? 2 + 4 * turnovers[i].length : 0 );
+			}
+
+			for( int i = 0; i < entries; i++ ) {
+				if( names[i] != null ) {
+					out.writeShort( names[i].length );
+					out.write( names[i] );
+				}
+				else {
+					out.writeShort( NO_NAME );
+				}
+				if( i < rotors.size() ) {
+					for( int connection : rotors.get( i ).getConnections() ) {
+						out.writeByte( connection );
+					}
+					out.writeShort( turnovers[i].length );
+					for( int position : turnovers[i] ) {
+						out.writeInt( position );
+					}
+				}
+				else {
+					for( int connection : reflectors.get( i - rotors.size() ).getPairs() ) {
+						out.writeByte( connection );
+					}
+				}
+			}
+			out.flush();
+			stream.close();
+			stream = null;
+
+			Files.move( temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		}
+		finally {
+			if( stream != null ) {
+				stream.close();
+			}
+			Files.deleteIfExists( temporary );
+		}
+	}
+
+	/**
+	 * Returns where the entry at offset ends, or past the end of the buffer if its lengths
+	 * run out of it
+	 */
+	private static long entryEnd( ByteBuffer buffer, int offset, int alphabetSize, boolean rotor ) {
+		long end = offset + 2L;
+		if( end > buffer.limit() ) {
+			return end;
+		}
+		int nameLength = buffer.getShort( offset ) & 0xFFFF;
+		end += ( nameLength != NO_NAME ? nameLength : 0 ) + alphabetSize;
+		if( rotor ) {
+			if( end + 2 > buffer.limit() ) {
+				return end + 2;
+			}
+			end += 2 + 4L * ( buffer.getShort( (int)end ) & 0xFFFF );
+		}
+		return end;
+	}
+
+	private static long hash( byte[] text ) {
+		return Fnv.mix( Fnv.OFFSET, text, 0, text.length );
+	}
+
+	/**
+	 * The number of symbols the rotors and reflectors are wired for
+	 */
+	public int getAlphabetSize() {
+		return alphabetSize;
+	}
+
+	/**
+	 * The rotors, decoded as they are first asked for. The list is read only and safe to share
+	 * between threads; every call for an entry returns the same rotor.
+	 */
+	public List<Rotor> getRotors() {
+		return new AbstractList<Rotor>() {
+			@Override
+			public Rotor get( int index ) {
+				Rotor rotor = rotors.get( index );
+				if( rotor == null ) {
+					rotors.compareAndSet( index, null, decodeRotor( offset( index ) ) );
+					rotor = rotors.get( index );
+				}
+				return rotor;
+			}
+
+			@Override
+			public int size() {
+				return rotorCount;
+			}
+		};
+	}
+
+	/**
+	 * The reflectors, decoded as they are first asked for, see {@link #getRotors()}
+	 */
+	public List<Reflector> getReflectors() {
+		return new AbstractList<Reflector>() {
+			@Override
+			public Reflector get( int index ) {
+				Reflector reflector = reflectors.get( index );
+				if( reflector == null ) {
+					reflectors.compareAndSet( index, null, decodeReflector( offset( rotorCount + index ) ) );
+					reflector = reflectors.get( index );
+				}
+				return reflector;
+			}
+
+			@Override
+			public int size() {
+				return reflectorCount;
+			}
+		};
+	}
+
+	/**
+	 * The rotor names, read without decoding the rotors
+	 */
+	public List<String> getRotorNames() {
+		return names( 0, rotorCount );
+	}
+
+	/**
+	 * The reflector names, read without decoding the reflectors
+	 */
+	public List<String> getReflectorNames() {
+		return names( rotorCount, reflectorCount );
+	}
+
+	private List<String> names( final int first, final int count ) {
+		return new AbstractList<String>() {
+			@Override
+			public String get( int index ) {
+				if( index < 0 || index >= count ) {
+					throw new IndexOutOfBoundsException( "Index: " + index );
+				}
+				return decodeName( offset( first + index ) );
+			}
+
+			@Override
+			public int size() {
+				return count;
+			}
+		};
+	}
+
+	private int offset( int entry ) {
+		return buffer.getInt( HEADER_SIZE + 4 * entry );
+	}
+
+	private Rotor decodeRotor( int offset ) {
+		String name = decodeName( offset );
+		offset += 2 + nameLength( offset );
+
+		Integer[] connections = decodeConnections( offset );
+		offset += alphabetSize;
+
+		Integer[] turnover = new Integer[buffer.getShort( offset ) & 0xFFFF];
+		offset += 2;
+		for( int i = 0; i < turnover.length; i++, offset += 4 ) {
+			turnover[i] = buffer.getInt( offset );
+		}
+
+		return new Rotor( name, connections, turnover );
+	}
+
+	private Reflector decodeReflector( int offset ) {
+		String name = decodeName( offset );
+		offset += 2 + nameLength( offset );
+
+		return new Reflector( name, decodeConnections( offset ) );
+	}
+
+	private static byte[] encodeName( String name ) throws IOException {
+		if( name == null ) {
+			return null;
+		}
+		byte[] bytes = name.getBytes( UTF8 );
+		if( bytes.length >= NO_NAME ) {
+			throw new IOException( "Name is too long for a snapshot: " + name );
+		}
+		return bytes;
+	}
+
+	private static int nameLength( byte[] name ) {
+		return name != null ? name.length : 0;
+	}
+
+	private int nameLength( int offset ) {
+		int length = buffer.getShort( offset ) & 0xFFFF;
+		return length != NO_NAME ? length : 0;
+	}
+
+	private String decodeName( int offset ) {
+		if( ( buffer.getShort( offset ) & 0xFFFF ) == NO_NAME ) {
+			return null;
+		}
+		byte[] name = new byte[nameLength( offset )];
+		for( int i = 0; i < name.length; i++ ) {
+			name[i] = buffer.get( offset + 2 + i );
+		}
+		return new String( name, UTF8 );
+	}
+
+	private Integer[] decodeConnections( int offset ) {
+		Integer[] connections = new Integer[alphabetSize];
+		for( int i = 0; i < alphabetSize; i++ ) {
+			connections[i] = buffer.get( offset + i ) & 0xFF;
+		}
+		return connections;
+	}
+}
@@ -0,0 +1,248 @@
+package dperry.enigma.io;
+
+import java.util.concurrent.Flow;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.engine.CompiledEnigma;
+import dperry.enigma.metrics.Metrics;
+
+/**
+ * Translates a stream of text chunks as a {@link Flow.Processor}. Letters are upper cased and
+ * everything else is dropped; each chunk that has letters gives one chunk of translated
+ * letters, converted in one pass by a compiled machine.
+ *
+ * Nothing is buffered: every chunk requested downstream is requested upstream, and a chunk
+ * that has no letters is replaced by requesting another. Translation runs on whichever thread
+ * delivers the chunk, so no thread is held while the stream waits. The end of the stream, or
+ * the error for a request that is not positive, waits for a chunk still going out, and
+ * nothing from upstream is passed on once the subscriber has cancelled.
+ *
+ * A processor serves one stream and one subscriber. The machine is compiled when the
+ * processor is made; the {@link Enigma} it came from does not move. In {@link Metrics} the
+ * chunks count as characters and the stream as one message, timed when it completes; a
+ * cancelled stream is not counted as a message.
+ */
+public class EnigmaProcessor implements Flow.Processor<CharSequence, String> {
+
+	private final CompiledEnigma machine;
+
+	private final Object lock = new Object();
+	private Flow.Subscription upstream;
+	private Flow.Subscriber<? super String> downstream;
+	// demand from downstream before there was an upstream to pass it to
+	private long pending;
+	private boolean cancelled;
+
+	// how the stream ended, kept until it can be passed on: when someone subscribes and no
+	// other signal is going out to them
+	private boolean completed;
+	private Throwable failure;
+	// signals being delivered downstream right now, and whether the last one has gone out
+	private int emitting;
+	private boolean terminated;
+	// when upstream subscribed, to time the whole stream as one message
+	private long started;
+
+	private char[] letters = new char[0];
+
+	public EnigmaProcessor( Enigma enigma ) throws Exception {
+		this( enigma.compile() );
+	}
+
+	public EnigmaProcessor( CompiledEnigma machine ) {
+		this.machine = machine;
+	}
+
+	@Override
+	public void subscribe( Flow.Subscriber<? super String> subscriber ) {
+		boolean accepted;
+		synchronized( lock ) {
+			accepted = downstream == null;
+			if( accepted ) {
+				downstream = subscriber;
+				// nothing else goes out before onSubscribe has returned
+				emitting++;
+			}
+		}
+
+		if( !accepted ) {
+			subscriber.onSubscribe( new Flow.Subscription() {
+				public void request( long n ) {
+				}
+
+				public void cancel() {
+				}
+			} );
+			subscriber.onError( new IllegalStateException( "Only one subscriber is supported" ) );
+			return;
+		}
+
+		try {
+			subscriber.onSubscribe( new Flow.Subscription() {
+				public void request( long n ) {
+					Flow.Subscription subscription;
+					synchronized( lock ) {
+						if( cancelled || terminated ) {
+							return;
+						}
+						subscription = upstream;
+						if( n <= 0 ) {
+							// the stream is cancelled and fails, the error going out in turn
+							// like any other signal
+							cancelled = true;
+							failure = new IllegalArgumentException( "Demand must be positive: " + n );
+						}
+						else if( subscription == null ) {
+							pending = pending + n < 0 ? Long.MAX_VALUE : pending + n;
+						}
+					}
+					if( n <= 0 ) {
+						if( subscription != null ) {
+							subscription.cancel();
+						}
+						signalEnd();
+					}
+					else if( subscription != null ) {
+						subscription.request( n );
+					}
+				}
+
+				public void cancel() {
+					Flow.Subscription subscription;
+					synchronized( lock ) {
+						if( cancelled || terminated ) {
+							return;
+						}
+						cancelled = true;
+						// an end not yet passed on is dropped with the rest
+						completed = false;
+						failure = null;
+						subscription = upstream;
+					}
+					if( subscription != null ) {
+						subscription.cancel();
+					}
+				}
+			} );
+		}
+		finally {
+			synchronized( lock ) {
+				emitting--;
+			}
+		}
+		signalEnd();
+	}
+
+	@Override
+	public void onSubscribe( Flow.Subscription subscription ) {
+		long demand;
+		boolean cancel;
+		synchronized( lock ) {
+			cancel = upstream != null || cancelled;
+			if( upstream == null ) {
+				upstream = subscription;
+				started = System.nanoTime();
+			}
+			demand = pending;
+			pending = 0;
+		}
+
+		if( cancel ) {
+			subscription.cancel();
+		}
+		else if( demand > 0 ) {
+			subscription.request( demand );
+		}
+	}
+
+	@Override
+	public void onNext( CharSequence chunk ) {
+		synchronized( lock ) {
+			if( cancelled || terminated || completed || failure != null ) {
+				return;
+			}
+			emitting++;
+		}
+
+		try {
+			int length = chunk.length();
+			if( letters.length < length ) {
+				letters = new char[Math.max( length, letters.length * 2 )];
+			}
+			int n = 0;
+			for( int i = 0; i < length; i++ ) {
+				char ch = chunk.charAt( i );
+				if( ch >= 'a' && ch <= 'z' ) {
+					letters[n++] = (char)( ch - 'a' + 'A' );
+				}
+				else if( ch >= 'A' && ch <= 'Z' ) {
+					letters[n++] = ch;
+				}
+			}
+
+			if( n == 0 ) {
+				// nothing to pass on, so ask for another in its place
+				upstream.request( 1 );
+				return;
+			}
+
+			machine.convert( letters, 0, letters, 0, n );
+			Metrics.getDefault().charactersConverted( n );
+			downstream.onNext( new String( letters, 0, n ) );
+		}
+		finally {
+			synchronized( lock ) {
+				emitting--;
+			}
+			signalEnd();
+		}
+	}
+
+	@Override
+	public void onError( Throwable throwable ) {
+		synchronized( lock ) {
+			if( cancelled || terminated || completed || failure != null ) {
+				return;
+			}
+			failure = throwable;
+		}
+		signalEnd();
+	}
+
+	@Override
+	public void onComplete() {
+		long nanos;
+		synchronized( lock ) {
+			if( cancelled || terminated || completed || failure != null ) {
+				return;
+			}
+			completed = true;
+			nanos = System.nanoTime() - started;
+		}
+		Metrics.getDefault().streamConverted( nanos );
+		signalEnd();
+	}
+
+	/**
+	 * Passes on how the stream ended, once there is a subscriber and no other signal is going
+	 * out to it; otherwise whichever signal is going out passes it on when it is done
+	 */
+	private void signalEnd() {
+		Flow.Subscriber<? super String> subscriber;
+		Throwable error;
+		synchronized( lock ) {
+			if( terminated || emitting > 0 || downstream == null || !completed && failure == null ) {
+				return;
+			}
+			terminated = true;
+			subscriber = downstream;
+			error = failure;
+		}
+		if( error != null ) {
+			subscriber.onError( error );
+		}
+		else {
+			subscriber.onComplete();
+		}
+	}
+}
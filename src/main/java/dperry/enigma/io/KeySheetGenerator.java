@@ -0,0 +1,340 @@
+package dperry.enigma.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.engine.CompiledEnigma;
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.parts.Plugboard;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Produces random machine settings, each with a random plain text and its encryption under
+ * that setting, for test vectors and training data. A setting is rotorCount distinct rotors
+ * from the machine's catalog, a reflector, start positions for all of them and a plugboard of
+ * the given number of pairs; stepping is taken from the machine.
+ *
+ * Keys are made in chunks on a fork-join pool and written in order. Every chunk draws from its
+ * own random stream, split from the seed one chunk after another, so the output for a seed is
+ * the same however many threads make it.
+ *
+ * CSV has a header line and then one line per key: rotors, first rotor first and separated by
+ * spaces, reflector, rotor positions, reflector position, plugboard pairs separated by spaces,
+ * plain text and cipher text.
+ *
+ * Binary, big endian, starts with magic, version, rotor count, pair count, text length and the
+ * seed, then the rotor names and the reflector names, each list a count followed by the names
+ * in modified UTF-8. Every key is then the same size: an int catalog index per rotor, an int
+ * reflector index, a byte per rotor position, a byte for the reflector position, two letters per
+ * plugboard pair and the plain and cipher text as ASCII letters.
+ */
+public class KeySheetGenerator {
+
+	public enum Format {
+		CSV, BINARY
+	}
+
+	public static final int MAGIC = 0x454B5331;
+	public static final int VERSION = 1;
+
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	static final int SIZE = Rotor.ROTOR_SIZE;
+
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	private final Rotor[] rotors;
+	private final Reflector[] reflectors;
+	private final boolean advanceRotors;
+	private final boolean advanceReflector;
+	private final Stepping stepping;
+
+	private final int rotorCount;
+	private final int pairs;
+	private final int textLength;
+	private final Format format;
+
+	private final int chunkSize;
+	private final ForkJoinPool pool;
+
+	public KeySheetGenerator( Enigma enigma, int rotorCount, int pairs, int textLength, Format format ) throws Exception {
+		this( enigma, rotorCount, pairs, textLength, format, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * @param chunkSize number of keys each task makes
+	 */
+	public KeySheetGenerator( Enigma enigma, int rotorCount, int pairs, int textLength, Format format, int chunkSize, ForkJoinPool pool )
+			throws Exception {
+		List<Rotor> available = enigma.getCatalog().getRotors();
+
+		if( rotorCount < 1 || rotorCount > available.size() ) {
+			throw new Exception( "Cannot choose " + rotorCount + " of " + available.size() + " rotors" );
+		}
+		if( enigma.getCatalog().getReflectors().isEmpty() ) {
+			throw new Exception( "No reflectors available to use" );
+		}
+		if( pairs < 0 || pairs > SIZE / 2 ) {
+			throw new Exception( "A plugboard has 0 to " + SIZE / 2 + " pairs, not " + pairs );
+		}
+		if( textLength < 0 ) {
+			throw new Exception( "Invalid text length: " + textLength );
+		}
+		if( chunkSize < 1 ) {
+			throw new Exception( "Invalid chunk size: " + chunkSize );
+		}
+
+		this.rotors = available.toArray( new Rotor[available.size()] );
+		this.reflectors = enigma.getCatalog().getReflectors().toArray( new Reflector[0] );
+		this.advanceRotors = enigma.getAdvanceRotors();
+		this.advanceReflector = enigma.getAdvanceReflector();
+		this.stepping = enigma.getStepping();
+
+		this.rotorCount = rotorCount;
+		this.pairs = pairs;
+		this.textLength = textLength;
+		this.format = format;
+		this.chunkSize = chunkSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * Writes count keys made from the seed to out. The stream is flushed but not closed.
+	 */
+	public void generate( long seed, long count, OutputStream out ) throws IOException {
+		writeHeader( seed, out );
+
+		SplittableRandom random = new SplittableRandom( seed );
+
+		// a few chunks per thread at a time, so memory stays bounded and the output in order
+		int window = Math.max( 1, pool.getParallelism() * 4 );
+		long remaining = count;
+		while( remaining > 0 ) {
+			List<Chunk> chunks = new ArrayList<Chunk>( window );
+			for( int c = 0; c < window && remaining > 0; c++ ) {
+				int keys = (int)Math.min( chunkSize, remaining );
+				chunks.add( new Chunk( random.split(), keys ) );
+				remaining -= keys;
+			}
+			run( chunks );
+
+			for( Chunk chunk : chunks ) {
+				chunk.output.writeTo( out );
+			}
+		}
+		out.flush();
+	}
+
+	private void writeHeader( long seed, OutputStream out ) throws IOException {
+		if( format == Format.CSV ) {
+			out.write( "rotors,reflector,positions,reflector_position,plugboard,plaintext,ciphertext\n".getBytes( UTF8 ) );
+			return;
+		}
+
+		DataOutputStream data = new DataOutputStream( out );
+		data.writeInt( MAGIC );
+		data.writeInt( VERSION );
+		data.writeInt( rotorCount );
+		data.writeInt( pairs );
+		data.writeInt( textLength );
+		data.writeLong( seed );
+
+		data.writeInt( rotors.length );
+		for( Rotor rotor : rotors ) {
+			data.writeUTF( name( rotor.getName() ) );
+		}
+		data.writeInt( reflectors.length );
+		for( Reflector reflector : reflectors ) {
+			data.writeUTF( name( reflector.getName() ) );
+		}
+		data.flush();
+	}
+
+	private void run( List<Chunk> chunks ) {
+		final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>( chunks.size() );
+		for( final Chunk chunk : chunks ) {
+			tasks.add( new RecursiveAction() {
+				@Override
+				protected void compute() {
+					chunk.generate();
+				}
+			} );
+		}
+
+		pool.invoke( new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll( tasks );
+			}
+		} );
+	}
+
+	private static String name( String name ) {
+		return name != null ? name : "";
+	}
+
+	// quotes a CSV field when it needs it
+	private static String field( String value ) {
+		if( value.indexOf( ',' ) < 0 && value.indexOf( '"' ) < 0 && value.indexOf( '\n' ) < 0 ) {
+			return value;
+		}
+		return "\"" + value.replace( "\"", "\"\"" ) + "\"";
+	}
+
+	private class Chunk {
+		final SplittableRandom random;
+		final int keys;
+		final ByteArrayOutputStream output;
+
+		// the key being made
+		final int[] order = new int[rotorCount];
+		final int[] positions = new int[rotorCount];
+		final int[] letters = new int[SIZE];
+		final char[] plain = new char[textLength];
+		final char[] cipher = new char[textLength];
+		final Rotor[] machineRotors = new Rotor[rotorCount];
+		int reflector;
+		int reflectorPosition;
+
+		Chunk( SplittableRandom random, int keys ) {
+			this.random = random;
+			this.keys = keys;
+			int estimate = format == Format.BINARY
+					? 5 * rotorCount + 5 + 2 * pairs + 2 * textLength
+					: 12 * rotorCount + 16 + 3 * pairs + 2 * textLength;
+			output = new ByteArrayOutputStream( keys * estimate );
+		}
+
+		void generate() {
+			try {
+				DataOutputStream data = new DataOutputStream( output );
+				StringBuilder line = new StringBuilder();
+				for( int k = 0; k < keys; k++ ) {
+					next();
+					if( format == Format.BINARY ) {
+						write( data );
+					}
+					else {
+						line.setLength( 0 );
+						write( line );
+						data.write( line.toString().getBytes( UTF8 ) );
+					}
+				}
+				data.flush();
+			}
+			catch( IOException e ) {
+				// the output is in memory
+				throw new IllegalStateException( e );
+			}
+		}
+
+		private void next() {
+			// distinct rotors; the catalog is usually far larger than the machine
+			for( int r = 0; r < rotorCount; r++ ) {
+				int pick;
+				boolean used;
+				do {
+					pick = random.nextInt( rotors.length );
+					used = false;
+					for( int i = 0; i < r; i++ ) {
+						used |= order[i] == pick;
+					}
+				}
+				while( used );
+				order[r] = pick;
+				positions[r] = random.nextInt( SIZE );
+			}
+			reflector = random.nextInt( reflectors.length );
+			reflectorPosition = random.nextInt( SIZE );
+
+			// the first 2 * pairs letters of a shuffle, taken two at a time
+			for( int i = 0; i < SIZE; i++ ) {
+				letters[i] = i;
+			}
+			for( int i = 0; i < 2 * pairs; i++ ) {
+				int j = i + random.nextInt( SIZE - i );
+				int letter = letters[i];
+				letters[i] = letters[j];
+				letters[j] = letter;
+			}
+
+			for( int i = 0; i < textLength; i++ ) {
+				plain[i] = (char)( 'A' + random.nextInt( SIZE ) );
+			}
+
+			encrypt();
+		}
+
+		private void encrypt() {
+			for( int r = 0; r < rotorCount; r++ ) {
+				machineRotors[r] = new Rotor( rotors[order[r]] );
+				machineRotors[r].reset( positions[r] );
+			}
+			Reflector machineReflector = new Reflector( reflectors[reflector] );
+			machineReflector.reset( reflectorPosition );
+
+			Plugboard plugboard = new Plugboard();
+			for( int i = 0; i < 2 * pairs; i += 2 ) {
+				plugboard.addConnection( (char)( 'A' + letters[i] ), (char)( 'A' + letters[i + 1] ) );
+			}
+
+			CompiledEnigma machine = new CompiledEnigma( machineRotors, machineReflector, plugboard, advanceRotors, advanceReflector, stepping );
+			machine.convert( plain, 0, cipher, 0, textLength );
+		}
+
+		private void write( DataOutputStream data ) throws IOException {
+			for( int r = 0; r < rotorCount; r++ ) {
+				data.writeInt( order[r] );
+			}
+			data.writeInt( reflector );
+			for( int r = 0; r < rotorCount; r++ ) {
+				data.writeByte( positions[r] );
+			}
+			data.writeByte( reflectorPosition );
+			for( int i = 0; i < 2 * pairs; i++ ) {
+				data.writeByte( 'A' + letters[i] );
+			}
+			for( int i = 0; i < textLength; i++ ) {
+				data.writeByte( plain[i] );
+			}
+			for( int i = 0; i < textLength; i++ ) {
+				data.writeByte( cipher[i] );
+			}
+		}
+
+		private void write( StringBuilder line ) {
+			for( int r = 0; r < rotorCount; r++ ) {
+				line.append( r == 0 ? "" : " " ).append( name( rotors[order[r]].getName() ) );
+			}
+			String names = field( line.toString() );
+			line.setLength( 0 );
+			line.append( names );
+			line.append( ',' ).append( field( name( reflectors[reflector].getName() ) ) );
+
+			line.append( ',' );
+			for( int r = 0; r < rotorCount; r++ ) {
+				line.append( (char)( 'A' + positions[r] ) );
+			}
+			line.append( ',' ).append( (char)( 'A' + reflectorPosition ) );
+
+			line.append( ',' );
+			for( int i = 0; i < 2 * pairs; i += 2 ) {
+				line.append( i == 0 ? "" : " " ).append( (char)( 'A' + letters[i] ) ).append( (char)( 'A' + letters[i + 1] ) );
+			}
+
+			line.append( ',' ).append( plain );
+			line.append( ',' ).append( cipher );
+			line.append( '\n' );
+		}
+	}
+}
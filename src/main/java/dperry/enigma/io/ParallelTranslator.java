@@ -0,0 +1,184 @@
+package dperry.enigma.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import dperry.enigma.engine.CompiledEnigma;
+
+/**
+ * Translates a file into another by splitting it into chunks which are translated on a
+ * fork-join pool. Both files are memory mapped. Each chunk starts from a copy of the machine
+ * stepped forward to the chunk's first letter, so the output is byte for byte the same as
+ * {@link StreamTranslator} would produce.
+ *
+ * The file is read twice: once to count the letters in each chunk, which fixes where every
+ * chunk starts in the key stream and in the output, and once to translate.
+ */
+public class ParallelTranslator {
+
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	private final CompiledEnigma machine;
+	private final boolean group;
+	private final int chunkSize;
+	private final ForkJoinPool pool;
+
+	public ParallelTranslator( CompiledEnigma machine, boolean group ) {
+		this( machine, group, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool() );
+	}
+
+	public ParallelTranslator( CompiledEnigma machine, boolean group, int chunkSize, ForkJoinPool pool ) {
+		this.machine = machine;
+		this.group = group;
+		this.chunkSize = chunkSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * Translates in to out, replacing any existing content of out. On return the machine has
+	 * been stepped past every translated letter.
+	 *
+	 * @return the number of letters translated
+	 */
+	public long translate( Path in, Path out ) throws IOException {
+		FileChannel input = null;
+		FileChannel output = null;
+
+		try {
+			input = FileChannel.open( in, StandardOpenOption.READ );
+			output = FileChannel.open( out, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+
+			long size = input.size();
+			List<Chunk> chunks = new ArrayList<Chunk>();
+			for( long offset = 0; offset < size; offset += chunkSize ) {
+				chunks.add( new Chunk( input.map( MapMode.READ_ONLY, offset, Math.min( chunkSize, size - offset ) ) ) );
+			}
+
+			// count the letters in each chunk, then give every chunk its place in the key stream
+			run( chunks, false );
+
+			long letters = 0;
+			for( Chunk chunk : chunks ) {
+				chunk.first = letters;
+				letters += chunk.letters;
+			}
+
+			long length = StreamTranslator.formattedLength( letters, group );
+			if( length == 0 ) {
+				return 0;
+			}
+
+			for( Chunk chunk : chunks ) {
+				if( chunk.letters > 0 ) {
+					long start = start( chunk.first );
+					long end = start( chunk.first + chunk.letters );
+					chunk.output = output.map( MapMode.READ_WRITE, start, end - start );
+				}
+			}
+
+			run( chunks, true );
+
+			// trailing newline
+			MappedByteBuffer last = output.map( MapMode.READ_WRITE, length - 1, 1 );
+			last.put( 0, (byte)'\n' );
+
+			machine.skip( letters );
+			return letters;
+		}
+		finally {
+			if( input != null ) {
+				input.close();
+			}
+			if( output != null ) {
+				output.close();
+			}
+		}
+	}
+
+	// offset in the output of the separator, if any, ahead of the given letter
+	private long start( long letter ) {
+		long offset = StreamTranslator.formattedOffset( letter, group );
+		return StreamTranslator.separator( letter, group ) != 0 ? offset - 1 : offset;
+	}
+
+	private void run( List<Chunk> chunks, final boolean translate ) {
+		final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>( chunks.size() );
+		for( final Chunk chunk : chunks ) {
+			tasks.add( new RecursiveAction() {
+				@Override
+				protected void compute() {
+					if( translate ) {
+						chunk.translate();
+					}
+					else {
+						chunk.count();
+					}
+				}
+			} );
+		}
+
+		pool.invoke( new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll( tasks );
+			}
+		} );
+	}
+
+	private class Chunk {
+		final MappedByteBuffer input;
+		MappedByteBuffer output;
+
+		long letters;
+		long first;
+
+		Chunk( MappedByteBuffer input ) {
+			this.input = input;
+		}
+
+		void count() {
+			int length = input.limit();
+			long n = 0;
+			for( int i = 0; i < length; i++ ) {
+				int ch = input.get( i ) | 0x20;
+				if( ch >= 'a' && ch <= 'z' ) {
+					n++;
+				}
+			}
+			letters = n;
+		}
+
+		void translate() {
+			if( letters == 0 ) {
+				return;
+			}
+
+			CompiledEnigma machine = new CompiledEnigma( ParallelTranslator.this.machine );
+			machine.skip( first );
+
+			int length = input.limit();
+			int out = 0;
+			long index = first;
+			for( int i = 0; i < length; i++ ) {
+				int ch = input.get( i ) | 0x20;
+				if( ch >= 'a' && ch <= 'z' ) {
+					byte separator = StreamTranslator.separator( index, group );
+					if( separator != 0 ) {
+						output.put( out++, separator );
+					}
+					output.put( out++, (byte)machine.convert( (char)( ch - 'a' + 'A' ) ) );
+					index++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package dperry.enigma.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import dperry.enigma.engine.CompiledEnigma;
+
+/**
+ * Streams text from one channel to another through a compiled machine using fixed size
+ * buffers, so memory use does not depend on the size of the input.
+ *
+ * Letters are upper cased and everything else is dropped. When grouping, the output is
+ * written in blocks of {@link #GROUP_SIZE} letters, {@link #GROUPS_PER_LINE} blocks to a
+ * line. Output always ends with a newline if any letters were written.
+ */
+public class StreamTranslator {
+
+	public static final int GROUP_SIZE = 5;
+	public static final int GROUPS_PER_LINE = 10;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final CompiledEnigma machine;
+	private final boolean group;
+
+	private final ByteBuffer input;
+	private final ByteBuffer letters;
+	private final ByteBuffer output;
+
+	private long count;
+
+	public StreamTranslator( CompiledEnigma machine, boolean group ) {
+		this.machine = machine;
+		this.group = group;
+
+		input = ByteBuffer.allocate( BUFFER_SIZE );
+		letters = ByteBuffer.allocate( BUFFER_SIZE );
+		output = ByteBuffer.allocate( BUFFER_SIZE );
+	}
+
+	/**
+	 * Translates everything readable from in and writes it to out. Neither channel is closed.
+	 *
+	 * @return the number of letters translated
+	 */
+	public long translate( ReadableByteChannel in, WritableByteChannel out ) throws IOException {
+		count = 0;
+
+		while( in.read( input ) >= 0 ) {
+			input.flip();
+			filter();
+			input.clear();
+
+			letters.flip();
+			machine.convert( letters, letters );
+			letters.flip();
+			format( out );
+			letters.clear();
+		}
+
+		if( count > 0 ) {
+			if( !output.hasRemaining() ) {
+				drain( out );
+			}
+			output.put( (byte)'\n' );
+		}
+		drain( out );
+
+		return count;
+	}
+
+	/**
+	 * Returns the number of bytes written for the given number of letters
+	 */
+	public static long formattedLength( long letters, boolean group ) {
+		if( letters == 0 ) {
+			return 0;
+		}
+		return letters + ( group ? ( letters - 1 ) / GROUP_SIZE : 0 ) + 1;
+	}
+
+	/**
+	 * Returns the offset in the output at which the letter with the given index is written
+	 */
+	public static long formattedOffset( long index, boolean group ) {
+		return index + ( group ? index / GROUP_SIZE : 0 );
+	}
+
+	/**
+	 * Returns the separator written before the letter with the given index, or 0 for none
+	 */
+	public static byte separator( long index, boolean group ) {
+		if( !group || index == 0 || index % GROUP_SIZE != 0 ) {
+			return 0;
+		}
+		return index % ( GROUP_SIZE * GROUPS_PER_LINE ) == 0 ? (byte)'\n' : (byte)' ';
+	}
+
+	// copy the letters out of the input buffer, upper casing as we go
+	private void filter() {
+		byte[] in = input.array();
+		byte[] out = letters.array();
+		int length = input.limit();
+		int n = letters.position();
+
+		for( int i = 0; i < length; i++ ) {
+			int ch = in[i];
+			if( ch >= 'a' && ch <= 'z' ) {
+				out[n++] = (byte)( ch - 'a' + 'A' );
+			}
+			else if( ch >= 'A' && ch <= 'Z' ) {
+				out[n++] = (byte)ch;
+			}
+		}
+		letters.position( n );
+	}
+
+	private void format( WritableByteChannel out ) throws IOException {
+		byte[] in = letters.array();
+		int length = letters.limit();
+
+		for( int i = 0; i < length; i++ ) {
+			// room for a separator and a letter
+			if( output.remaining() < 2 ) {
+				drain( out );
+			}
+			byte separator = separator( count, group );
+			if( separator != 0 ) {
+				output.put( separator );
+			}
+			output.put( in[i] );
+			count++;
+		}
+	}
+
+	private void drain( WritableByteChannel out ) throws IOException {
+		output.flip();
+		while( output.hasRemaining() ) {
+			out.write( output );
+		}
+		output.clear();
+	}
+}
@@ -0,0 +1,110 @@
+package dperry.enigma.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in buckets that grow with the value: every power of two is split into
+ * four, so any percentile read back is within 25% of the true value. Recording is a single
+ * striped counter increment and never blocks, so it can be shared by any number of threads.
+ */
+public class LatencyHistogram {
+
+	// four buckets per power of two, up to the largest long
+	private static final int SUB_BUCKETS = 4;
+	private static final int BUCKETS = SUB_BUCKETS * 62;
+
+	private final LongAdder[] buckets;
+	private final LongAdder count;
+	private final AtomicLong max;
+
+	public LatencyHistogram() {
+		buckets = new LongAdder[BUCKETS];
+		for( int i = 0; i < BUCKETS; i++ ) {
+			buckets[i] = new LongAdder();
+		}
+		count = new LongAdder();
+		max = new AtomicLong();
+	}
+
+	public void record( long nanos ) {
+		if( nanos < 0 ) {
+			nanos = 0;
+		}
+		buckets[index( nanos )].increment();
+		count.increment();
+
+		long current = max.get();
+		while( nanos > current && !max.compareAndSet( current, nanos ) ) {
+			current = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the duration at or below which the given fraction of recordings fall, as the top
+	 * of the bucket it lands in, or 0 when nothing has been recorded
+	 *
+	 * @param fraction 0 through 1, e.g. 0.99 for the 99th percentile
+	 */
+	public long getPercentile( double fraction ) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for( int i = 0; i < BUCKETS; i++ ) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		if( total == 0 ) {
+			return 0;
+		}
+
+		long rank = (long)Math.ceil( fraction * total );
+		long seen = 0;
+		for( int i = 0; i < BUCKETS; i++ ) {
+			seen += counts[i];
+			if( seen >= Math.max( rank, 1 ) ) {
+				return Math.min( upper( i ), getMax() );
+			}
+		}
+		return getMax();
+	}
+
+	public void reset() {
+		for( LongAdder bucket : buckets ) {
+			bucket.reset();
+		}
+		count.reset();
+		max.set( 0 );
+	}
+
+	static int index( long value ) {
+		if( value < SUB_BUCKETS ) {
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros( value );
+		return SUB_BUCKETS * ( exponent - 1 ) + (int)( ( value >>> ( exponent - 2 ) ) & ( SUB_BUCKETS - 1 ) );
+	}
+
+	// largest value that falls in the bucket
+	static long upper( int index ) {
+		if( index + 1 >= BUCKETS ) {
+			return Long.MAX_VALUE;
+		}
+		return lower( index + 1 ) - 1;
+	}
+
+	static long lower( int index ) {
+		if( index < SUB_BUCKETS ) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + 1;
+		return (long)( SUB_BUCKETS + index % SUB_BUCKETS ) << ( exponent - 2 );
+	}
+}
@@ -0,0 +1,168 @@
+package dperry.enigma.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timings for everything the machines in this process convert. Counters are
+ * striped so that recording costs a few nanoseconds and does not contend between threads;
+ * the figures are only added up when read.
+ *
+ * A message is one bulk conversion, a console or batch translation or a whole stream; single
+ * letters are left to their caller to count with the message they belong to. Everything is shared by the process, see
+ * {@link #getDefault()}, and published over JMX by {@link #register()}.
+ */
+public class Metrics implements MetricsMBean {
+
+	public static final String OBJECT_NAME = "dperry.enigma:type=Metrics";
+
+	private static final Metrics DEFAULT = new Metrics();
+
+	private final LongAdder characters;
+	private final LongAdder messages;
+	private final LatencyHistogram latency;
+
+	private final LongAdder imports;
+	private volatile long lastImportNanos;
+	private volatile int rotorCount;
+	private volatile int reflectorCount;
+
+	private volatile long started;
+
+	public Metrics() {
+		characters = new LongAdder();
+		messages = new LongAdder();
+		latency = new LatencyHistogram();
+		imports = new LongAdder();
+		started = System.nanoTime();
+	}
+
+	public static Metrics getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Publishes the default metrics on the platform MBean server, once
+	 *
+	 * @return false if they could not be registered
+	 */
+	public static synchronized boolean register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName( OBJECT_NAME );
+			if( !server.isRegistered( name ) ) {
+				server.registerMBean( DEFAULT, name );
+			}
+			return true;
+		}
+		catch( JMException e ) {
+			return false;
+		}
+	}
+
+	public void charactersConverted( long count ) {
+		characters.add( count );
+	}
+
+	public void messageConverted( long length, long nanos ) {
+		characters.add( length );
+		messages.increment();
+		latency.record( nanos );
+	}
+
+	/**
+	 * Counts a stream as one message once it ends, its characters having been counted with
+	 * {@link #charactersConverted(long)} as they went through
+	 */
+	public void streamConverted( long nanos ) {
+		messages.increment();
+		latency.record( nanos );
+	}
+
+	public void configurationImported( int rotors, int reflectors, long nanos ) {
+		imports.increment();
+		lastImportNanos = nanos;
+		rotorCount = rotors;
+		reflectorCount = reflectors;
+	}
+
+	@Override
+	public long getCharactersConverted() {
+		return characters.sum();
+	}
+
+	@Override
+	public long getMessagesProcessed() {
+		return messages.sum();
+	}
+
+	/**
+	 * Average since the metrics were created or last reset
+	 */
+	@Override
+	public double getConversionsPerSecond() {
+		double seconds = getUptimeSeconds();
+		return seconds > 0 ? getCharactersConverted() / seconds : 0;
+	}
+
+	@Override
+	public double getLatency50thMicros() {
+		return latency.getPercentile( 0.50 ) / 1000.0;
+	}
+
+	@Override
+	public double getLatency90thMicros() {
+		return latency.getPercentile( 0.90 ) / 1000.0;
+	}
+
+	@Override
+	public double getLatency99thMicros() {
+		return latency.getPercentile( 0.99 ) / 1000.0;
+	}
+
+	@Override
+	public double getLatencyMaxMicros() {
+		return latency.getMax() / 1000.0;
+	}
+
+	@Override
+	public long getConfigImports() {
+		return imports.sum();
+	}
+
+	@Override
+	public double getLastImportMillis() {
+		return lastImportNanos / 1000000.0;
+	}
+
+	@Override
+	public int getRotorCount() {
+		return rotorCount;
+	}
+
+	@Override
+	public int getReflectorCount() {
+		return reflectorCount;
+	}
+
+	@Override
+	public double getUptimeSeconds() {
+		return ( System.nanoTime() - started ) / 1e9;
+	}
+
+	/**
+	 * Clears the counters and timings; the last import and catalog sizes are kept
+	 */
+	@Override
+	public void reset() {
+		characters.reset();
+		messages.reset();
+		latency.reset();
+		started = System.nanoTime();
+	}
+}
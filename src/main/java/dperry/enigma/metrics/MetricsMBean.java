@@ -0,0 +1,33 @@
+package dperry.enigma.metrics;
+
+/**
+ * The management interface of {@link Metrics}. Durations are in microseconds.
+ */
+public interface MetricsMBean {
+
+	long getCharactersConverted();
+
+	long getMessagesProcessed();
+
+	double getConversionsPerSecond();
+
+	double getLatency50thMicros();
+
+	double getLatency90thMicros();
+
+	double getLatency99thMicros();
+
+	double getLatencyMaxMicros();
+
+	long getConfigImports();
+
+	double getLastImportMillis();
+
+	int getRotorCount();
+
+	int getReflectorCount();
+
+	double getUptimeSeconds();
+
+	void reset();
+}
@@ -0,0 +1,129 @@
+package dperry.enigma.parts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The rotors and reflectors a machine can choose from, indexed by name. A catalog never
+ * changes once built, so any number of machines and threads can share one, and finding a part
+ * by name takes the same time however many there are.
+ *
+ * Names should be unique. When one repeats, the first entry with it is the one found and the
+ * name is listed by {@link #getDuplicateRotors()} or {@link #getDuplicateReflectors()}.
+ */
+public class Catalog {
+
+	public static final Catalog EMPTY = new Catalog( new ArrayList<Rotor>(), new ArrayList<Reflector>() );
+
+	private final List<Rotor> rotors;
+	private final List<Reflector> reflectors;
+
+	private final List<String> rotorNames;
+	private final List<String> reflectorNames;
+
+	private final HashMap<String, Integer> rotorIndex;
+	private final HashMap<String, Integer> reflectorIndex;
+
+	private final List<String> duplicateRotors;
+	private final List<String> duplicateReflectors;
+
+	public Catalog( List<Rotor> rotors, List<Reflector> reflectors ) {
+		this( rotors, rotorNames( rotors ), reflectors, reflectorNames( reflectors ) );
+	}
+
+	/**
+	 * Builds the catalog with the names given separately, so the parts themselves are not
+	 * touched; names.get(i) must be the name of the i'th part. The lists must not change
+	 * afterwards.
+	 */
+	public Catalog( List<Rotor> rotors, List<String> rotorNames, List<Reflector> reflectors, List<String> reflectorNames ) {
+		this.rotors = Collections.unmodifiableList( rotors );
+		this.reflectors = Collections.unmodifiableList( reflectors );
+
+		duplicateRotors = new ArrayList<String>();
+		duplicateReflectors = new ArrayList<String>();
+
+		String[] names = rotorNames.toArray( new String[rotors.size()] );
+		this.rotorNames = Collections.unmodifiableList( Arrays.asList( names ) );
+		rotorIndex = index( names, duplicateRotors );
+
+		names = reflectorNames.toArray( new String[reflectors.size()] );
+		this.reflectorNames = Collections.unmodifiableList( Arrays.asList( names ) );
+		reflectorIndex = index( names, duplicateReflectors );
+	}
+
+	/**
+	 * Returns the rotor with the given name, or null if there is none
+	 */
+	public Rotor getRotor( String name ) {
+		Integer index = rotorIndex.get( name );
+		return index != null ? rotors.get( index ) : null;
+	}
+
+	/**
+	 * Returns the reflector with the given name, or null if there is none
+	 */
+	public Reflector getReflector( String name ) {
+		Integer index = reflectorIndex.get( name );
+		return index != null ? reflectors.get( index ) : null;
+	}
+
+	public List<Rotor> getRotors() {
+		return rotors;
+	}
+
+	public List<Reflector> getReflectors() {
+		return reflectors;
+	}
+
+	/**
+	 * The rotor names, in catalog order, without building anything
+	 */
+	public List<String> getRotorNames() {
+		return rotorNames;
+	}
+
+	public List<String> getReflectorNames() {
+		return reflectorNames;
+	}
+
+	public List<String> getDuplicateRotors() {
+		return Collections.unmodifiableList( duplicateRotors );
+	}
+
+	public List<String> getDuplicateReflectors() {
+		return Collections.unmodifiableList( duplicateReflectors );
+	}
+
+	private static HashMap<String, Integer> index( String[] names, List<String> duplicates ) {
+		HashMap<String, Integer> index = new HashMap<String, Integer>( names.length * 4 / 3 + 1 );
+		for( int i = 0; i < names.length; i++ ) {
+			if( index.containsKey( names[i] ) ) {
+				duplicates.add( names[i] );
+			}
+			else {
+				index.put( names[i], i );
+			}
+		}
+		return index;
+	}
+
+	private static List<String> rotorNames( List<Rotor> rotors ) {
+		List<String> names = new ArrayList<String>( rotors.size() );
+		for( Rotor rotor : rotors ) {
+			names.add( rotor.getName() );
+		}
+		return names;
+	}
+
+	private static List<String> reflectorNames( List<Reflector> reflectors ) {
+		List<String> names = new ArrayList<String>( reflectors.size() );
+		for( Reflector reflector : reflectors ) {
+			names.add( reflector.getName() );
+		}
+		return names;
+	}
+}
@@ -1,64 +1,94 @@
 package dperry.enigma.parts;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 
 public class Plugboard {
 
-	Map<Character, Character> connections;
-	
+	// endpoint of every letter, indexed from 'A'; unconnected letters map to themselves
+	char[] endpoints;
+
+	// connected pairs, lower letter first, ordered by the lower letter
+	ArrayList<Character[]> connectors;
+
 	public Plugboard() {
-		connections = new HashMap<Character, Character>();
-		
+		this( Rotor.ROTOR_SIZE );
+	}
+
+	/**
+	 * A plugboard for an alphabet of size symbols. Symbol n is named by the character 'A' + n,
+	 * so the first 26 are the letters.
+	 */
+	public Plugboard( int size ) {
+		endpoints = new char[size];
+		connectors = new ArrayList<Character[]>();
+
 		reset();
 	}
-	
+
 	public void reset() {
-		connections.clear();
-		for( char i = 'A'; i <= 'Z'; i++ ) {
-			connections.put( i, i );
+		for( int i = 0; i < endpoints.length; i++ ) {
+			endpoints[i] = (char)( 'A' + i );
 		}
+		connectors.clear();
 	}
-	
+
 	public ArrayList<Character[]> getConnections() {
-		ArrayList<Character[]> connectors = new ArrayList<Character[]>();
-		Map<Character,Character> temp = new HashMap<Character,Character>();
-		for( char ch : connections.keySet() ) {
-			Character k = connections.get( ch );
-			if( !k.equals( ch ) ) {
-				if( !temp.containsKey( k ) && ! temp.containsValue( k ) ) {
-					connectors.add( new Character[]{ch,k} );
-					temp.put(k,ch);
-				}
-			}
-		}
-		return connectors;
+		return new ArrayList<Character[]>( connectors );
 	}
-	
+
 	public char getEndpoint( char a ) {
-		return connections.get( a );
+		return endpoints[a - 'A'];
 	}
-	
+
 	public void removeConnector( char a ) {
-		char old = connections.get( a );
-		connections.put( a, a );
-		connections.put( old, old );
+		if( !isLetter( a ) ) {
+			return;
+		}
+
+		char old = endpoints[a - 'A'];
+		if( old != a ) {
+			endpoints[a - 'A'] = a;
+			endpoints[old - 'A'] = old;
+
+			char lower = a < old ? a : old;
+			for( int i = 0; i < connectors.size(); i++ ) {
+				if( connectors.get( i )[0] == lower ) {
+					connectors.remove( i );
+					break;
+				}
+			}
+		}
 	}
-	
+
 	public boolean addConnection( char char1, char char2 ) {
-		
+
 		boolean added = false;
-		
-		if( char1 != char2 ) {
-			
-			if( connections.get( char1 ).equals( char1 ) && connections.get( char2 ).equals( char2 ) ) {
-				connections.put( char1, char2 );
-				connections.put( char2, char1 );
+
+		if( char1 != char2 && isLetter( char1 ) && isLetter( char2 ) ) {
+
+			if( endpoints[char1 - 'A'] == char1 && endpoints[char2 - 'A'] == char2 ) {
+				endpoints[char1 - 'A'] = char2;
+				endpoints[char2 - 'A'] = char1;
+
+				char lower = char1 < char2 ? char1 : char2;
+				char upper = char1 < char2 ? char2 : char1;
+				int i = 0;
+				while( i < connectors.size() && connectors.get( i )[0] < lower ) {
+					i++;
+				}
+				connectors.add( i, new Character[]{ lower, upper } );
 				added = true;
 			}
 		}
-		
+
 		return added;
 	}
+
+	public int getSize() {
+		return endpoints.length;
+	}
+
+	private boolean isLetter( char ch ) {
+		return ch >= 'A' && ch < 'A' + endpoints.length;
+	}
 }
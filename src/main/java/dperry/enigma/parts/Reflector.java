@@ -8,16 +8,40 @@ public class Reflector {
 	String name;
 	private int currentPosition;
 
+	// number of symbols, the length of the wiring
+	private int size;
+
+	/**
+	 * The alphabet is as large as the wiring, like {@link Rotor#Rotor(String, Integer[], Integer[])}
+	 */
 	public Reflector( String name, Integer[] pairs ) {
 		this.pairs = pairs;
 		this.name = name;
+		this.size = pairs.length;
+		currentPosition = 0;
+	}
+
+	/**
+	 * Copies the reflector at position 0, sharing its wiring like {@link Rotor#Rotor(Rotor)}
+	 */
+	public Reflector( Reflector reflector ) {
+		this.pairs = reflector.pairs;
+		this.name = reflector.name;
+		this.size = reflector.size;
 		currentPosition = 0;
 	}
 
 	public static boolean isValid( Integer[] pairs ) {
+		return isValid( pairs, Rotor.ROTOR_SIZE );
+	}
+	
+	/**
+	 * True when the pairs connect each of size symbols to one other, both ways
+	 */
+	public static boolean isValid( Integer[] pairs, int size ) {
 		boolean valid = true;
 		
-		if( ( pairs != null ) && ( pairs.length == Rotor.ROTOR_SIZE ) ) {
+		if( ( pairs != null ) && ( pairs.length == size ) ) {
 			
 			// check that all elements in series are present
 			
@@ -25,13 +49,13 @@ public class Reflector {
 			for( Integer i : pairs ) {
 				checker.add( i );
 			}
-			if( checker.size() != Rotor.ROTOR_SIZE || checker.first() != Rotor.ROTOR_MIN || checker.last() != Rotor.ROTOR_MAX ) {
+			if( checker.size() != size || checker.first() != Rotor.ROTOR_MIN || checker.last() != size - 1 ) {
 				valid = false;
 			}
 			
 			// check that pairs are valid
 			
-			for( int i = 0; i < Rotor.ROTOR_SIZE; i++ ) {
+			for( int i = 0; i < size && valid; i++ ) {
 				
 				if( i != pairs[pairs[i]] ) {
 					valid = false;
@@ -66,7 +90,7 @@ public class Reflector {
 	}
 
 	public void advance() {
-		currentPosition = ( currentPosition + 1 ) % Rotor.ROTOR_SIZE;
+		currentPosition = ( currentPosition + 1 ) % size;
 	}
 	
 	public void move( Character position ) {
@@ -85,17 +109,33 @@ public class Reflector {
 		
 		int arrayVal = pairs[ 
 				                      ( currentPosition + val < 0 ) 
-				                      ? ( currentPosition + val + Rotor.ROTOR_SIZE ) 
-				                      : ( currentPosition + val ) % Rotor.ROTOR_SIZE
+				                      ? ( currentPosition + val + size ) 
+				                      : ( currentPosition + val ) % size
 				                     ];
 					
 		return ( arrayVal - currentPosition < 0 ) 
-				? arrayVal - currentPosition + Rotor.ROTOR_SIZE 
-				: arrayVal - currentPosition % Rotor.ROTOR_SIZE;
+				? arrayVal - currentPosition + size 
+				: arrayVal - currentPosition % size;
 //		return pairs[( currentPosition + val ) % Rotor.ROTOR_SIZE];
 	}
 
 	public String getName() {
 		return name;
 	}
+
+	public int getPosition() {
+		return currentPosition;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int[] getPairs() {
+		int[] wiring = new int[pairs.length];
+		for( int i = 0; i < pairs.length; i++ ) {
+			wiring[i] = pairs[i];
+		}
+		return wiring;
+	}
 }
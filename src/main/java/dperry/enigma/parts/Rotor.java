@@ -1,6 +1,5 @@
 package dperry.enigma.parts;
 
-import java.util.Arrays;
 import java.util.TreeSet;
 
 public class Rotor {
@@ -12,45 +11,74 @@ public class Rotor {
 	private int currentPosition;
 	private String name;
 
+	// number of symbols, the length of the wiring
+	private int size;
+
 	Integer[] connections;
 	Integer[] reverse;
 	Integer[] turnover;
 
+	// bit n set when stepping onto position n carries into the next rotor, 64 positions a word
+	private long[] notches;
+
+	/**
+	 * Copies the rotor at position 0. The wiring is never changed once built, so the copy
+	 * shares it rather than building its own.
+	 */
 	public Rotor( Rotor rotor ) {
 		currentPosition = 0;
 		this.name = rotor.name;
-		this.turnover = rotor.turnover.clone();
-		this.connections = rotor.connections.clone();
-		
-		generateReverseConnections();
+		this.size = rotor.size;
+		this.turnover = rotor.turnover;
+		this.connections = rotor.connections;
+		this.reverse = rotor.reverse;
+		this.notches = rotor.notches;
 	}
 	
+	/**
+	 * The alphabet is as large as the wiring, {@link #ROTOR_SIZE} letters for the classic machine
+	 */
 	public Rotor( String name, Integer[] connections, Integer[] turnover ) {
 
 		currentPosition = 0;
 		this.name = name;
+		this.size = connections.length;
 		this.turnover = turnover;
 		this.connections = connections;
 
+		notches = new long[( size + 63 ) / 64];
+		for( Integer position : turnover ) {
+			if( position != null && position >= ROTOR_MIN && position < size ) {
+				notches[position >>> 6] |= 1L << position;
+			}
+		}
+
 		generateReverseConnections();
 	}
 
 	private void generateReverseConnections() {
-		reverse = new Integer[ROTOR_SIZE];
-		for( int i = 0; i < ROTOR_SIZE; i++ ) {
+		reverse = new Integer[size];
+		for( int i = 0; i < size; i++ ) {
 			reverse[connections[i]] = i;
 		}
 	}
 
 	public static boolean isValid( Integer[] connections ) {
+		return isValid( connections, ROTOR_SIZE );
+	}
+
+	/**
+	 * True when the connections wire every one of size symbols to a different one
+	 */
+	public static boolean isValid( Integer[] connections, int size ) {
 		boolean valid = true;
 
-		if( ( connections != null ) && ( connections.length == ROTOR_SIZE ) ) {
+		if( ( connections != null ) && ( connections.length == size ) ) {
 			TreeSet<Integer> checker = new TreeSet<Integer>();
 			for( Integer i : connections ) {
 				checker.add( i );
 			}
-			if( checker.size() != ROTOR_SIZE || checker.first() != ROTOR_MIN || checker.last() != ROTOR_MAX ) {
+			if( checker.size() != size || checker.first() != ROTOR_MIN || checker.last() != size - 1 ) {
 				valid = false;
 			}
 		}
@@ -72,9 +100,25 @@ public class Rotor {
 		currentPosition = pos;
 	}
 
+	/**
+	 * Steps the rotor forward one position
+	 * 
+	 * @return true if it landed on a turnover position
+	 */
 	public boolean advance() {
-		currentPosition = ( currentPosition + 1 ) % ROTOR_SIZE;
-		return Arrays.asList( turnover ).contains( currentPosition );
+		currentPosition = ( currentPosition + 1 ) % size;
+		return isNotch( currentPosition );
+	}
+
+	/**
+	 * True when the next step lands on a turnover position
+	 */
+	public boolean atNotch() {
+		return isNotch( ( currentPosition + 1 ) % size );
+	}
+
+	private boolean isNotch( int position ) {
+		return position >= 0 && position < size && ( notches[position >>> 6] & ( 1L << position ) ) != 0;
 	}
 
 	public Character getCurrent() {
@@ -86,11 +130,11 @@ public class Rotor {
 		// return connections[ ( currentPosition + val ) % ROTOR_SIZE ];
 		int arrayVal = connections[ 
 		                      ( currentPosition + val < 0 ) 
-		                      ? ( currentPosition + val + ROTOR_SIZE ) 
-		                      : ( currentPosition + val ) % ROTOR_SIZE
+		                      ? ( currentPosition + val + size ) 
+		                      : ( currentPosition + val ) % size
 		                     ];
 			
-		return ( arrayVal - currentPosition < 0 ) ? arrayVal - currentPosition + ROTOR_SIZE : arrayVal - currentPosition % ROTOR_SIZE;
+		return ( arrayVal - currentPosition < 0 ) ? arrayVal - currentPosition + size : arrayVal - currentPosition % size;
 			
 			
 			
@@ -108,11 +152,11 @@ public class Rotor {
 		
 		int arrayVal = reverse[ 
 				                      ( currentPosition + val < 0 ) 
-				                      ? ( currentPosition + val + ROTOR_SIZE ) 
-				                      : ( currentPosition + val ) % ROTOR_SIZE
+				                      ? ( currentPosition + val + size ) 
+				                      : ( currentPosition + val ) % size
 				                     ];
 					
-		return ( arrayVal - currentPosition < 0 ) ? arrayVal - currentPosition + ROTOR_SIZE : arrayVal - currentPosition % ROTOR_SIZE;
+		return ( arrayVal - currentPosition < 0 ) ? arrayVal - currentPosition + size : arrayVal - currentPosition % size;
 				
 //		return ( reverse[
 //		                 	( currentPosition + val < 0 ) 
@@ -152,4 +196,43 @@ public class Rotor {
 	public String getName() {
 		return name;
 	}
+
+	public int getPosition() {
+		return currentPosition;
+	}
+
+	public int[] getConnections() {
+		int[] wiring = new int[connections.length];
+		for( int i = 0; i < connections.length; i++ ) {
+			wiring[i] = connections[i];
+		}
+		return wiring;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the turnover positions as a bitmask, bit n set for position n. Only the first 32
+	 * positions fit, which covers the classic alphabet; see {@link #isTurnover(int)}.
+	 */
+	public int getNotches() {
+		return (int)notches[0];
+	}
+
+	/**
+	 * True when stepping onto the position carries into the next rotor
+	 */
+	public boolean isTurnover( int position ) {
+		return isNotch( position );
+	}
+
+	public int[] getTurnover() {
+		int[] positions = new int[turnover.length];
+		for( int i = 0; i < turnover.length; i++ ) {
+			positions[i] = turnover[i];
+		}
+		return positions;
+	}
 }
@@ -0,0 +1,153 @@
+package dperry.enigma.server;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Session;
+
+/**
+ * Serves the interactive commands over TCP on the loopback interface. Every connection gets
+ * a {@link Session} with its own machine; the rotor and reflector definitions are loaded once
+ * and shared by all of them.
+ *
+ * The protocol is the console's: one command per line, answered with zero or more lines,
+ * without the prompts. 'quit' or closing the connection ends the session.
+ *
+ * Each connection runs on its own thread. Virtual threads are used when the runtime has
+ * them, otherwise a cached pool of platform threads.
+ */
+public class EnigmaServer implements Closeable {
+
+	public static final int DEFAULT_PORT = 6161;
+
+	private static final int BACKLOG = 1024;
+	private static final String CHARSET = "US-ASCII";
+
+	private final Enigma catalog;
+	private final ServerSocket server;
+	private final ExecutorService executor;
+
+	private final Set<Socket> connections;
+
+	/**
+	 * @param catalog machine whose rotor and reflector definitions every session uses. It
+	 * must not be imported into or cleared while the server runs.
+	 * @param port port to listen on, 0 for any free port
+	 */
+	public EnigmaServer( Enigma catalog, int port ) throws IOException {
+		this.catalog = catalog;
+		this.server = new ServerSocket( port, BACKLOG, InetAddress.getLoopbackAddress() );
+		this.executor = newExecutor();
+		this.connections = Collections.newSetFromMap( new ConcurrentHashMap<Socket, Boolean>() );
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	public int getSessionCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Accepts connections until the server is closed
+	 */
+	public void serve() throws IOException {
+		while( !server.isClosed() ) {
+			final Socket connection;
+			try {
+				connection = server.accept();
+			}
+			catch( SocketException e ) {
+				if( server.isClosed() ) {
+					return;
+				}
+				throw e;
+			}
+
+			connections.add( connection );
+			executor.execute( new Runnable() {
+				@Override
+				public void run() {
+					handle( connection );
+				}
+			} );
+		}
+	}
+
+	/**
+	 * Stops accepting connections and ends every open session
+	 */
+	@Override
+	public void close() throws IOException {
+		server.close();
+		executor.shutdown();
+
+		for( Socket connection : connections ) {
+			try {
+				connection.close();
+			}
+			catch( IOException e ) {
+				// the session is ending anyway
+			}
+		}
+	}
+
+	private void handle( Socket connection ) {
+		try {
+			Enigma enigma = new Enigma();
+			enigma.shareCatalog( catalog );
+			enigma.setPrecomputeLimit( catalog.getPrecomputeLimit() );
+
+			BufferedReader reader = new BufferedReader( new InputStreamReader( connection.getInputStream(), CHARSET ) );
+			PrintStream out = new PrintStream( new BufferedOutputStream( connection.getOutputStream() ), false, CHARSET );
+
+			Session session = new Session( enigma, reader, out, out, false ) {
+				@Override
+				protected boolean reloadConfiguration() {
+					enigma.shareCatalog( catalog );
+					return true;
+				}
+			};
+			session.run();
+		}
+		catch( IOException e ) {
+			// connection dropped, nothing to answer
+		}
+		finally {
+			connections.remove( connection );
+			try {
+				connection.close();
+			}
+			catch( IOException e ) {
+				// already gone
+			}
+		}
+	}
+
+	// virtual threads need Java 21; looked up at run time so the build stays on older targets
+	static ExecutorService newExecutor() {
+		try {
+			Method method = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+			return (ExecutorService)method.invoke( null );
+		}
+		catch( Exception e ) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+}
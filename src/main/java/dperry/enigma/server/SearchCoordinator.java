@@ -0,0 +1,527 @@
+package dperry.enigma.server;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.analysis.KeySearch;
+import dperry.enigma.analysis.MachineKey;
+
+/**
+ * Hands a {@link KeySearch} out to {@link SearchWorker}s over TCP, for searches too large for
+ * one process. The search's units, one per rotor order and reflector, each covering every
+ * start position, are grouped into tasks of consecutive units, and each worker is given one
+ * task at a time.
+ *
+ * A task that is not finished when its worker disconnects goes back to be handed out again,
+ * and one that has been out longer than the lease is handed to a second worker as well, in
+ * case the first has hung; whichever finishes it first counts. A task's hits are only taken
+ * once it is finished, so every hit is reported exactly once.
+ *
+ * With a checkpoint file, every finished task and its hits are appended to it as they come
+ * in. Starting again with the same file, search and configuration skips what is already done
+ * and reports the hits found so far.
+ *
+ * The protocol is one line per message. The coordinator opens with "JOB digest job", see
+ * {@link SearchJob}; the worker then repeats "NEXT", answered by "UNITS first last" or by
+ * "DONE" once there is nothing left, and reports each hit as "FOUND key" followed by
+ * "COMPLETE first last". A worker that cannot run the job answers "ERROR message".
+ */
+public class SearchCoordinator implements Closeable {
+
+	/**
+	 * Receives results as they come in, from the connections' threads, so implementations
+	 * must be thread safe
+	 */
+	public interface Listener {
+		void progress( long searched, long total );
+
+		void found( MachineKey key );
+
+		/**
+		 * A worker turned the job down or broke the protocol and was dropped. The search carries
+		 * on with the other workers, so a worker that keeps being refused needs fixing by hand.
+		 */
+		void refused( String worker, String message );
+	}
+
+	public static final int DEFAULT_PORT = 6162;
+	public static final long DEFAULT_UNITS_PER_TASK = 1;
+	public static final long DEFAULT_LEASE_MILLIS = 10 * 60 * 1000;
+
+	static final String MSG_JOB = "JOB";
+	static final String MSG_NEXT = "NEXT";
+	static final String MSG_UNITS = "UNITS";
+	static final String MSG_DONE = "DONE";
+	static final String MSG_FOUND = "FOUND";
+	static final String MSG_COMPLETE = "COMPLETE";
+	static final String MSG_ERROR = "ERROR";
+
+	static final String CHARSET = "US-ASCII";
+
+	private static final int BACKLOG = 256;
+	private static final String CHECKPOINT_HEADER = "search";
+	private static final String CHECKPOINT_HIT = "hit";
+	private static final String CHECKPOINT_DONE = "done";
+
+	private final SearchJob job;
+	private final long digest;
+	private final long units;
+	private final long unitSize;
+	private final long unitsPerTask;
+	private final int tasks;
+	private final long leaseMillis;
+	private final Path checkpoint;
+
+	private final ServerSocket server;
+	private final ExecutorService executor;
+	private final Set<Socket> connections;
+
+	// everything below is guarded by the coordinator's lock
+
+	private final Object lock = new Object();
+	private final BitSet done;
+	private int doneCount;
+	// the next task never handed out
+	private int cursor;
+	// tasks given back by workers that left without finishing them
+	private final ArrayDeque<Task> returned = new ArrayDeque<Task>();
+	// tasks out with at least one worker, oldest lease first
+	private final Set<Task> leased = new LinkedHashSet<Task>();
+	private final List<MachineKey> hits = new ArrayList<MachineKey>();
+
+	private Listener listener;
+	private Writer log;
+	private IOException failure;
+	private boolean closed;
+
+	/**
+	 * Loads the checkpoint, if there is one, and starts listening
+	 *
+	 * @param enigma machine whose available rotors and reflectors are searched; its plugboard
+	 * and stepping are set for the job
+	 * @param bind address to listen on, loopback unless workers run on other hosts
+	 * @param port port to listen on, 0 for any free port
+	 * @param checkpoint file to record progress in, or null for none
+	 */
+	public SearchCoordinator( Enigma enigma, SearchJob job, InetAddress bind, int port, Path checkpoint, long unitsPerTask,
+			long leaseMillis ) throws Exception {
+		KeySearch search = job.createSearch( enigma );
+		if( unitsPerTask < 1 || ( search.getUnits() + unitsPerTask - 1 ) / unitsPerTask > Integer.MAX_VALUE ) {
+			throw new Exception( "Invalid units per task: " + unitsPerTask );
+		}
+
+		this.job = job;
+		this.digest = job.digest( enigma );
+		this.units = search.getUnits();
+		this.unitSize = search.getUnitSize();
+		this.unitsPerTask = unitsPerTask;
+		this.tasks = (int)( ( units + unitsPerTask - 1 ) / unitsPerTask );
+		this.leaseMillis = leaseMillis;
+		this.checkpoint = checkpoint;
+
+		done = new BitSet( tasks );
+		if( checkpoint != null && Files.exists( checkpoint ) ) {
+			load();
+		}
+
+		this.server = new ServerSocket( port, BACKLOG, bind );
+		this.executor = EnigmaServer.newExecutor();
+		this.connections = Collections.newSetFromMap( new ConcurrentHashMap<Socket, Boolean>() );
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Number of candidates in the whole search
+	 */
+	public long getTotal() {
+		return units * unitSize;
+	}
+
+	/**
+	 * Whether every task has been searched, which is only the case after {@link #run(Listener)}
+	 * returns if it was not closed part way
+	 */
+	public boolean isFinished() {
+		synchronized( lock ) {
+			return doneCount == tasks;
+		}
+	}
+
+	/**
+	 * Hits so far, including those read from the checkpoint
+	 */
+	public List<MachineKey> getHits() {
+		synchronized( lock ) {
+			return new ArrayList<MachineKey>( hits );
+		}
+	}
+
+	/**
+	 * Serves workers until every task is done, then closes
+	 *
+	 * @return every hit, including those read from the checkpoint
+	 */
+	public List<MachineKey> run( Listener listener ) throws IOException {
+		synchronized( lock ) {
+			this.listener = listener;
+			if( checkpoint != null ) {
+				boolean resumed = Files.exists( checkpoint );
+				log = new BufferedWriter( new OutputStreamWriter( Files.newOutputStream( checkpoint, StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND ), CHARSET ) );
+				if( resumed && !endsWithNewline() ) {
+					// finish a line cut off when the last run stopped, so it is skipped alone
+					log.write( "\n" );
+				}
+				if( !resumed ) {
+					log.write( CHECKPOINT_HEADER + " " + Long.toHexString( digest ) + " " + units + " " + unitsPerTask + "\n" );
+					log.flush();
+				}
+			}
+			for( MachineKey key : hits ) {
+				listener.found( key );
+			}
+			listener.progress( searched(), getTotal() );
+		}
+
+		executor.execute( new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		} );
+
+		try {
+			synchronized( lock ) {
+				while( doneCount < tasks && failure == null && !closed ) {
+					lock.wait();
+				}
+				if( failure != null ) {
+					throw failure;
+				}
+				return new ArrayList<MachineKey>( hits );
+			}
+		}
+		catch( InterruptedException e ) {
+			throw new IOException( "Interrupted" );
+		}
+		finally {
+			close();
+		}
+	}
+
+	/**
+	 * Stops serving; workers see the connection close
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized( lock ) {
+			closed = true;
+			lock.notifyAll();
+			if( log != null ) {
+				log.close();
+				log = null;
+			}
+		}
+		server.close();
+		executor.shutdown();
+
+		for( Socket connection : connections ) {
+			try {
+				connection.close();
+			}
+			catch( IOException e ) {
+				// the worker is being let go anyway
+			}
+		}
+	}
+
+	private void accept() {
+		while( !server.isClosed() ) {
+			final Socket connection;
+			try {
+				connection = server.accept();
+			}
+			catch( IOException e ) {
+				return;
+			}
+
+			connections.add( connection );
+			executor.execute( new Runnable() {
+				@Override
+				public void run() {
+					handle( connection );
+				}
+			} );
+		}
+	}
+
+	private void handle( Socket connection ) {
+		Task current = null;
+		List<MachineKey> found = new ArrayList<MachineKey>();
+		try {
+			BufferedReader reader = new BufferedReader( new InputStreamReader( connection.getInputStream(), CHARSET ) );
+			PrintStream out = new PrintStream( new BufferedOutputStream( connection.getOutputStream() ), false, CHARSET );
+
+			out.println( MSG_JOB + " " + Long.toHexString( digest ) + " " + job );
+			out.flush();
+
+			String line;
+			while( ( line = reader.readLine() ) != null ) {
+				if( line.equals( MSG_NEXT ) ) {
+					if( current != null ) {
+						release( current );
+					}
+					current = assign();
+					found.clear();
+					if( current == null ) {
+						out.println( MSG_DONE );
+						out.flush();
+						break;
+					}
+					out.println( MSG_UNITS + " " + current.first + " " + current.last );
+					out.flush();
+				}
+				else if( line.startsWith( MSG_FOUND + " " ) && current != null ) {
+					found.add( MachineKey.parse( line.substring( MSG_FOUND.length() + 1 ) ) );
+				}
+				else if( current != null && line.equals( MSG_COMPLETE + " " + current.first + " " + current.last ) ) {
+					complete( current, found );
+					current = null;
+				}
+				else {
+					// an error or something this side does not understand; the worker is dropped
+					String worker = String.valueOf( connection.getRemoteSocketAddress() );
+					if( line.startsWith( MSG_ERROR + " " ) ) {
+						listener.refused( worker, line.substring( MSG_ERROR.length() + 1 ) );
+					}
+					else {
+						listener.refused( worker, "Unexpected message: " + line );
+					}
+					break;
+				}
+			}
+		}
+		catch( Exception e ) {
+			// a garbled message or a dropped connection; the task goes back either way
+		}
+		finally {
+			if( current != null ) {
+				release( current );
+			}
+			connections.remove( connection );
+			try {
+				connection.close();
+			}
+			catch( IOException e ) {
+				// already gone
+			}
+		}
+	}
+
+	/**
+	 * Returns the next task to work on, waiting while every task left is out with a worker
+	 * whose lease has not run out, or null once all are done
+	 */
+	private Task assign() throws InterruptedException {
+		synchronized( lock ) {
+			while( true ) {
+				if( doneCount == tasks || closed || failure != null ) {
+					return null;
+				}
+
+				Task task = returned.poll();
+				while( task != null && done.get( task.index ) ) {
+					task = returned.poll();
+				}
+				if( task == null && cursor < tasks ) {
+					int index = done.nextClearBit( cursor );
+					if( index < tasks ) {
+						task = new Task( index );
+					}
+					cursor = index + 1;
+				}
+
+				long now = System.currentTimeMillis();
+				long wait = leaseMillis;
+				if( task == null ) {
+					// the oldest lease, handed out again if it has run out
+					for( Task out : leased ) {
+						if( out.deadline <= now ) {
+							task = out;
+						}
+						else {
+							wait = out.deadline - now;
+						}
+						break;
+					}
+				}
+
+				if( task != null ) {
+					leased.remove( task );
+					task.deadline = now + leaseMillis;
+					task.holders++;
+					leased.add( task );
+					return task;
+				}
+				lock.wait( Math.max( wait, 1 ) );
+			}
+		}
+	}
+
+	/**
+	 * Gives a task back when its worker leaves without finishing it
+	 */
+	private void release( Task task ) {
+		synchronized( lock ) {
+			if( --task.holders == 0 && leased.remove( task ) && !done.get( task.index ) ) {
+				returned.add( task );
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private void complete( Task task, List<MachineKey> found ) {
+		synchronized( lock ) {
+			task.holders--;
+			if( done.get( task.index ) ) {
+				// finished by another worker after its lease ran out
+				return;
+			}
+			try {
+				if( log != null ) {
+					for( MachineKey key : found ) {
+						log.write( CHECKPOINT_HIT + " " + key + "\n" );
+					}
+					log.write( CHECKPOINT_DONE + " " + task.first + " " + task.last + "\n" );
+					log.flush();
+				}
+			}
+			catch( IOException e ) {
+				failure = e;
+			}
+
+			done.set( task.index );
+			doneCount++;
+			leased.remove( task );
+			hits.addAll( found );
+			for( MachineKey key : found ) {
+				listener.found( key );
+			}
+			listener.progress( searched(), getTotal() );
+			lock.notifyAll();
+		}
+	}
+
+	private long searched() {
+		long searched = (long)doneCount * unitsPerTask;
+		// the last task may be short
+		if( done.get( tasks - 1 ) ) {
+			searched -= (long)tasks * unitsPerTask - units;
+		}
+		return searched * unitSize;
+	}
+
+	/**
+	 * Reads back finished tasks and their hits. A task's hits come just before the line that
+	 * marks it done, so hits of a task cut off part way, without that line, are left out.
+	 */
+	private void load() throws IOException {
+		List<String> lines = Files.readAllLines( checkpoint, Charset.forName( CHARSET ) );
+		String header = CHECKPOINT_HEADER + " " + Long.toHexString( digest ) + " " + units + " " + unitsPerTask;
+		if( lines.isEmpty() || !lines.get( 0 ).equals( header ) ) {
+			throw new IOException( "Checkpoint is from a different search: " + checkpoint );
+		}
+
+		List<MachineKey> pending = new ArrayList<MachineKey>();
+		for( String line : lines.subList( 1, lines.size() ) ) {
+			try {
+				if( line.startsWith( CHECKPOINT_HIT + " " ) ) {
+					pending.add( MachineKey.parse( line.substring( CHECKPOINT_HIT.length() + 1 ) ) );
+				}
+				else if( line.startsWith( CHECKPOINT_DONE + " " ) ) {
+					String[] range = line.split( " " );
+					long first = Long.parseLong( range[1] );
+					int index = (int)( first / unitsPerTask );
+					if( range.length != 3 || first < 0 || first % unitsPerTask != 0 || index >= tasks
+							|| Long.parseLong( range[2] ) != Math.min( first + unitsPerTask, units ) ) {
+						throw new Exception( "Invalid task" );
+					}
+					if( !done.get( index ) ) {
+						done.set( index );
+						doneCount++;
+						hits.addAll( pending );
+					}
+					pending.clear();
+				}
+				else {
+					throw new Exception( "Unknown line" );
+				}
+			}
+			catch( Exception e ) {
+				// a line cut off when the coordinator stopped, and with it the task it was part of
+				pending.clear();
+			}
+		}
+	}
+
+	private boolean endsWithNewline() throws IOException {
+		FileChannel channel = FileChannel.open( checkpoint, StandardOpenOption.READ );
+		try {
+			if( channel.size() == 0 ) {
+				return true;
+			}
+			ByteBuffer last = ByteBuffer.allocate( 1 );
+			channel.read( last, channel.size() - 1 );
+			return last.get( 0 ) == '\n';
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	private class Task {
+
+		final int index;
+		final long first;
+		final long last;
+
+		// when the latest lease runs out, and how many workers have it
+		long deadline;
+		int holders;
+
+		Task( int index ) {
+			this.index = index;
+			this.first = index * unitsPerTask;
+			this.last = Math.min( first + unitsPerTask, units );
+		}
+	}
+}
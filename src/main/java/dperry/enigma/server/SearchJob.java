@@ -0,0 +1,114 @@
+package dperry.enigma.server;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Fnv;
+import dperry.enigma.analysis.KeySearch;
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Everything a worker needs, besides its own copy of the configuration, to run the same
+ * {@link KeySearch} as the coordinator: the cipher text and crib, how many rotors to choose,
+ * the plugboard and how the machine steps. It travels as one line of text.
+ */
+public class SearchJob {
+
+	private static final String NO_PLUGBOARD = "-";
+
+	private final int rotorCount;
+	private final String ciphertext;
+	private final String crib;
+	private final int cribOffset;
+	private final String plugboard;
+	private final Stepping stepping;
+	private final boolean advanceRotors;
+	private final boolean advanceReflector;
+
+	/**
+	 * @param plugboard comma separated pairs, e.g. "AB,CD", or null for none
+	 */
+	public SearchJob( int rotorCount, String ciphertext, String crib, int cribOffset, String plugboard, Stepping stepping,
+			boolean advanceRotors, boolean advanceReflector ) {
+		this.rotorCount = rotorCount;
+		this.ciphertext = ciphertext;
+		this.crib = crib;
+		this.cribOffset = cribOffset;
+		this.plugboard = plugboard != null && !plugboard.isEmpty() ? plugboard.toUpperCase() : null;
+		this.stepping = stepping;
+		this.advanceRotors = advanceRotors;
+		this.advanceReflector = advanceReflector;
+	}
+
+	/**
+	 * Reads a job written by {@link #toString()}
+	 */
+	public static SearchJob parse( String line ) throws Exception {
+		String[] fields = line.trim().split( " " );
+		if( fields.length != 7 ) {
+			throw new Exception( "Invalid search job: " + line );
+		}
+		try {
+			return new SearchJob( Integer.parseInt( fields[0] ), fields[6], fields[5], Integer.parseInt( fields[1] ),
+					fields[2].equals( NO_PLUGBOARD ) ? null : fields[2], Stepping.valueOf( fields[3] ),
+					fields[4].indexOf( 'R' ) >= 0, fields[4].indexOf( 'F' ) >= 0 );
+		}
+		catch( IllegalArgumentException e ) {
+			throw new Exception( "Invalid search job: " + line );
+		}
+	}
+
+	/**
+	 * Sets the machine's plugboard and stepping for the job and returns the search over its
+	 * available rotors and reflectors
+	 */
+	public KeySearch createSearch( Enigma enigma ) throws Exception {
+		enigma.resetPlugboard();
+		if( plugboard != null ) {
+			for( String pair : plugboard.split( "," ) ) {
+				if( pair.length() != 2 || !enigma.addPlugboardConnection( pair.charAt( 0 ), pair.charAt( 1 ) ) ) {
+					throw new Exception( "Invalid plugboard connection: " + pair );
+				}
+			}
+		}
+		enigma.setStepping( stepping );
+		enigma.setAdvanceRotors( advanceRotors );
+		enigma.setAdvanceReflector( advanceReflector );
+
+		return new KeySearch( enigma, rotorCount, ciphertext.toCharArray(), crib.toCharArray(), cribOffset );
+	}
+
+	/**
+	 * Identifies the job together with the rotors and reflectors it searches, in order, since
+	 * unit numbers only mean the same thing to machines with the same catalog
+	 */
+	public long digest( Enigma enigma ) {
+		long hash = Fnv.mix( Fnv.OFFSET, toString() );
+		for( Rotor rotor : enigma.getCatalog().getRotors() ) {
+			hash = Fnv.mix( hash, rotor.getName() );
+			for( int connection : rotor.getConnections() ) {
+				hash = Fnv.mix( hash, connection );
+			}
+			for( int position : rotor.getTurnover() ) {
+				hash = Fnv.mix( hash, position );
+			}
+		}
+		for( Reflector reflector : enigma.getCatalog().getReflectors() ) {
+			hash = Fnv.mix( hash, reflector.getName() );
+			for( int connection : reflector.getPairs() ) {
+				hash = Fnv.mix( hash, connection );
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Formats the job as "rotorCount cribOffset plugboard stepping flags crib ciphertext",
+	 * flags holding R when the rotors advance and F when the reflector follows
+	 */
+	public String toString() {
+		return rotorCount + " " + cribOffset + " " + ( plugboard != null ? plugboard : NO_PLUGBOARD ) + " " + stepping.name() + " "
+				+ ( advanceRotors ? "R" : "" ) + ( advanceReflector ? "F" : "" ) + ( advanceRotors || advanceReflector ? "" : "-" ) + " "
+				+ crib + " " + ciphertext;
+	}
+}
@@ -0,0 +1,115 @@
+package dperry.enigma.server;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.concurrent.ForkJoinPool;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.analysis.KeySearch;
+import dperry.enigma.analysis.MachineKey;
+
+/**
+ * Works through tasks from a {@link SearchCoordinator} until it says there are none left. Each
+ * task is a range of units searched with {@link KeySearch#search(long, long, KeySearch.Listener, ForkJoinPool)}
+ * on all of the pool's threads, and its hits are sent back as they are found.
+ *
+ * The worker reads its rotors and reflectors from its own configuration, which must be the
+ * same as the coordinator's; a job whose digest does not match is refused.
+ */
+public class SearchWorker {
+
+	private final Enigma enigma;
+	private final String host;
+	private final int port;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param enigma machine with the configuration imported; its plugboard and stepping are
+	 * set for the job
+	 */
+	public SearchWorker( Enigma enigma, String host, int port, ForkJoinPool pool ) {
+		this.enigma = enigma;
+		this.host = host;
+		this.port = port;
+		this.pool = pool;
+	}
+
+	/**
+	 * Connects and works until the coordinator is done or goes away
+	 *
+	 * @return the number of units searched
+	 */
+	public long run() throws Exception {
+		long searched = 0;
+		Socket socket = new Socket( host, port );
+		try {
+			BufferedReader reader = new BufferedReader( new InputStreamReader( socket.getInputStream(), SearchCoordinator.CHARSET ) );
+			final PrintStream out = new PrintStream( new BufferedOutputStream( socket.getOutputStream() ), false, SearchCoordinator.CHARSET );
+
+			String line = reader.readLine();
+			if( line == null || !line.startsWith( SearchCoordinator.MSG_JOB + " " ) ) {
+				throw new IOException( "Not a search coordinator: " + host + ":" + port );
+			}
+			String[] fields = line.split( " ", 3 );
+
+			KeySearch search;
+			try {
+				SearchJob job = SearchJob.parse( fields[2] );
+				search = job.createSearch( enigma );
+				if( Long.parseUnsignedLong( fields[1], 16 ) != job.digest( enigma ) ) {
+					throw new Exception( "Configuration differs from the coordinator's" );
+				}
+			}
+			catch( Exception e ) {
+				out.println( SearchCoordinator.MSG_ERROR + " " + e.getMessage() );
+				out.flush();
+				throw e;
+			}
+
+			KeySearch.Listener listener = new KeySearch.Listener() {
+				public void progress( long searched, long total ) {
+				}
+
+				public void found( MachineKey key ) {
+					synchronized( out ) {
+						out.println( SearchCoordinator.MSG_FOUND + " " + key );
+					}
+				}
+			};
+
+			while( true ) {
+				out.println( SearchCoordinator.MSG_NEXT );
+				out.flush();
+				if( out.checkError() ) {
+					throw new IOException( "Lost the coordinator" );
+				}
+
+				line = reader.readLine();
+				if( line == null || line.equals( SearchCoordinator.MSG_DONE ) ) {
+					// closed once the last task was in, or finished
+					return searched;
+				}
+				if( !line.startsWith( SearchCoordinator.MSG_UNITS + " " ) ) {
+					throw new IOException( "Unexpected message: " + line );
+				}
+
+				String[] range = line.split( " " );
+				long first = Long.parseLong( range[1] );
+				long last = Long.parseLong( range[2] );
+				search.search( first, last, listener, pool );
+
+				synchronized( out ) {
+					out.println( SearchCoordinator.MSG_COMPLETE + " " + first + " " + last );
+				}
+				searched += last - first;
+			}
+		}
+		finally {
+			socket.close();
+		}
+	}
+}
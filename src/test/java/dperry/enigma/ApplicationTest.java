@@ -0,0 +1,141 @@
+package dperry.enigma;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ApplicationTest {
+
+	private static final String CHARSET = "US-ASCII";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File config;
+	private PrintStream systemErr;
+	private ByteArrayOutputStream err;
+
+	@Before
+	public void setUp() throws Exception {
+		config = folder.newFile( Application.DEFAULT_CONFIG );
+		InputStream resource = getClass().getResourceAsStream( "/" + Application.DEFAULT_CONFIG );
+		try {
+			Files.copy( resource, config.toPath(), StandardCopyOption.REPLACE_EXISTING );
+		}
+		finally {
+			resource.close();
+		}
+
+		systemErr = System.err;
+		err = new ByteArrayOutputStream();
+		System.setErr( new PrintStream( err, true, CHARSET ) );
+	}
+
+	@After
+	public void tearDown() {
+		System.setErr( systemErr );
+	}
+
+	@Test
+	public void batchWritesOneLinePerMessage() throws Exception {
+		File out = folder.newFile();
+		int status = batch( out, "add rotor alpha", "add rotor gamma", "set reflector zulu", "set positions CQ D",
+				"add connection AK", "# a comment is not a command", "encode hello world", "encode attack at dawn", "encode",
+				"the message on the next line", "quit", "encode after quit" );
+
+		Enigma enigma = machine( "alpha", "gamma" );
+		enigma.getCurrentRotors().get( 0 ).reset( 'C' - 'A' );
+		enigma.getCurrentRotors().get( 1 ).reset( 'Q' - 'A' );
+		enigma.getCurrentReflector().reset( 'D' - 'A' );
+		enigma.addPlugboardConnection( 'A', 'K' );
+
+		assertEquals( errors(), Application.EXIT_OK, status );
+		assertEquals( "", errors() );
+		assertEquals( Arrays.asList( grouped( enigma, "HELLOWORLD" ), grouped( enigma, "ATTACKATDAWN" ),
+				grouped( enigma, "THEMESSAGEONTHENEXTLINE" ) ), lines( out ) );
+	}
+
+	@Test
+	public void batchReportsFailedCommands() throws Exception {
+		File out = folder.newFile();
+		int status = batch( out, "add rotor nosuch", "encode ABC", "add rotor beta", "set reflector zulu", "encode ABC" );
+
+		assertEquals( Application.EXIT_FAILED, status );
+		assertEquals( Application.PREFIX_ERR + "line 1: Unknown rotor: nosuch\n"
+				+ Application.PREFIX_ERR + "line 2: Machine is not ready\n", errors() );
+		// the machine is still used once it is ready
+		assertEquals( Arrays.asList( grouped( machine( "beta" ), "ABC" ) ), lines( out ) );
+	}
+
+	@Test
+	public void batchWithoutScriptFailsToRead() throws Exception {
+		int status = new Application().run( new String[]{ Application.CMD_BATCH, Application.ARG_CONFIG, config.getPath(),
+				Application.ARG_IN, new File( folder.getRoot(), "missing" ).getPath() } );
+		assertEquals( Application.EXIT_IO, status );
+		assertTrue( errors(), errors().startsWith( Application.PREFIX_ERR + "IOException: " ) );
+	}
+
+	private int batch( File out, String... script ) throws Exception {
+		File in = folder.newFile();
+		StringBuilder text = new StringBuilder();
+		for( String line : script ) {
+			text.append( line ).append( '\n' );
+		}
+		Files.write( in.toPath(), text.toString().getBytes( CHARSET ) );
+		return new Application().run( new String[]{ Application.CMD_BATCH, Application.ARG_CONFIG, config.getPath(),
+				Application.ARG_IN, in.getPath(), Application.ARG_OUT, out.getPath() } );
+	}
+
+	/**
+	 * A machine with the named rotors from the configuration and its reflector zulu
+	 */
+	private Enigma machine( String... rotors ) throws Exception {
+		Enigma enigma = new Enigma();
+		enigma.importConfiguration( new ByteArrayInputStream( Files.readAllBytes( config.toPath() ) ), false );
+		for( String rotor : rotors ) {
+			enigma.addRotor( enigma.getCatalog().getRotor( rotor ) );
+		}
+		enigma.setReflector( enigma.getCatalog().getReflector( "zulu" ) );
+		return enigma;
+	}
+
+	/**
+	 * Encodes the text in groups of five, as encode writes it
+	 */
+	private static String grouped( Enigma enigma, String text ) throws Exception {
+		char[] letters = text.toCharArray();
+		enigma.convert( letters );
+		StringBuilder groups = new StringBuilder();
+		for( int i = 0; i < letters.length; i++ ) {
+			if( i > 0 && i % 5 == 0 ) {
+				groups.append( ' ' );
+			}
+			groups.append( letters[i] );
+		}
+		return groups.toString();
+	}
+
+	private static List<String> lines( File file ) throws Exception {
+		return Files.readAllLines( file.toPath(), Charset.forName( CHARSET ) );
+	}
+
+	private String errors() throws Exception {
+		return err.toString( CHARSET ).replace( "\r\n", "\n" );
+	}
+}
@@ -0,0 +1,117 @@
+package dperry.enigma;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dperry.enigma.engine.CompiledEnigma;
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+public class EnigmaTest {
+
+	private static final int MACHINES = 200;
+
+	@Test
+	public void seekMatchesConverting() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < MACHINES; seed++ ) {
+				// the same seed builds the same machine twice
+				Enigma converted = Machines.enigma( new Random( seed ), stepping, 4, true );
+				Enigma sought = Machines.enigma( new Random( seed ), stepping, 4, true );
+				Random random = new Random( -seed - 1 );
+				int count = random.nextInt( 5000 );
+
+				for( char letter : Machines.letters( random, count ) ) {
+					converted.convert( letter );
+				}
+				sought.seek( count );
+
+				String message = stepping + " seed " + seed + " count " + count;
+				assertArrayEquals( message, Machines.positions( converted ), Machines.positions( sought ) );
+				assertEquals( message, converted.getCurrentReflector().getPosition(), sought.getCurrentReflector().getPosition() );
+			}
+		}
+	}
+
+	@Test
+	public void stateAtLeavesMachineInPlace() throws Exception {
+		Enigma enigma = Machines.enigma( new Random( 7 ), Stepping.DOUBLE, 4, false );
+		int[] positions = Machines.positions( enigma );
+
+		CompiledEnigma ahead = enigma.stateAt( 1000 );
+		CompiledEnigma expected = enigma.compile();
+		expected.skip( 1000 );
+		assertArrayEquals( positions, Machines.positions( enigma ) );
+		assertArrayEquals( expected.getPositions(), ahead.getPositions() );
+		assertEquals( expected.getReflectorPosition(), ahead.getReflectorPosition() );
+	}
+
+	@Test
+	public void restoreReturnsToSnapshot() throws Exception {
+		for( int seed = 0; seed < MACHINES; seed++ ) {
+			Random random = new Random( seed );
+			Enigma enigma = Machines.enigma( random, Stepping.values()[seed % 2], 4, true );
+			byte[] snapshot = enigma.snapshot();
+
+			char[] letters = Machines.letters( random, 200 );
+			char[] first = letters.clone();
+			enigma.convert( first );
+
+			enigma.restore( snapshot );
+			char[] second = letters.clone();
+			enigma.convert( second );
+			assertArrayEquals( "seed " + seed, first, second );
+		}
+	}
+
+	@Test
+	public void restoreRejectsOtherMachine() throws Exception {
+		byte[] snapshot = Machines.enigma( new Random( 1 ), Stepping.ODOMETER, 3, false ).snapshot();
+		Enigma other = Machines.enigma( new Random( 2 ), Stepping.ODOMETER, 3, false );
+		try {
+			other.restore( snapshot );
+			fail( "A snapshot of another machine was restored" );
+		}
+		catch( Exception e ) {
+			// expected
+		}
+	}
+
+	@Test
+	@SuppressWarnings( "deprecation" )
+	public void availablePartsAreCopies() throws Exception {
+		Enigma enigma = new Enigma();
+		enigma.setCatalog( Machines.catalog( new Random( 1 ), 3, 2 ) );
+
+		assertArrayEquals( new String[]{ "r0", "r1", "r2" }, enigma.availableRotors() );
+		assertArrayEquals( new String[]{ "u0", "u1" }, enigma.availableReflectors() );
+
+		ArrayList<Rotor> rotors = enigma.getAvailableRotors();
+		ArrayList<Reflector> reflectors = enigma.getAvailableReflectors();
+		assertEquals( enigma.getCatalog().getRotors(), rotors );
+		assertEquals( enigma.getCatalog().getReflectors(), reflectors );
+		rotors.clear();
+		reflectors.remove( 0 );
+		assertEquals( 3, enigma.getCatalog().getRotors().size() );
+		assertEquals( 2, enigma.getCatalog().getReflectors().size() );
+	}
+
+	@Test
+	public void seekBackwardsFails() throws Exception {
+		Enigma enigma = Machines.enigma( new Random( 1 ), Stepping.ODOMETER, 3, false );
+		try {
+			enigma.seek( -1 );
+			fail( "Seeking backwards was accepted" );
+		}
+		catch( Exception e ) {
+			assertEquals( "Cannot seek backwards", e.getMessage() );
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package dperry.enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.parts.Catalog;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+/**
+ * Random machines for the tests, built from a seed so a failure can be repeated
+ */
+public final class Machines {
+
+	private Machines() {
+	}
+
+	/**
+	 * Wiring that connects each of size symbols to a different one
+	 */
+	public static Integer[] permutation( Random random, int size ) {
+		List<Integer> symbols = new ArrayList<Integer>();
+		for( int i = 0; i < size; i++ ) {
+			symbols.add( i );
+		}
+		Collections.shuffle( symbols, random );
+		return symbols.toArray( new Integer[size] );
+	}
+
+	/**
+	 * Wiring that pairs every one of size symbols with another, both ways; size must be even
+	 */
+	public static Integer[] pairs( Random random, int size ) {
+		Integer[] order = permutation( random, size );
+		Integer[] pairs = new Integer[size];
+		for( int i = 0; i < size; i += 2 ) {
+			pairs[order[i]] = order[i + 1];
+			pairs[order[i + 1]] = order[i];
+		}
+		return pairs;
+	}
+
+	/**
+	 * A rotor for an alphabet of size symbols with one to three notches; two of them are next to each other when adjacent is
+	 * set, and none are otherwise
+	 */
+	public static Rotor rotor( Random random, int size, boolean adjacent ) {
+		List<Integer> turnover = new ArrayList<Integer>();
+		int first = random.nextInt( size );
+		turnover.add( first );
+		if( adjacent ) {
+			turnover.add( ( first + 1 ) % size );
+		}
+		int notches = 1 + random.nextInt( 3 );
+		while( turnover.size() < notches ) {
+			int position = random.nextInt( size );
+			if( !turnover.contains( position ) && ( adjacent
+					|| !turnover.contains( ( position + 1 ) % size ) && !turnover.contains( ( position + size - 1 ) % size ) ) ) {
+				turnover.add( position );
+			}
+		}
+		return new Rotor( "r" + random.nextInt( 1000 ), permutation( random, size ), turnover.toArray( new Integer[0] ) );
+	}
+
+	/**
+	 * A machine with up to rotorLimit rotors at random positions, a reflector, up to ten
+	 * plugboard pairs and a random choice of whether the reflector advances. Notches next to
+	 * each other are only used when adjacent is set. The same seed always builds the same
+	 * machine.
+	 */
+	public static Enigma enigma( Random random, Stepping stepping, int rotorLimit, boolean adjacent ) {
+		Enigma enigma = new Enigma();
+		int rotors = 1 + random.nextInt( rotorLimit );
+		for( int i = 0; i < rotors; i++ ) {
+			enigma.addRotor( rotor( random, Rotor.ROTOR_SIZE, adjacent && random.nextInt( 3 ) == 0 ) );
+			enigma.getCurrentRotors().get( i ).reset( random.nextInt( Rotor.ROTOR_SIZE ) );
+		}
+		enigma.setReflector( new Reflector( "x", pairs( random, Rotor.ROTOR_SIZE ) ) );
+		enigma.getCurrentReflector().reset( random.nextInt( Rotor.ROTOR_SIZE ) );
+
+		int connections = random.nextInt( 11 );
+		for( int i = 0; i < connections; i++ ) {
+			enigma.addPlugboardConnection( letter( random ), letter( random ) );
+		}
+
+		enigma.setStepping( stepping );
+		enigma.setAdvanceReflector( random.nextBoolean() );
+		return enigma;
+	}
+
+	/**
+	 * A catalog of rotors named r0, r1... and reflectors named u0, u1... for the letters
+	 */
+	public static Catalog catalog( Random random, int rotors, int reflectors ) {
+		List<Rotor> rotorList = new ArrayList<Rotor>();
+		for( int i = 0; i < rotors; i++ ) {
+			Rotor rotor = rotor( random, Rotor.ROTOR_SIZE, false );
+			rotorList.add( new Rotor( "r" + i, boxed( rotor.getConnections() ), boxed( rotor.getTurnover() ) ) );
+		}
+		List<Reflector> reflectorList = new ArrayList<Reflector>();
+		for( int i = 0; i < reflectors; i++ ) {
+			reflectorList.add( new Reflector( "u" + i, pairs( random, Rotor.ROTOR_SIZE ) ) );
+		}
+		return new Catalog( rotorList, reflectorList );
+	}
+
+	public static char letter( Random random ) {
+		return (char)( 'A' + random.nextInt( Rotor.ROTOR_SIZE ) );
+	}
+
+	public static char[] letters( Random random, int length ) {
+		char[] letters = new char[length];
+		for( int i = 0; i < length; i++ ) {
+			letters[i] = letter( random );
+		}
+		return letters;
+	}
+
+	/**
+	 * The rotor positions of an interpreted machine, first rotor first
+	 */
+	public static int[] positions( Enigma enigma ) {
+		int[] positions = new int[enigma.getCurrentRotors().size()];
+		for( int r = 0; r < positions.length; r++ ) {
+			positions[r] = enigma.getCurrentRotors().get( r ).getPosition();
+		}
+		return positions;
+	}
+
+	private static Integer[] boxed( int[] values ) {
+		Integer[] boxed = new Integer[values.length];
+		for( int i = 0; i < values.length; i++ ) {
+			boxed[i] = values[i];
+		}
+		return boxed;
+	}
+}
@@ -0,0 +1,112 @@
+package dperry.enigma.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Machines;
+import dperry.enigma.engine.CompiledEnigma;
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.parts.Rotor;
+
+public class BatchKeyEvaluatorTest {
+
+	private static final int MACHINES = 30;
+
+	@Test
+	public void matchAgreesWithCompiled() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < MACHINES; seed++ ) {
+				Random random = new Random( seed );
+				Enigma enigma = Machines.enigma( random, stepping, 4, seed % 3 == 0 );
+				CompiledEnigma machine = enigma.compile();
+				int rotorCount = enigma.getCurrentRotors().size();
+
+				char[] cipher = Machines.letters( random, 200 );
+				int keyCount = 1 + random.nextInt( 700 );
+				int[][] positions = new int[rotorCount][keyCount];
+				int[] reflectorPositions = new int[keyCount];
+				randomKeys( random, positions, reflectorPositions );
+
+				// a short crib that one of the keys surely gives, so others match by chance too
+				int cribOffset = random.nextInt( 150 );
+				char[] planted = decrypt( machine, positions, reflectorPositions, random.nextInt( keyCount ), cipher );
+				char[] crib = Arrays.copyOfRange( planted, cribOffset, cribOffset + 1 + random.nextInt( 2 ) );
+
+				int lanes = 1 + random.nextInt( 64 );
+				boolean[] matches = new boolean[keyCount];
+				int matched = new BatchKeyEvaluator( enigma, cipher, lanes ).match( positions, reflectorPositions, keyCount, crib, cribOffset, matches );
+
+				int expectedMatched = 0;
+				for( int k = 0; k < keyCount; k++ ) {
+					char[] plain = decrypt( machine, positions, reflectorPositions, k, cipher );
+					boolean expected = Arrays.equals( crib, Arrays.copyOfRange( plain, cribOffset, cribOffset + crib.length ) );
+					assertEquals( stepping + " seed " + seed + " key " + k, expected, matches[k] );
+					if( expected ) {
+						expectedMatched++;
+					}
+				}
+				assertEquals( stepping + " seed " + seed, expectedMatched, matched );
+			}
+		}
+	}
+
+	@Test
+	public void scoreAgreesWithCompiled() throws Exception {
+		Scorer scorer = new IndexOfCoincidence();
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < MACHINES; seed++ ) {
+				Random random = new Random( seed );
+				Enigma enigma = Machines.enigma( random, stepping, 4, seed % 3 == 0 );
+				CompiledEnigma machine = enigma.compile();
+				int rotorCount = enigma.getCurrentRotors().size();
+
+				char[] cipher = Machines.letters( random, 1 + random.nextInt( 120 ) );
+				int keyCount = 1 + random.nextInt( 300 );
+				int[][] positions = new int[rotorCount][keyCount];
+				int[] reflectorPositions = new int[keyCount];
+				randomKeys( random, positions, reflectorPositions );
+
+				double[] scores = new double[keyCount];
+				new BatchKeyEvaluator( enigma, cipher, 1 + random.nextInt( 64 ) ).score( positions, reflectorPositions, keyCount, scorer, scores );
+
+				for( int k = 0; k < keyCount; k++ ) {
+					char[] plain = decrypt( machine, positions, reflectorPositions, k, cipher );
+					byte[] values = new byte[plain.length];
+					for( int i = 0; i < plain.length; i++ ) {
+						values[i] = (byte)( plain[i] - 'A' );
+					}
+					assertEquals( stepping + " seed " + seed + " key " + k, scorer.score( values, 0, values.length ), scores[k], 0 );
+				}
+			}
+		}
+	}
+
+	private static void randomKeys( Random random, int[][] positions, int[] reflectorPositions ) {
+		for( int k = 0; k < reflectorPositions.length; k++ ) {
+			for( int r = 0; r < positions.length; r++ ) {
+				positions[r][k] = random.nextInt( Rotor.ROTOR_SIZE );
+			}
+			reflectorPositions[k] = random.nextInt( Rotor.ROTOR_SIZE );
+		}
+	}
+
+	/**
+	 * Decrypts the cipher text on a compiled machine started at key k
+	 */
+	private static char[] decrypt( CompiledEnigma machine, int[][] positions, int[] reflectorPositions, int k, char[] cipher ) {
+		int[] start = new int[positions.length];
+		for( int r = 0; r < start.length; r++ ) {
+			start[r] = positions[r][k];
+		}
+		CompiledEnigma copy = new CompiledEnigma( machine );
+		copy.setPositions( start, reflectorPositions[k] );
+		char[] plain = new char[cipher.length];
+		copy.convert( cipher, 0, plain, 0, cipher.length );
+		return plain;
+	}
+}
@@ -0,0 +1,157 @@
+package dperry.enigma.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CribScannerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void placementsMatchNaiveSearch() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool( 3 );
+		try {
+			for( int seed = 0; seed < 40; seed++ ) {
+				Random random = new Random( seed );
+				// a small alphabet, so a crib fits in few places and any slip shows
+				int alphabet = 2 + random.nextInt( 4 );
+				char[] cipher = letters( random, random.nextInt( 3000 ), alphabet );
+
+				// lengths around the word size and longer than a block
+				int[] lengths = new int[]{ 1, 2 + random.nextInt( 10 ), 63, 64, 65, 129 + random.nextInt( 100 ) };
+				char[][] cribs = new char[lengths.length][];
+				for( int c = 0; c < cribs.length; c++ ) {
+					cribs[c] = letters( random, lengths[c], c < 2 ? alphabet : 26 );
+				}
+				int blockSize = 64 * ( 1 + random.nextInt( 4 ) );
+				CribScanner scanner = new CribScanner( cribs, blockSize );
+
+				List<List<Long>> expected = naive( cipher, cribs );
+				String message = "seed " + seed + " block " + blockSize + " letters " + cipher.length;
+
+				Recorder text = new Recorder( cribs.length );
+				scanner.scan( cipher, text, pool );
+				assertEquals( message, expected, text.found );
+
+				// the same letters in a file, in lower case and with other characters between them
+				Path file = folder.newFile().toPath();
+				StringBuilder contents = new StringBuilder();
+				for( char letter : cipher ) {
+					contents.append( random.nextBoolean() ? letter : Character.toLowerCase( letter ) );
+					if( random.nextInt( 5 ) == 0 ) {
+						contents.append( random.nextBoolean() ? ' ' : '\n' );
+					}
+				}
+				Files.write( file, contents.toString().getBytes( "US-ASCII" ) );
+				Recorder files = new Recorder( cribs.length );
+				scanner.scan( Collections.singletonList( file ), files, pool );
+				assertEquals( message, expected, files.found );
+				assertEquals( message, cipher.length, files.letters.get() );
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void placeMatchesNaiveSearchOnOneBlock() throws Exception {
+		for( int seed = 0; seed < 200; seed++ ) {
+			Random random = new Random( seed );
+			char[][] cribs = new char[1 + random.nextInt( 4 )][];
+			for( int c = 0; c < cribs.length; c++ ) {
+				cribs[c] = letters( random, 1 + random.nextInt( 150 ), 26 );
+			}
+			CribScanner scanner = new CribScanner( cribs, 64 );
+
+			char[] cipher = letters( random, random.nextInt( 400 ), 3 );
+			byte[] bytes = new byte[cipher.length];
+			for( int i = 0; i < cipher.length; i++ ) {
+				bytes[i] = (byte)cipher[i];
+			}
+			int starts = random.nextInt( cipher.length + 1 );
+			long[][] legal = scanner.place( bytes, cipher.length, starts );
+
+			List<List<Long>> expected = naive( cipher, cribs );
+			for( int c = 0; c < cribs.length; c++ ) {
+				List<Long> found = new ArrayList<Long>();
+				for( int w = 0; w < legal[c].length; w++ ) {
+					for( long word = legal[c][w]; word != 0; word &= word - 1 ) {
+						found.add( ( (long)w << 6 ) + Long.numberOfTrailingZeros( word ) );
+					}
+				}
+				List<Long> wanted = new ArrayList<Long>();
+				for( long offset : expected.get( c ) ) {
+					if( offset < starts ) {
+						wanted.add( offset );
+					}
+				}
+				assertEquals( "seed " + seed + " crib " + c, wanted, found );
+			}
+		}
+	}
+
+	private static List<List<Long>> naive( char[] cipher, char[][] cribs ) {
+		List<List<Long>> placements = new ArrayList<List<Long>>();
+		for( char[] crib : cribs ) {
+			List<Long> offsets = new ArrayList<Long>();
+			for( int start = 0; start + crib.length <= cipher.length; start++ ) {
+				boolean legal = true;
+				for( int j = 0; j < crib.length && legal; j++ ) {
+					legal = cipher[start + j] != crib[j];
+				}
+				if( legal ) {
+					offsets.add( (long)start );
+				}
+			}
+			placements.add( offsets );
+		}
+		return placements;
+	}
+
+	// random letters from the first few of the alphabet
+	private static char[] letters( Random random, int length, int alphabet ) {
+		char[] letters = new char[length];
+		for( int i = 0; i < length; i++ ) {
+			letters[i] = (char)( 'A' + random.nextInt( alphabet ) );
+		}
+		return letters;
+	}
+
+	/**
+	 * Collects the placements of each crib in the order they come, so comparing them with a
+	 * sorted list also checks the order
+	 */
+	private static class Recorder implements CribScanner.Listener {
+
+		final List<List<Long>> found = new ArrayList<List<Long>>();
+		final AtomicLong letters = new AtomicLong();
+
+		Recorder( int cribs ) {
+			for( int c = 0; c < cribs; c++ ) {
+				found.add( new ArrayList<Long>() );
+			}
+		}
+
+		public synchronized void found( Path file, int crib, long offset ) {
+			found.get( crib ).add( offset );
+		}
+
+		public void scanned( Path file, long letters ) {
+			this.letters.addAndGet( letters );
+		}
+	}
+}
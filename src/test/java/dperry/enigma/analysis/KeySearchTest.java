@@ -0,0 +1,129 @@
+package dperry.enigma.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Machines;
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.parts.Catalog;
+
+public class KeySearchTest {
+
+	@Test
+	public void findsPlantedKey() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool( 3 );
+		try {
+			for( Stepping stepping : Stepping.values() ) {
+				for( int seed = 0; seed < 3; seed++ ) {
+					Random random = new Random( seed );
+					Enigma enigma = new Enigma();
+					enigma.setCatalog( Machines.catalog( random, 5, 2 ) );
+					enigma.setStepping( stepping );
+					enigma.setAdvanceReflector( seed == 1 );
+					enigma.addPlugboardConnection( 'A', 'Q' );
+					enigma.addPlugboardConnection( 'K', 'Z' );
+
+					MachineKey planted = new MachineKey( new String[]{ "r" + ( 1 + seed ), "r0" }, "u" + ( seed % 2 ),
+							new int[]{ random.nextInt( 26 ), random.nextInt( 26 ) }, random.nextInt( 26 ) );
+					char[] plain = Machines.letters( random, 60 );
+					char[] cipher = encrypt( enigma, planted, plain );
+
+					char[] crib = new char[20];
+					System.arraycopy( plain, 15, crib, 0, crib.length );
+					KeySearch search = new KeySearch( enigma, 2, cipher, crib, 15 );
+					assertEquals( 5 * 4 * 2, search.getUnits() );
+
+					// split into uneven runs of units, the way a coordinator hands them out
+					final List<String> found = Collections.synchronizedList( new ArrayList<String>() );
+					final AtomicLong searched = new AtomicLong();
+					for( long first = 0; first < search.getUnits(); first += 7 ) {
+						final long[] last = new long[1];
+						search.search( first, Math.min( first + 7, search.getUnits() ), new KeySearch.Listener() {
+							@Override
+							public void progress( long done, long total ) {
+								synchronized( last ) {
+									last[0] = Math.max( last[0], done );
+								}
+							}
+
+							@Override
+							public void found( MachineKey key ) {
+								found.add( key.toString() );
+							}
+						}, pool );
+						searched.addAndGet( last[0] );
+					}
+
+					String message = stepping + " seed " + seed;
+					assertEquals( message, search.getTotal(), searched.get() );
+					assertEquals( message, Collections.singletonList( planted.toString() ), found );
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void rejectsSearchTooLargeToCount() throws Exception {
+		Enigma enigma = new Enigma();
+		enigma.setCatalog( Machines.catalog( new Random( 1 ), 30, 1 ) );
+		try {
+			new KeySearch( enigma, 12, "ABC".toCharArray(), "A".toCharArray(), 0 );
+			fail( "A search of more keys than a long counts was accepted" );
+		}
+		catch( Exception e ) {
+			assertEquals( "Too many keys to search with 12 of 30 rotors", e.getMessage() );
+		}
+	}
+
+	@Test
+	public void rejectsCribOutsideCipherText() throws Exception {
+		Enigma enigma = new Enigma();
+		enigma.setCatalog( Machines.catalog( new Random( 1 ), 3, 1 ) );
+		try {
+			new KeySearch( enigma, 2, "ABC".toCharArray(), "AB".toCharArray(), 2 );
+			fail( "A crib running past the cipher text was accepted" );
+		}
+		catch( Exception e ) {
+			assertEquals( "Crib does not fit in the cipher text", e.getMessage() );
+		}
+	}
+
+	/**
+	 * Converts text on a machine set up as key, with the parts, plugboard and stepping of
+	 * enigma
+	 */
+	static char[] encrypt( Enigma enigma, MachineKey key, char[] text ) throws Exception {
+		Catalog catalog = enigma.getCatalog();
+		Enigma machine = new Enigma();
+		String[] rotors = key.getRotors();
+		for( int r = 0; r < rotors.length; r++ ) {
+			machine.addRotor( catalog.getRotor( rotors[r] ) );
+			machine.getCurrentRotors().get( r ).reset( key.getPositions().charAt( r ) - 'A' );
+		}
+		machine.setReflector( catalog.getReflector( key.getReflector() ) );
+		machine.getCurrentReflector().reset( key.getReflectorPosition() - 'A' );
+		for( Character[] pair : enigma.getPlugboardConnections() ) {
+			machine.addPlugboardConnection( pair[0], pair[1] );
+		}
+		machine.setStepping( enigma.getStepping() );
+		machine.setAdvanceRotors( enigma.getAdvanceRotors() );
+		machine.setAdvanceReflector( enigma.getAdvanceReflector() );
+
+		char[] converted = text.clone();
+		machine.convert( converted );
+		return converted;
+	}
+}
@@ -0,0 +1,153 @@
+package dperry.enigma.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NgramCountsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void tablesMatchDirectCounts() throws Exception {
+		for( int seed = 0; seed < 10; seed++ ) {
+			Random random = new Random( seed );
+			// a small alphabet now and then, so longer n-grams are seen more than once
+			int alphabet = seed % 2 == 0 ? 3 + random.nextInt( 5 ) : 26;
+			byte[] text = values( random, random.nextInt( 4000 ), alphabet );
+
+			// added in pieces, which count as one text
+			NgramCounts counts = new NgramCounts();
+			for( int offset = 0; offset < text.length; ) {
+				int length = Math.min( random.nextInt( 100 ), text.length - offset );
+				counts.add( text, offset, length );
+				offset += length;
+			}
+
+			for( int n = 1; n <= NgramCounts.MAX_N; n++ ) {
+				String message = "seed " + seed + " n " + n;
+				long[] expected = count( text, n );
+				long total = Math.max( text.length - n + 1, 0 );
+				assertEquals( message, total, counts.getTotal( n ) );
+
+				Path path = folder.getRoot().toPath().resolve( "table" + n );
+				counts.write( n, path );
+				NgramModel model = NgramModel.open( path );
+				assertEquals( message, n, model.getN() );
+				assertEquals( message, total, model.getTotal() );
+
+				double floor = Math.log10( 0.01 / Math.max( total, 1 ) );
+				for( int index = 0; index < expected.length; index++ ) {
+					assertEquals( message + " index " + index, expected[index], counts.getCount( n, index ) );
+					float probability = (float)( expected[index] > 0 ? Math.log10( (double)expected[index] / total ) : floor );
+					assertEquals( message + " index " + index, probability, model.logProbability( index ), 0 );
+				}
+
+				double score = 0;
+				for( int i = 0; i + n <= text.length; i++ ) {
+					score += model.logProbability( index( text, i, n ) );
+				}
+				assertEquals( message, score, model.score( text, 0, text.length ), 1e-9 * Math.max( 1, -score ) );
+			}
+		}
+	}
+
+	@Test
+	public void fileCountsOnlyLetters() throws Exception {
+		Random random = new Random( 7 );
+		byte[] text = values( random, 3000, 26 );
+		StringBuilder contents = new StringBuilder();
+		for( byte value : text ) {
+			contents.append( (char)( ( random.nextBoolean() ? 'a' : 'A' ) + value ) );
+			if( random.nextInt( 4 ) == 0 ) {
+				contents.append( " .,;'\n1".charAt( random.nextInt( 7 ) ) );
+			}
+		}
+
+		// split over two files, which count as one text
+		int split = contents.length() / 2;
+		Path first = folder.newFile().toPath();
+		Path second = folder.newFile().toPath();
+		Files.write( first, contents.substring( 0, split ).getBytes( "US-ASCII" ) );
+		Files.write( second, contents.substring( split ).getBytes( "US-ASCII" ) );
+		NgramCounts files = new NgramCounts();
+		files.add( first );
+		files.add( second );
+
+		NgramCounts values = new NgramCounts();
+		values.add( text, 0, text.length );
+		for( int n = 1; n <= NgramCounts.MAX_N; n++ ) {
+			assertEquals( "n " + n, values.getTotal( n ), files.getTotal( n ) );
+			for( int index = 0; index < NgramModel.tableSize( n ); index++ ) {
+				assertEquals( "n " + n + " index " + index, values.getCount( n, index ), files.getCount( n, index ) );
+			}
+		}
+	}
+
+	@Test
+	public void invalidValuesAreRejected() throws Exception {
+		NgramCounts counts = new NgramCounts();
+		try {
+			counts.add( new byte[]{ 0, 1, 26 }, 0, 3 );
+			fail( "Expected an invalid letter value" );
+		}
+		catch( IllegalArgumentException e ) {
+			assertEquals( "Invalid letter value: 26", e.getMessage() );
+		}
+		try {
+			counts.add( new byte[]{ 'A' }, 0, 1 );
+			fail( "Expected an invalid letter value" );
+		}
+		catch( IllegalArgumentException e ) {
+			assertEquals( "Invalid letter value: 65", e.getMessage() );
+		}
+		try {
+			counts.add( new byte[]{ -1 }, 0, 1 );
+			fail( "Expected an invalid letter value" );
+		}
+		catch( IllegalArgumentException e ) {
+			assertEquals( "Invalid letter value: -1", e.getMessage() );
+		}
+		// nothing before the bad value was counted
+		assertEquals( 0, counts.getTotal( 1 ) );
+
+		// values outside the range given are not looked at
+		counts.add( new byte[]{ 30, 2, 30 }, 1, 1 );
+		assertEquals( 1, counts.getTotal( 1 ) );
+		assertEquals( 1, counts.getCount( 1, 2 ) );
+	}
+
+	private static long[] count( byte[] text, int n ) {
+		long[] counts = new long[NgramModel.tableSize( n )];
+		for( int i = 0; i + n <= text.length; i++ ) {
+			counts[index( text, i, n )]++;
+		}
+		return counts;
+	}
+
+	// the n letters from offset on as base 26 digits
+	private static int index( byte[] text, int offset, int n ) {
+		int index = 0;
+		for( int j = 0; j < n; j++ ) {
+			index = index * NgramCounts.SIZE + text[offset + j];
+		}
+		return index;
+	}
+
+	// random letter values from the first few of the alphabet
+	private static byte[] values( Random random, int length, int alphabet ) {
+		byte[] values = new byte[length];
+		for( int i = 0; i < length; i++ ) {
+			values[i] = (byte)random.nextInt( alphabet );
+		}
+		return values;
+	}
+}
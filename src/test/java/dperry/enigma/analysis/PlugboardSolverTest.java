@@ -0,0 +1,119 @@
+package dperry.enigma.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Machines;
+import dperry.enigma.engine.Stepping;
+
+public class PlugboardSolverTest {
+
+	private static final String PLUGBOARD = "AR,BK,CX,DM,FT,GW,HO";
+
+	@Test
+	public void recoversPlantedPlugboard() throws Exception {
+		for( int seed = 0; seed < 5; seed++ ) {
+			Random random = new Random( seed );
+			Enigma enigma = Machines.enigma( random, Stepping.values()[seed % 2], 3, false );
+			enigma.resetPlugboard();
+			char[] plain = Machines.letters( random, 300 );
+			char[] cipher = encrypt( enigma, plain, PLUGBOARD );
+
+			PlugboardSolution solution = new PlugboardSolver( enigma, cipher, new KnownText( plain ) ).solve( 20, seed );
+			assertEquals( "seed " + seed, PLUGBOARD, solution.toString() );
+			assertEquals( "seed " + seed, 1.0, solution.getScore(), 0 );
+		}
+	}
+
+	@Test
+	public void sameSeedSameSolution() throws Exception {
+		Random random = new Random( 3 );
+		Enigma enigma = Machines.enigma( random, Stepping.ODOMETER, 3, false );
+		enigma.resetPlugboard();
+		char[] cipher = encrypt( enigma, Machines.letters( random, 400 ), PLUGBOARD );
+
+		// a coarse score, so different restarts tie on the best and which one finishes first
+		// would otherwise decide the answer
+		PlugboardSolver solver = new PlugboardSolver( enigma, cipher, new Coarse( new IndexOfCoincidence() ) );
+		String expected = null;
+		double expectedScore = 0;
+		int expectedRestarts = 0;
+		for( int parallelism : new int[]{ 1, 2, 4, 8, 4, 2 } ) {
+			ForkJoinPool pool = new ForkJoinPool( parallelism );
+			try {
+				PlugboardSolution solution = solver.solve( 24, 99, pool );
+				if( expected == null ) {
+					expected = solution.toString();
+					expectedScore = solution.getScore();
+					expectedRestarts = solution.getRestarts();
+				}
+				assertEquals( "parallelism " + parallelism, expected, solution.toString() );
+				assertEquals( "parallelism " + parallelism, expectedScore, solution.getScore(), 0 );
+				assertEquals( "parallelism " + parallelism, expectedRestarts, solution.getRestarts() );
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Converts text with the given plugboard, leaving the machine where it was and its
+	 * plugboard empty
+	 */
+	private static char[] encrypt( Enigma enigma, char[] text, String plugboard ) throws Exception {
+		byte[] state = enigma.snapshot();
+		for( String pair : plugboard.split( "," ) ) {
+			enigma.addPlugboardConnection( pair.charAt( 0 ), pair.charAt( 1 ) );
+		}
+		char[] converted = text.clone();
+		enigma.convert( converted );
+		enigma.resetPlugboard();
+		enigma.restore( state );
+		return converted;
+	}
+
+	/**
+	 * Rounds another score to two places
+	 */
+	private static class Coarse implements Scorer {
+
+		private final Scorer scorer;
+
+		Coarse( Scorer scorer ) {
+			this.scorer = scorer;
+		}
+
+		public double score( byte[] text, int offset, int length ) {
+			return Math.round( scorer.score( text, offset, length ) * 100 ) / 100.0;
+		}
+	}
+
+	/**
+	 * Scores the share of letters that match a known plain text, so the climb has one clear
+	 * best answer
+	 */
+	private static class KnownText implements Scorer {
+
+		private final char[] plain;
+
+		KnownText( char[] plain ) {
+			this.plain = plain;
+		}
+
+		public double score( byte[] text, int offset, int length ) {
+			int matches = 0;
+			for( int i = 0; i < length; i++ ) {
+				if( text[offset + i] == plain[i] - 'A' ) {
+					matches++;
+				}
+			}
+			return (double)matches / length;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package dperry.enigma.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Machines;
+
+public class CompiledEnigmaTest {
+
+	private static final int MACHINES = 300;
+
+	@Test
+	public void convertMatchesInterpreted() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < MACHINES; seed++ ) {
+				Random random = new Random( seed );
+				Enigma enigma = Machines.enigma( random, stepping, 5, true );
+				enigma.setAdvanceRotors( seed % 10 != 0 );
+				assertConvertsLike( enigma, enigma.compile(), Machines.letters( random, 400 ), stepping + " seed " + seed );
+			}
+		}
+	}
+
+	@Test
+	public void permutationTableMatchesInterpreted() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < 40; seed++ ) {
+				Random random = new Random( seed );
+				Enigma enigma = Machines.enigma( random, stepping, 3, true );
+				enigma.setPrecomputeLimit( Long.MAX_VALUE );
+				CompiledEnigma machine = enigma.compile();
+				assertNotNull( machine.getPermutationTable() );
+				assertConvertsLike( enigma, machine, Machines.letters( random, 2000 ), stepping + " seed " + seed );
+			}
+		}
+	}
+
+	@Test
+	public void skipMatchesStepping() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < MACHINES; seed++ ) {
+				Random random = new Random( seed );
+				CompiledEnigma start = Machines.enigma( random, stepping, 5, true ).compile();
+				CompiledEnigma stepped = new CompiledEnigma( start );
+				CompiledEnigma skipped = null;
+				int count = random.nextInt( 4000 );
+
+				// every count up to the last, since the edge cases sit on particular counts
+				for( int t = 0; t <= count; t++ ) {
+					if( t > 0 ) {
+						stepped.convert( Machines.letter( random ) );
+					}
+					skipped = new CompiledEnigma( start );
+					skipped.skip( t );
+					assertSamePositions( stepped, skipped, stepping + " seed " + seed + " count " + t );
+				}
+
+				// the notch state carried past the skip must match too
+				char[] after = Machines.letters( random, 100 );
+				char[] expected = after.clone();
+				stepped.convert( expected, 0, expected, 0, expected.length );
+				skipped.convert( after, 0, after, 0, after.length );
+				assertArrayEquals( stepping + " seed " + seed + " count " + count, expected, after );
+			}
+		}
+	}
+
+	@Test
+	public void skipComposes() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < MACHINES; seed++ ) {
+				Random random = new Random( seed );
+				CompiledEnigma once = Machines.enigma( random, stepping, 6, false ).compile();
+				CompiledEnigma twice = new CompiledEnigma( once );
+				long first = random.nextLong() & 0xFFFFFFFFFFFL;
+				long second = random.nextLong() & 0xFFFFFFFFFFFL;
+
+				once.skip( first + second );
+				twice.skip( first );
+				twice.skip( second );
+				assertSamePositions( once, twice, stepping + " seed " + seed + " skips " + first + " and " + second );
+			}
+		}
+	}
+
+	@Test
+	public void skipIgnoresFixedRotors() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			Enigma enigma = Machines.enigma( new Random( 1 ), stepping, 4, false );
+			enigma.setAdvanceRotors( false );
+			CompiledEnigma machine = enigma.compile();
+			int[] positions = machine.getPositions();
+
+			machine.skip( 123456789L );
+			assertArrayEquals( positions, machine.getPositions() );
+		}
+	}
+
+	private static void assertConvertsLike( Enigma enigma, CompiledEnigma machine, char[] letters, String message ) throws Exception {
+		for( int i = 0; i < letters.length; i++ ) {
+			assertEquals( message + " letter " + i, enigma.convert( letters[i] ), machine.convert( letters[i] ) );
+		}
+
+		// the compiled machine was made from the same rotors, so writing its positions back
+		// leaves them where the interpreted machine got to only if both stepped alike
+		int[] positions = Machines.positions( enigma );
+		int reflector = enigma.getCurrentReflector().getPosition();
+		machine.writePositions();
+		assertArrayEquals( message, positions, Machines.positions( enigma ) );
+		assertEquals( message, reflector, enigma.getCurrentReflector().getPosition() );
+	}
+
+	private static void assertSamePositions( CompiledEnigma expected, CompiledEnigma actual, String message ) {
+		assertArrayEquals( message, expected.getPositions(), actual.getPositions() );
+		assertEquals( message, expected.getReflectorPosition(), actual.getReflectorPosition() );
+	}
+}
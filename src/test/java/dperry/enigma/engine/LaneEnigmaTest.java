@@ -0,0 +1,98 @@
+package dperry.enigma.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dperry.enigma.Machines;
+
+public class LaneEnigmaTest {
+
+	private static final int MACHINES = 100;
+
+	@Test
+	public void lanesMatchCompiled() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < MACHINES; seed++ ) {
+				Random random = new Random( seed );
+				CompiledEnigma machine = Machines.enigma( random, stepping, 5, true ).compile();
+				int lanesCount = 1 + random.nextInt( 12 );
+				LaneEnigma lanes = new LaneEnigma( machine, lanesCount );
+
+				// every lane starts somewhere else and has a message of its own length
+				CompiledEnigma[] expected = new CompiledEnigma[lanesCount];
+				char[][] messages = new char[lanesCount][];
+				char[][] converted = new char[lanesCount][];
+				for( int lane = 0; lane < lanesCount; lane++ ) {
+					expected[lane] = new CompiledEnigma( machine );
+					expected[lane].setPositions( randomPositions( random, machine ), random.nextInt( CompiledEnigma.SIZE ) );
+					lanes.setPositions( lane, expected[lane].getPositions(), expected[lane].getReflectorPosition() );
+
+					messages[lane] = Machines.letters( random, random.nextInt( 300 ) );
+					converted[lane] = messages[lane].clone();
+					expected[lane].convert( converted[lane], 0, converted[lane], 0, converted[lane].length );
+				}
+
+				lanes.convert( messages );
+				for( int lane = 0; lane < lanesCount; lane++ ) {
+					String message = stepping + " seed " + seed + " lane " + lane;
+					assertArrayEquals( message, converted[lane], messages[lane] );
+					assertArrayEquals( message, expected[lane].getPositions(), lanes.getPositions( lane ) );
+					assertEquals( message, expected[lane].getReflectorPosition(), lanes.getReflectorPosition( lane ) );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void skipMatchesCompiled() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < MACHINES; seed++ ) {
+				Random random = new Random( seed );
+				// notches next to each other are walked, so those machines only skip a little
+				boolean adjacent = seed % 4 == 0;
+				CompiledEnigma machine = Machines.enigma( random, stepping, 5, adjacent ).compile();
+				int lanesCount = 1 + random.nextInt( 12 );
+				LaneEnigma lanes = new LaneEnigma( machine, lanesCount );
+				long count = adjacent ? random.nextInt( 1000 ) : random.nextLong() & 0xFFFFFFFFFFL;
+
+				CompiledEnigma[] expected = new CompiledEnigma[lanesCount];
+				for( int lane = 0; lane < lanesCount; lane++ ) {
+					expected[lane] = new CompiledEnigma( machine );
+					expected[lane].setPositions( randomPositions( random, machine ), random.nextInt( CompiledEnigma.SIZE ) );
+					lanes.setPositions( lane, expected[lane].getPositions(), expected[lane].getReflectorPosition() );
+					expected[lane].skip( count );
+				}
+				lanes.skip( count );
+
+				// converting afterwards shows the lanes know which rotors are at a notch
+				char[][] messages = new char[lanesCount][];
+				char[][] converted = new char[lanesCount][];
+				for( int lane = 0; lane < lanesCount; lane++ ) {
+					messages[lane] = Machines.letters( random, 100 );
+					converted[lane] = messages[lane].clone();
+					expected[lane].convert( converted[lane], 0, converted[lane], 0, converted[lane].length );
+				}
+				lanes.convert( messages );
+
+				for( int lane = 0; lane < lanesCount; lane++ ) {
+					String message = stepping + " seed " + seed + " count " + count + " lane " + lane;
+					assertArrayEquals( message, converted[lane], messages[lane] );
+					assertArrayEquals( message, expected[lane].getPositions(), lanes.getPositions( lane ) );
+					assertEquals( message, expected[lane].getReflectorPosition(), lanes.getReflectorPosition( lane ) );
+				}
+			}
+		}
+	}
+
+	private static int[] randomPositions( Random random, CompiledEnigma machine ) {
+		int[] positions = new int[machine.getRotorCount()];
+		for( int r = 0; r < positions.length; r++ ) {
+			positions[r] = random.nextInt( CompiledEnigma.SIZE );
+		}
+		return positions;
+	}
+}
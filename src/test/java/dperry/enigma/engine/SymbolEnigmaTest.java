@@ -0,0 +1,97 @@
+package dperry.enigma.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Machines;
+import dperry.enigma.parts.Plugboard;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+public class SymbolEnigmaTest {
+
+	private static final int MACHINES = 200;
+
+	@Test
+	public void lettersMatchInterpreted() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < MACHINES; seed++ ) {
+				Random random = new Random( seed );
+				Enigma enigma = Machines.enigma( random, stepping, 5, true );
+				SymbolEnigma machine = enigma.compileSymbols();
+
+				char[] letters = Machines.letters( random, 400 );
+				byte[] symbols = new byte[letters.length];
+				for( int i = 0; i < letters.length; i++ ) {
+					symbols[i] = (byte)( letters[i] - 'A' );
+				}
+				machine.convert( symbols, 0, symbols.length );
+
+				String message = stepping + " seed " + seed;
+				for( int i = 0; i < letters.length; i++ ) {
+					assertEquals( message + " letter " + i, enigma.convert( letters[i] ) - 'A', symbols[i] );
+				}
+
+				// the interpreted machine has stepped past every letter, so both end in the same place
+				int[] positions = Machines.positions( enigma );
+				int reflector = enigma.getCurrentReflector().getPosition();
+				machine.writePositions();
+				assertArrayEquals( message, positions, Machines.positions( enigma ) );
+				assertEquals( message, reflector, enigma.getCurrentReflector().getPosition() );
+			}
+		}
+	}
+
+	@Test
+	public void largeAlphabetIsReciprocal() throws Exception {
+		for( Stepping stepping : Stepping.values() ) {
+			for( int seed = 0; seed < MACHINES; seed++ ) {
+				Random random = new Random( seed );
+				int size = 2 * ( 14 + random.nextInt( 115 ) );
+				Rotor[] rotors = new Rotor[1 + random.nextInt( 5 )];
+				int[] start = new int[rotors.length];
+				for( int r = 0; r < rotors.length; r++ ) {
+					rotors[r] = Machines.rotor( random, size, random.nextInt( 3 ) == 0 );
+					start[r] = random.nextInt( size );
+				}
+				Reflector reflector = new Reflector( "x", Machines.pairs( random, size ) );
+				Plugboard plugboard = new Plugboard( size );
+				for( int i = 0; i < 20; i++ ) {
+					plugboard.addConnection( (char)( 'A' + random.nextInt( size ) ), (char)( 'A' + random.nextInt( size ) ) );
+				}
+				boolean advanceReflector = random.nextBoolean();
+				int reflectorStart = random.nextInt( size );
+
+				byte[] plain = new byte[500];
+				for( int i = 0; i < plain.length; i++ ) {
+					plain[i] = (byte)random.nextInt( size );
+				}
+				byte[] cipher = plain.clone();
+				convert( rotors, start, reflector, reflectorStart, plugboard, advanceReflector, stepping, cipher );
+
+				String message = stepping + " seed " + seed + " size " + size;
+				for( int i = 0; i < plain.length; i++ ) {
+					assertNotEquals( message + " symbol " + i, plain[i], cipher[i] );
+				}
+				convert( rotors, start, reflector, reflectorStart, plugboard, advanceReflector, stepping, cipher );
+				assertArrayEquals( message, plain, cipher );
+			}
+		}
+	}
+
+	private static void convert( Rotor[] rotors, int[] start, Reflector reflector, int reflectorStart, Plugboard plugboard,
+			boolean advanceReflector, Stepping stepping, byte[] symbols ) {
+		for( int r = 0; r < rotors.length; r++ ) {
+			rotors[r].reset( start[r] );
+		}
+		reflector.reset( reflectorStart );
+		SymbolEnigma machine = new SymbolEnigma( rotors, reflector, plugboard, true, advanceReflector, stepping );
+		machine.convert( symbols, 0, symbols.length );
+	}
+}
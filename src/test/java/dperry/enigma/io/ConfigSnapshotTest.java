@@ -0,0 +1,126 @@
+package dperry.enigma.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dperry.enigma.Machines;
+import dperry.enigma.parts.Reflector;
+import dperry.enigma.parts.Rotor;
+
+public class ConfigSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTrip() throws Exception {
+		for( int size : new int[]{ Rotor.ROTOR_SIZE, 40, 254, 256 } ) {
+			Random random = new Random( size );
+			List<Rotor> rotors = new ArrayList<Rotor>();
+			for( int i = 0; i < 20; i++ ) {
+				Rotor rotor = Machines.rotor( random, size, random.nextBoolean() );
+				// one without a name, and names outside ASCII
+				String name = i == 3 ? null : "r\u00e9" + i;
+				rotors.add( new Rotor( name, boxed( rotor.getConnections() ), boxed( rotor.getTurnover() ) ) );
+			}
+			List<Reflector> reflectors = new ArrayList<Reflector>();
+			for( int i = 0; i < 5; i++ ) {
+				reflectors.add( new Reflector( i == 0 ? null : "u" + i, Machines.pairs( random, size ) ) );
+			}
+
+			Path config = folder.newFile().toPath();
+			byte[] text = ( "config " + size ).getBytes( "US-ASCII" );
+			ConfigSnapshot.write( config, text, size, rotors, reflectors );
+			ConfigSnapshot snapshot = ConfigSnapshot.open( config, text );
+
+			String message = "size " + size;
+			assertNotNull( message, snapshot );
+			assertEquals( message, size, snapshot.getAlphabetSize() );
+			assertEquals( message, rotors.size(), snapshot.getRotors().size() );
+			assertEquals( message, reflectors.size(), snapshot.getReflectors().size() );
+			for( int i = 0; i < rotors.size(); i++ ) {
+				Rotor rotor = snapshot.getRotors().get( i );
+				assertEquals( message, rotors.get( i ).getName(), rotor.getName() );
+				assertEquals( message, rotors.get( i ).getName(), snapshot.getRotorNames().get( i ) );
+				assertArrayEquals( message, rotors.get( i ).getConnections(), rotor.getConnections() );
+				assertArrayEquals( message, rotors.get( i ).getTurnover(), rotor.getTurnover() );
+				assertEquals( message, rotors.get( i ).getNotches(), rotor.getNotches() );
+			}
+			for( int i = 0; i < reflectors.size(); i++ ) {
+				Reflector reflector = snapshot.getReflectors().get( i );
+				assertEquals( message, reflectors.get( i ).getName(), reflector.getName() );
+				assertEquals( message, reflectors.get( i ).getName(), snapshot.getReflectorNames().get( i ) );
+				assertArrayEquals( message, reflectors.get( i ).getPairs(), reflector.getPairs() );
+			}
+		}
+	}
+
+	@Test
+	public void staleTextIsIgnored() throws Exception {
+		Path config = folder.newFile().toPath();
+		byte[] text = "rotor I EKMFLGDQVZNTOWYHXUSPAIBRCJ Q".getBytes( "US-ASCII" );
+		ConfigSnapshot.write( config, text, Rotor.ROTOR_SIZE, snapshotRotors(), new ArrayList<Reflector>() );
+		assertNotNull( ConfigSnapshot.open( config, text ) );
+
+		// the same length, so only the hash tells them apart
+		byte[] edited = text.clone();
+		edited[edited.length - 1] = 'R';
+		assertNull( ConfigSnapshot.open( config, edited ) );
+
+		byte[] longer = Arrays.copyOf( text, text.length + 1 );
+		longer[text.length] = '\n';
+		assertNull( ConfigSnapshot.open( config, longer ) );
+
+		Files.delete( ConfigSnapshot.pathFor( config ) );
+		assertNull( ConfigSnapshot.open( config, text ) );
+	}
+
+	@Test
+	public void truncatedEntryIsIgnored() throws Exception {
+		Path config = folder.newFile().toPath();
+		byte[] text = "rotors".getBytes( "US-ASCII" );
+		ConfigSnapshot.write( config, text, Rotor.ROTOR_SIZE, snapshotRotors(), new ArrayList<Reflector>() );
+
+		// cut the last entry short but keep the header's own length consistent, as a
+		// damaged file might
+		Path path = ConfigSnapshot.pathFor( config );
+		byte[] bytes = Files.readAllBytes( path );
+		for( int cut = 1; cut < 4 + Rotor.ROTOR_SIZE; cut++ ) {
+			byte[] truncated = Arrays.copyOf( bytes, bytes.length - cut );
+			ByteBuffer.wrap( truncated ).putLong( 8, truncated.length );
+			Files.write( path, truncated );
+			assertNull( "cut " + cut, ConfigSnapshot.open( config, text ) );
+		}
+	}
+
+	private static List<Rotor> snapshotRotors() {
+		Random random = new Random( 1 );
+		List<Rotor> rotors = new ArrayList<Rotor>();
+		for( int i = 0; i < 3; i++ ) {
+			rotors.add( Machines.rotor( random, Rotor.ROTOR_SIZE, false ) );
+		}
+		return rotors;
+	}
+
+	private static Integer[] boxed( int[] values ) {
+		Integer[] boxed = new Integer[values.length];
+		for( int i = 0; i < values.length; i++ ) {
+			boxed[i] = values[i];
+		}
+		return boxed;
+	}
+}
@@ -0,0 +1,220 @@
+package dperry.enigma.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Machines;
+import dperry.enigma.engine.CompiledEnigma;
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.metrics.Metrics;
+
+public class EnigmaProcessorTest {
+
+	@Test
+	public void channelsMatchStreamTranslator() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool( 2 );
+		try {
+			for( int seed = 0; seed < 20; seed++ ) {
+				Random random = new Random( seed );
+				Enigma enigma = Machines.enigma( random, Stepping.values()[seed % 2], 4, false );
+				byte[] text = text( random, random.nextInt( 5000 ) );
+				boolean group = seed % 3 != 0;
+
+				ByteArrayOutputStream expected = new ByteArrayOutputStream();
+				long letters = new StreamTranslator( enigma.compile(), group ).translate( Channels.newChannel( new ByteArrayInputStream( text ) ),
+						Channels.newChannel( expected ) );
+
+				// small chunks, some of them with no letters at all
+				ChannelPublisher publisher = new ChannelPublisher( Channels.newChannel( new ByteArrayInputStream( text ) ), executor,
+						1 + random.nextInt( 20 ) );
+				EnigmaProcessor processor = new EnigmaProcessor( enigma );
+				ByteArrayOutputStream actual = new ByteArrayOutputStream();
+				ChannelSubscriber subscriber = new ChannelSubscriber( Channels.newChannel( actual ), group );
+				processor.subscribe( subscriber );
+				publisher.subscribe( processor );
+
+				String message = "seed " + seed;
+				assertEquals( message, letters, (long)subscriber.getResult().get( 10, TimeUnit.SECONDS ) );
+				assertArrayEquals( message, expected.toByteArray(), actual.toByteArray() );
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void demandIsPassedUpstream() throws Exception {
+		CompiledEnigma machine = Machines.enigma( new Random( 1 ), Stepping.ODOMETER, 3, false ).compile();
+		EnigmaProcessor processor = new EnigmaProcessor( new CompiledEnigma( machine ) );
+		Recorder recorder = new Recorder();
+		processor.subscribe( recorder );
+
+		// asked for before there is an upstream, then passed on as it subscribes
+		recorder.subscription.request( 2 );
+		Upstream upstream = new Upstream();
+		processor.onSubscribe( upstream );
+		assertEquals( 2, upstream.requested );
+
+		processor.onNext( "Hello, " );
+		processor.onNext( "world" );
+		assertEquals( 2, upstream.requested );
+		recorder.subscription.request( 3 );
+		assertEquals( 5, upstream.requested );
+
+		char[] expected = "HELLOWORLD".toCharArray();
+		machine.convert( expected, 0, expected, 0, expected.length );
+		assertEquals( Arrays.asList( "next " + new String( expected, 0, 5 ), "next " + new String( expected, 5, 5 ) ), recorder.events );
+	}
+
+	@Test
+	public void chunkWithoutLettersIsReplaced() throws Exception {
+		EnigmaProcessor processor = new EnigmaProcessor( Machines.enigma( new Random( 1 ), Stepping.ODOMETER, 3, false ) );
+		Recorder recorder = new Recorder();
+		processor.subscribe( recorder );
+		Upstream upstream = new Upstream();
+		processor.onSubscribe( upstream );
+		recorder.subscription.request( 1 );
+
+		processor.onNext( "12, 34! " );
+		processor.onNext( "" );
+		assertEquals( 3, upstream.requested );
+		assertEquals( 0, recorder.events.size() );
+
+		processor.onNext( "a" );
+		assertEquals( 3, upstream.requested );
+		assertEquals( 1, recorder.events.size() );
+	}
+
+	@Test
+	public void invalidDemandFailsAfterTheChunkGoingOut() throws Exception {
+		EnigmaProcessor processor = new EnigmaProcessor( Machines.enigma( new Random( 1 ), Stepping.ODOMETER, 3, false ) );
+		final Upstream upstream = new Upstream();
+		Recorder recorder = new Recorder() {
+			@Override
+			public void onNext( String item ) {
+				super.onNext( item );
+				// from inside onNext, so the error has to wait for it to return
+				subscription.request( 0 );
+				events.add( "returned" );
+			}
+		};
+		processor.subscribe( recorder );
+		processor.onSubscribe( upstream );
+		recorder.subscription.request( 5 );
+
+		processor.onNext( "ABC" );
+		assertTrue( upstream.cancelled );
+		processor.onNext( "DEF" );
+		processor.onComplete();
+
+		assertEquals( 3, recorder.events.size() );
+		assertEquals( "returned", recorder.events.get( 1 ) );
+		assertEquals( "error Demand must be positive: 0", recorder.events.get( 2 ) );
+	}
+
+	@Test
+	public void nothingPassedOnAfterCancel() throws Exception {
+		EnigmaProcessor processor = new EnigmaProcessor( Machines.enigma( new Random( 1 ), Stepping.ODOMETER, 3, false ) );
+		Recorder recorder = new Recorder();
+		processor.subscribe( recorder );
+		Upstream upstream = new Upstream();
+		processor.onSubscribe( upstream );
+		recorder.subscription.request( 5 );
+		processor.onNext( "ABC" );
+
+		long messages = Metrics.getDefault().getMessagesProcessed();
+		recorder.subscription.cancel();
+		assertTrue( upstream.cancelled );
+		processor.onNext( "DEF" );
+		processor.onComplete();
+		processor.onError( new Exception( "late" ) );
+
+		assertEquals( 1, recorder.events.size() );
+		// a cancelled stream is not a converted message
+		assertEquals( messages, Metrics.getDefault().getMessagesProcessed() );
+	}
+
+	@Test
+	public void endBeforeSubscribingIsPassedOn() throws Exception {
+		EnigmaProcessor processor = new EnigmaProcessor( Machines.enigma( new Random( 1 ), Stepping.ODOMETER, 3, false ) );
+		processor.onSubscribe( new Upstream() );
+		processor.onError( new Exception( "broken" ) );
+		processor.onComplete();
+
+		Recorder recorder = new Recorder();
+		processor.subscribe( recorder );
+		assertEquals( Arrays.asList( "error broken" ), recorder.events );
+
+		Recorder second = new Recorder();
+		processor.subscribe( second );
+		assertEquals( Arrays.asList( "error Only one subscriber is supported" ), second.events );
+	}
+
+	private static byte[] text( Random random, int length ) {
+		byte[] text = new byte[length];
+		for( int i = 0; i < length; i++ ) {
+			int kind = random.nextInt( 4 );
+			text[i] = (byte)( kind == 0 ? ' ' + random.nextInt( 32 ) : kind == 1 ? 'a' + random.nextInt( 26 ) : 'A' + random.nextInt( 26 ) );
+		}
+		return text;
+	}
+
+	/**
+	 * Counts what is asked of it
+	 */
+	private static class Upstream implements Flow.Subscription {
+
+		long requested;
+		boolean cancelled;
+
+		public void request( long n ) {
+			requested += n;
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+	}
+
+	/**
+	 * Lists the signals it receives
+	 */
+	private static class Recorder implements Flow.Subscriber<String> {
+
+		final List<String> events = new ArrayList<String>();
+		Flow.Subscription subscription;
+
+		public void onSubscribe( Flow.Subscription subscription ) {
+			this.subscription = subscription;
+		}
+
+		public void onNext( String item ) {
+			events.add( "next " + item );
+		}
+
+		public void onError( Throwable throwable ) {
+			events.add( "error " + throwable.getMessage() );
+		}
+
+		public void onComplete() {
+			events.add( "complete" );
+		}
+	}
+}
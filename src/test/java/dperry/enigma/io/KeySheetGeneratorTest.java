@@ -0,0 +1,50 @@
+package dperry.enigma.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Machines;
+
+public class KeySheetGeneratorTest {
+
+	@Test
+	public void sameSeedSameBytesOnAnyPool() throws Exception {
+		Enigma enigma = new Enigma();
+		enigma.setCatalog( Machines.catalog( new Random( 1 ), 8, 3 ) );
+
+		for( KeySheetGenerator.Format format : KeySheetGenerator.Format.values() ) {
+			// small chunks, so the keys are spread over many tasks and windows
+			byte[] single = generate( enigma, format, 1, 42 );
+			byte[] parallel = generate( enigma, format, 4, 42 );
+			assertArrayEquals( format.toString(), single, parallel );
+			assertArrayEquals( format.toString(), single, generate( enigma, format, 4, 42 ) );
+			assertFalse( format.toString(), Arrays.equals( single, generate( enigma, format, 4, 43 ) ) );
+
+			if( format == KeySheetGenerator.Format.CSV ) {
+				// a header and a line per key
+				assertEquals( 1 + 500, new String( single, "US-ASCII" ).split( "\n" ).length );
+			}
+		}
+	}
+
+	private static byte[] generate( Enigma enigma, KeySheetGenerator.Format format, int parallelism, long seed ) throws Exception {
+		ForkJoinPool pool = new ForkJoinPool( parallelism );
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new KeySheetGenerator( enigma, 3, 10, 40, format, 7, pool ).generate( seed, 500, out );
+			return out.toByteArray();
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}
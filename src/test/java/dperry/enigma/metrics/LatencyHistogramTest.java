@@ -0,0 +1,72 @@
+package dperry.enigma.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketsTileTheLongs() throws Exception {
+		int last = LatencyHistogram.index( Long.MAX_VALUE );
+		assertEquals( 0, LatencyHistogram.lower( 0 ) );
+		assertEquals( Long.MAX_VALUE, LatencyHistogram.upper( last ) );
+		for( int i = 0; i <= last; i++ ) {
+			long lower = LatencyHistogram.lower( i );
+			long upper = LatencyHistogram.upper( i );
+			String message = "bucket " + i;
+			assertEquals( message, i, LatencyHistogram.index( lower ) );
+			assertEquals( message, i, LatencyHistogram.index( upper ) );
+			if( i < last ) {
+				assertEquals( message, upper + 1, LatencyHistogram.lower( i + 1 ) );
+			}
+			// a bucket is at most a quarter wider than its lowest value
+			assertTrue( message, upper - lower <= lower / 4 );
+		}
+	}
+
+	@Test
+	public void valuesLandInTheirBucket() throws Exception {
+		Random random = new Random( 1 );
+		for( int i = 0; i < 100000; i++ ) {
+			long value = random.nextLong() >>> 1 + random.nextInt( 63 );
+			int index = LatencyHistogram.index( value );
+			assertTrue( "value " + value, LatencyHistogram.lower( index ) <= value && value <= LatencyHistogram.upper( index ) );
+		}
+	}
+
+	@Test
+	public void percentilesAreWithinAQuarter() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals( 0, histogram.getPercentile( 0.5 ) );
+
+		for( long nanos = 1; nanos <= 100000; nanos++ ) {
+			histogram.record( nanos );
+		}
+		assertEquals( 100000, histogram.getCount() );
+		assertEquals( 100000, histogram.getMax() );
+		for( double fraction : new double[]{ 0.01, 0.5, 0.9, 0.99, 0.999 } ) {
+			long exact = (long)Math.ceil( fraction * 100000 );
+			long percentile = histogram.getPercentile( fraction );
+			assertTrue( fraction + ": " + percentile, percentile >= exact && percentile <= exact * 5 / 4 );
+		}
+		assertEquals( 100000, histogram.getPercentile( 1 ) );
+	}
+
+	@Test
+	public void negativeCountsAsZeroAndResetClears() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record( -5 );
+		assertEquals( 1, histogram.getCount() );
+		assertEquals( 0, histogram.getPercentile( 1 ) );
+
+		histogram.record( 1000 );
+		histogram.reset();
+		assertEquals( 0, histogram.getCount() );
+		assertEquals( 0, histogram.getMax() );
+		assertEquals( 0, histogram.getPercentile( 0.99 ) );
+	}
+}
@@ -0,0 +1,78 @@
+package dperry.enigma.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Machines;
+import dperry.enigma.engine.Stepping;
+
+public class MetricsTest {
+
+	@Test
+	public void countsMessagesAndStreams() throws Exception {
+		Metrics metrics = new Metrics();
+		metrics.messageConverted( 100, 2000 );
+		metrics.messageConverted( 50, 1000 );
+		metrics.charactersConverted( 30 );
+		metrics.streamConverted( 4000 );
+
+		assertEquals( 180, metrics.getCharactersConverted() );
+		assertEquals( 3, metrics.getMessagesProcessed() );
+		assertEquals( 4.0, metrics.getLatencyMaxMicros(), 0 );
+		assertTrue( metrics.getLatency50thMicros() >= 2.0 && metrics.getLatency50thMicros() <= 2.5 );
+
+		metrics.configurationImported( 8, 3, 1500000 );
+		metrics.reset();
+		assertEquals( 0, metrics.getCharactersConverted() );
+		assertEquals( 0, metrics.getMessagesProcessed() );
+		assertEquals( 0, metrics.getLatencyMaxMicros(), 0 );
+		// the last import outlives a reset
+		assertEquals( 1, metrics.getConfigImports() );
+		assertEquals( 1.5, metrics.getLastImportMillis(), 0 );
+		assertEquals( 8, metrics.getRotorCount() );
+		assertEquals( 3, metrics.getReflectorCount() );
+	}
+
+	@Test
+	public void singleLettersAreLeftToTheCaller() throws Exception {
+		Enigma enigma = Machines.enigma( new Random( 1 ), Stepping.ODOMETER, 3, false );
+		Metrics metrics = Metrics.getDefault();
+		long characters = metrics.getCharactersConverted();
+		long messages = metrics.getMessagesProcessed();
+
+		for( char letter : Machines.letters( new Random( 2 ), 100 ) ) {
+			enigma.convert( letter );
+		}
+		assertEquals( characters, metrics.getCharactersConverted() );
+		assertEquals( messages, metrics.getMessagesProcessed() );
+
+		enigma.convert( Machines.letters( new Random( 3 ), 100 ) );
+		assertEquals( characters + 100, metrics.getCharactersConverted() );
+		assertEquals( messages + 1, metrics.getMessagesProcessed() );
+	}
+
+	@Test
+	public void publishedOverJmx() throws Exception {
+		assertTrue( Metrics.register() );
+		// a second registration is harmless
+		assertTrue( Metrics.register() );
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName( Metrics.OBJECT_NAME );
+		Metrics.getDefault().messageConverted( 10, 1000 );
+		assertEquals( Metrics.getDefault().getCharactersConverted(), server.getAttribute( name, "CharactersConverted" ) );
+		assertTrue( (Long)server.getAttribute( name, "MessagesProcessed" ) > 0 );
+
+		server.invoke( name, "reset", null, null );
+		assertEquals( 0L, server.getAttribute( name, "MessagesProcessed" ) );
+	}
+}
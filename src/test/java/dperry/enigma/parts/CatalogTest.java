@@ -0,0 +1,105 @@
+package dperry.enigma.parts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dperry.enigma.Machines;
+
+public class CatalogTest {
+
+	@Test
+	public void firstOfRepeatedNameIsFound() throws Exception {
+		Random random = new Random( 1 );
+		List<Rotor> rotors = new ArrayList<Rotor>();
+		for( String name : new String[]{ "I", "II", "I", "III", "II", "I" } ) {
+			rotors.add( new Rotor( name, Machines.permutation( random, Rotor.ROTOR_SIZE ), new Integer[]{ 0 } ) );
+		}
+		List<Reflector> reflectors = new ArrayList<Reflector>();
+		for( String name : new String[]{ "B", "C", "B" } ) {
+			reflectors.add( new Reflector( name, Machines.pairs( random, Rotor.ROTOR_SIZE ) ) );
+		}
+		Catalog catalog = new Catalog( rotors, reflectors );
+
+		assertEquals( Arrays.asList( "I", "II", "I", "III", "II", "I" ), catalog.getRotorNames() );
+		assertEquals( Arrays.asList( "I", "II", "I" ), catalog.getDuplicateRotors() );
+		assertEquals( Arrays.asList( "B" ), catalog.getDuplicateReflectors() );
+		assertSame( rotors.get( 0 ), catalog.getRotor( "I" ) );
+		assertSame( rotors.get( 1 ), catalog.getRotor( "II" ) );
+		assertSame( rotors.get( 3 ), catalog.getRotor( "III" ) );
+		assertSame( reflectors.get( 0 ), catalog.getReflector( "B" ) );
+		assertNull( catalog.getRotor( "IV" ) );
+		assertNull( catalog.getReflector( "I" ) );
+	}
+
+	@Test
+	public void uniqueNamesHaveNoDuplicates() throws Exception {
+		Catalog catalog = Machines.catalog( new Random( 2 ), 8, 3 );
+		assertEquals( 0, catalog.getDuplicateRotors().size() );
+		assertEquals( 0, catalog.getDuplicateReflectors().size() );
+		for( int i = 0; i < 8; i++ ) {
+			assertSame( catalog.getRotors().get( i ), catalog.getRotor( "r" + i ) );
+		}
+	}
+
+	@Test
+	public void listsCannotBeChanged() throws Exception {
+		final Catalog catalog = Machines.catalog( new Random( 3 ), 4, 2 );
+		final Rotor rotor = catalog.getRotors().get( 0 );
+		final Reflector reflector = catalog.getReflectors().get( 0 );
+		List<Runnable> changes = Arrays.<Runnable>asList( new Runnable() {
+			public void run() {
+				catalog.getRotors().add( rotor );
+			}
+		}, new Runnable() {
+			public void run() {
+				catalog.getRotors().set( 1, rotor );
+			}
+		}, new Runnable() {
+			public void run() {
+				catalog.getReflectors().remove( 0 );
+			}
+		}, new Runnable() {
+			public void run() {
+				catalog.getReflectors().add( reflector );
+			}
+		}, new Runnable() {
+			public void run() {
+				catalog.getRotorNames().set( 0, "r9" );
+			}
+		}, new Runnable() {
+			public void run() {
+				catalog.getReflectorNames().clear();
+			}
+		}, new Runnable() {
+			public void run() {
+				catalog.getDuplicateRotors().add( "r0" );
+			}
+		}, new Runnable() {
+			public void run() {
+				catalog.getDuplicateReflectors().add( "u0" );
+			}
+		} );
+
+		for( int i = 0; i < changes.size(); i++ ) {
+			try {
+				changes.get( i ).run();
+				fail( "Change " + i + " was accepted" );
+			}
+			catch( UnsupportedOperationException e ) {
+				// expected
+			}
+		}
+		assertEquals( 4, catalog.getRotors().size() );
+		assertEquals( 2, catalog.getReflectorNames().size() );
+		assertSame( rotor, catalog.getRotor( "r0" ) );
+	}
+}
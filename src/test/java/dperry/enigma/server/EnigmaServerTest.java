@@ -0,0 +1,144 @@
+package dperry.enigma.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dperry.enigma.Application;
+import dperry.enigma.Enigma;
+import dperry.enigma.Machines;
+import dperry.enigma.Session;
+
+public class EnigmaServerTest {
+
+	private static final String CHARSET = "US-ASCII";
+
+	@Test
+	public void sessionsAreIsolated() throws Exception {
+		Random random = new Random( 5 );
+		Enigma catalog = new Enigma();
+		catalog.setCatalog( Machines.catalog( random, 4, 2 ) );
+
+		List<String> first = script( "add rotor r0", "add rotor r1", "set reflector u0", "set positions AQ A", random );
+		List<String> second = script( "add rotor r2", "add rotor r3", "set reflector u1", "add connection AB", random );
+
+		final EnigmaServer server = new EnigmaServer( catalog, 0 );
+		Thread serving = new Thread( new Runnable() {
+			@Override
+			public void run() {
+				try {
+					server.serve();
+				}
+				catch( IOException e ) {
+					// the test fails on the missing answers
+				}
+			}
+		} );
+		serving.start();
+
+		try {
+			Socket a = new Socket( InetAddress.getLoopbackAddress(), server.getPort() );
+			Socket b = new Socket( InetAddress.getLoopbackAddress(), server.getPort() );
+			try {
+				// one line each in turn, so both machines are in use at once
+				OutputStream outA = a.getOutputStream();
+				OutputStream outB = b.getOutputStream();
+				for( int i = 0; i < Math.max( first.size(), second.size() ); i++ ) {
+					if( i < first.size() ) {
+						outA.write( ( first.get( i ) + "\n" ).getBytes( CHARSET ) );
+						outA.flush();
+					}
+					if( i < second.size() ) {
+						outB.write( ( second.get( i ) + "\n" ).getBytes( CHARSET ) );
+						outB.flush();
+					}
+				}
+
+				String answersA = readAll( a );
+				String answersB = readAll( b );
+				assertEquals( runAlone( catalog, first ), answersA );
+				assertEquals( runAlone( catalog, second ), answersB );
+				assertNotEquals( answersA, answersB );
+				assertFalse( answersA, answersA.contains( Application.PREFIX_ERR ) );
+				assertFalse( answersB, answersB.contains( Application.PREFIX_ERR ) );
+			}
+			finally {
+				a.close();
+				b.close();
+			}
+
+			// the shared definitions are only read
+			assertEquals( 0, catalog.getCurrentRotors().size() );
+			for( int wait = 0; server.getSessionCount() > 0 && wait < 100; wait++ ) {
+				Thread.sleep( 50 );
+			}
+			assertEquals( 0, server.getSessionCount() );
+		}
+		finally {
+			server.close();
+			serving.join( 10000 );
+		}
+	}
+
+	/**
+	 * Sets a machine up with the given commands, then encodes the same messages in pieces
+	 */
+	private static List<String> script( String rotor1, String rotor2, String reflector, String extra, Random random ) {
+		List<String> lines = new ArrayList<String>();
+		lines.add( rotor1 );
+		lines.add( rotor2 );
+		lines.add( reflector );
+		lines.add( extra );
+		Random messages = new Random( random.nextInt( 2 ) );
+		for( int i = 0; i < 50; i++ ) {
+			lines.add( "encode " + new String( Machines.letters( messages, 1 + messages.nextInt( 40 ) ) ) );
+		}
+		lines.add( "status" );
+		lines.add( "quit" );
+		return lines;
+	}
+
+	/**
+	 * The answers a session on a machine of its own gives to the script
+	 */
+	private static String runAlone( Enigma catalog, List<String> script ) throws IOException {
+		StringBuilder input = new StringBuilder();
+		for( String line : script ) {
+			input.append( line ).append( '\n' );
+		}
+		Enigma enigma = new Enigma();
+		enigma.shareCatalog( catalog );
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream( bytes, false, CHARSET );
+		new Session( enigma, new BufferedReader( new StringReader( input.toString() ) ), out, out, false ).run();
+		out.flush();
+		return bytes.toString( CHARSET );
+	}
+
+	private static String readAll( Socket socket ) throws IOException {
+		BufferedReader reader = new BufferedReader( new InputStreamReader( socket.getInputStream(), CHARSET ) );
+		StringBuilder text = new StringBuilder();
+		char[] buffer = new char[4096];
+		int read;
+		while( ( read = reader.read( buffer ) ) >= 0 ) {
+			text.append( buffer, 0, read );
+		}
+		return text.toString();
+	}
+}
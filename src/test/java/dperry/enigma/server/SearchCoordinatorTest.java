@@ -0,0 +1,281 @@
+package dperry.enigma.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dperry.enigma.Enigma;
+import dperry.enigma.Machines;
+import dperry.enigma.analysis.KeySearch;
+import dperry.enigma.analysis.MachineKey;
+import dperry.enigma.engine.Stepping;
+import dperry.enigma.parts.Catalog;
+
+public class SearchCoordinatorTest {
+
+	private static final long UNITS_PER_TASK = 3;
+	private static final long LEASE_MILLIS = 300;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void everyTaskAndHitCountsOnce() throws Exception {
+		Random random = new Random( 11 );
+		Catalog catalog = Machines.catalog( random, 5, 2 );
+
+		// a short crib, so plenty of keys match it by chance
+		char[] cipher = Machines.letters( random, 30 );
+		char[] crib = new char[3];
+		for( int i = 0; i < crib.length; i++ ) {
+			// a letter never turns into itself, so the crib has to differ from the cipher text
+			do {
+				crib[i] = Machines.letter( random );
+			}
+			while( crib[i] == cipher[10 + i] );
+		}
+		SearchJob job = new SearchJob( 2, new String( cipher ), new String( crib ), 10, "AB,CD", Stepping.DOUBLE, true, false );
+
+		ForkJoinPool pool = new ForkJoinPool( 2 );
+		try {
+			KeySearch search = job.createSearch( machine( catalog ) );
+			long units = search.getUnits();
+			List<String> expected = expectedHits( search, pool );
+			assertTrue( "only " + expected.size() + " hits", expected.size() > 10 );
+
+			Path checkpoint = folder.getRoot().toPath().resolve( "checkpoint" );
+			SearchCoordinator coordinator = new SearchCoordinator( machine( catalog ), job, InetAddress.getLoopbackAddress(), 0, checkpoint,
+					UNITS_PER_TASK, LEASE_MILLIS );
+			Recorder live = new Recorder();
+			Runner running = new Runner( coordinator, live );
+
+			// takes the first task, reports a hit that is no key at all and then hangs, so the task
+			// is only handed out again once its lease runs out
+			Socket hung = new Socket( InetAddress.getLoopbackAddress(), coordinator.getPort() );
+			try {
+				BufferedReader reader = new BufferedReader( new InputStreamReader( hung.getInputStream(), SearchCoordinator.CHARSET ) );
+				OutputStream out = hung.getOutputStream();
+				assertEquals( SearchCoordinator.MSG_JOB + " ", reader.readLine().substring( 0, 4 ) );
+				out.write( ( SearchCoordinator.MSG_NEXT + "\n" ).getBytes( SearchCoordinator.CHARSET ) );
+				out.flush();
+				assertEquals( SearchCoordinator.MSG_UNITS + " 0 " + UNITS_PER_TASK, reader.readLine() );
+				String bogus = SearchCoordinator.MSG_FOUND + " " + new MachineKey( new String[]{ "r0", "r0" }, "u0", new int[2], 0 );
+				out.write( ( bogus + "\n" ).getBytes( SearchCoordinator.CHARSET ) );
+				out.flush();
+
+				// drops its task as soon as it tries to search it
+				ForkJoinPool stopped = new ForkJoinPool( 1 );
+				stopped.shutdown();
+				try {
+					new SearchWorker( machine( catalog ), host(), coordinator.getPort(), stopped ).run();
+					fail( "A worker with no threads finished its task" );
+				}
+				catch( RejectedExecutionException e ) {
+					// the task goes back to be handed out again
+				}
+
+				// does everything, the hung and dropped tasks included, and each only once
+				long searched = new SearchWorker( machine( catalog ), host(), coordinator.getPort(), pool ).run();
+				assertEquals( units, searched );
+				assertEquals( expected, sorted( running.finish() ) );
+			}
+			finally {
+				hung.close();
+			}
+
+			assertTrue( coordinator.isFinished() );
+			assertEquals( expected, sorted( coordinator.getHits() ) );
+			assertEquals( expected, live.sortedFound() );
+			assertEquals( search.getTotal(), live.searched );
+			List<String> lines = Files.readAllLines( checkpoint, Charset.forName( SearchCoordinator.CHARSET ) );
+			assertEachTaskDoneOnce( lines, units );
+
+			// cut off part way through the line that finishes a task with hits, as if the
+			// coordinator stopped while writing it
+			int cut = -1;
+			long kept = 0;
+			for( int i = 1, finished = 0; i < lines.size() && cut < 0; i++ ) {
+				if( lines.get( i ).startsWith( "done " ) ) {
+					if( ++finished > 3 && lines.get( i - 1 ).startsWith( "hit " ) ) {
+						cut = i;
+					}
+					else {
+						String[] range = lines.get( i ).split( " " );
+						kept += Long.parseLong( range[2] ) - Long.parseLong( range[1] );
+					}
+				}
+			}
+			assertTrue( "no task with hits to cut", cut > 0 );
+			StringBuilder truncated = new StringBuilder();
+			for( int i = 0; i < cut; i++ ) {
+				truncated.append( lines.get( i ) ).append( '\n' );
+			}
+			truncated.append( "don" );
+			Files.write( checkpoint, truncated.toString().getBytes( SearchCoordinator.CHARSET ) );
+
+			SearchCoordinator resumed = new SearchCoordinator( machine( catalog ), job, InetAddress.getLoopbackAddress(), 0, checkpoint,
+					UNITS_PER_TASK, LEASE_MILLIS );
+			assertFalse( resumed.isFinished() );
+			Recorder again = new Recorder();
+			running = new Runner( resumed, again );
+			long searched = new SearchWorker( machine( catalog ), host(), resumed.getPort(), pool ).run();
+			assertEquals( units - kept, searched );
+			assertEquals( expected, sorted( running.finish() ) );
+			// the hits read back are reported as well as the new ones, and none twice
+			assertEquals( expected, again.sortedFound() );
+			assertEquals( search.getTotal(), again.searched );
+			lines = Files.readAllLines( checkpoint, Charset.forName( SearchCoordinator.CHARSET ) );
+			assertEachTaskDoneOnce( lines, units );
+
+			// nothing is left to do once the checkpoint is complete
+			SearchCoordinator finished = new SearchCoordinator( machine( catalog ), job, InetAddress.getLoopbackAddress(), 0, checkpoint,
+					UNITS_PER_TASK, LEASE_MILLIS );
+			try {
+				assertTrue( finished.isFinished() );
+				assertEquals( expected, sorted( finished.getHits() ) );
+			}
+			finally {
+				finished.close();
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	private static Enigma machine( Catalog catalog ) {
+		Enigma enigma = new Enigma();
+		enigma.setCatalog( catalog );
+		return enigma;
+	}
+
+	private static String host() {
+		return InetAddress.getLoopbackAddress().getHostAddress();
+	}
+
+	/**
+	 * Every hit of the search, run in one process
+	 */
+	private static List<String> expectedHits( KeySearch search, ForkJoinPool pool ) {
+		final List<MachineKey> hits = Collections.synchronizedList( new ArrayList<MachineKey>() );
+		search.search( 0, search.getUnits(), new KeySearch.Listener() {
+			public void progress( long searched, long total ) {
+			}
+
+			public void found( MachineKey key ) {
+				hits.add( key );
+			}
+		}, pool );
+		return sorted( hits );
+	}
+
+	private static List<String> sorted( List<MachineKey> keys ) {
+		List<String> sorted = new ArrayList<String>();
+		for( MachineKey key : keys ) {
+			sorted.add( key.toString() );
+		}
+		Collections.sort( sorted );
+		return sorted;
+	}
+
+	private static void assertEachTaskDoneOnce( List<String> lines, long units ) {
+		int tasks = (int)( ( units + UNITS_PER_TASK - 1 ) / UNITS_PER_TASK );
+		int[] done = new int[tasks];
+		for( String line : lines ) {
+			if( line.startsWith( "done " ) ) {
+				done[(int)( Long.parseLong( line.split( " " )[1] ) / UNITS_PER_TASK )]++;
+			}
+		}
+		for( int task = 0; task < tasks; task++ ) {
+			assertEquals( "task " + task, 1, done[task] );
+		}
+	}
+
+	/**
+	 * Runs a coordinator on a thread of its own
+	 */
+	private static class Runner implements Runnable {
+
+		private final SearchCoordinator coordinator;
+		private final Recorder listener;
+		private final Thread thread;
+		private List<MachineKey> hits;
+		private Exception failure;
+
+		Runner( SearchCoordinator coordinator, Recorder listener ) {
+			this.coordinator = coordinator;
+			this.listener = listener;
+			thread = new Thread( this );
+			thread.start();
+		}
+
+		public void run() {
+			try {
+				hits = coordinator.run( listener );
+			}
+			catch( Exception e ) {
+				failure = e;
+			}
+		}
+
+		/**
+		 * Waits for the coordinator to close and returns its hits
+		 */
+		List<MachineKey> finish() throws Exception {
+			thread.join( 30000 );
+			assertFalse( "coordinator still running", thread.isAlive() );
+			if( failure != null ) {
+				throw failure;
+			}
+			assertNull( listener.refused );
+			return hits;
+		}
+	}
+
+	/**
+	 * Keeps what the coordinator reports
+	 */
+	private static class Recorder implements SearchCoordinator.Listener {
+
+		final List<MachineKey> found = new ArrayList<MachineKey>();
+		long searched;
+		String refused;
+
+		public synchronized void progress( long searched, long total ) {
+			this.searched = Math.max( this.searched, searched );
+		}
+
+		public synchronized void found( MachineKey key ) {
+			found.add( key );
+		}
+
+		public synchronized void refused( String worker, String message ) {
+			refused = worker + ": " + message;
+		}
+
+		synchronized List<String> sortedFound() {
+			return sorted( found );
+		}
+	}
+}